@@ -0,0 +1,40 @@
+package pro.sky.telegramcatdog.listener;
+
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * Creates in-memory repository stubs for the benchmarks.
+ * Mockito is not used here because its invocation recording would dominate the measurements.
+ */
+public final class RepositoryStubs {
+
+    private RepositoryStubs() {
+    }
+
+    /**
+     * @param type    repository interface
+     * @param answers method name -> answer built from the call arguments.
+     *                Methods without an answer return {@code Optional.empty()} or {@code null}.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T stub(Class<T> type, Map<String, Function<Object[], Object>> answers) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "toString":
+                    return type.getSimpleName() + "Stub";
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+            }
+            Function<Object[], Object> answer = answers.get(method.getName());
+            if (answer != null) {
+                return answer.apply(args);
+            }
+            return method.getReturnType() == Optional.class ? Optional.empty() : null;
+        });
+    }
+}
@@ -0,0 +1,27 @@
+package pro.sky.telegramcatdog.listener;
+
+import com.pengrad.telegrambot.TelegramBot;
+import com.pengrad.telegrambot.request.BaseRequest;
+import com.pengrad.telegrambot.response.BaseResponse;
+
+/**
+ * {@code TelegramBot} which never goes to the network.
+ * It only counts the requests so the benchmarks measure our own code.
+ */
+public class StubTelegramBot extends TelegramBot {
+    private long executed;
+
+    public StubTelegramBot() {
+        super("benchmark");
+    }
+
+    @Override
+    public <T extends BaseRequest<T, R>, R extends BaseResponse> R execute(BaseRequest<T, R> request) {
+        executed++;
+        return null;
+    }
+
+    public long getExecuted() {
+        return executed;
+    }
+}
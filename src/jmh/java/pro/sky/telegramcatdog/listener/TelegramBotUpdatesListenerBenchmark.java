@@ -0,0 +1,224 @@
+package pro.sky.telegramcatdog.listener;
+
+import com.google.gson.Gson;
+import com.pengrad.telegrambot.BotUtils;
+import com.pengrad.telegrambot.model.Update;
+import com.pengrad.telegrambot.model.request.InlineKeyboardMarkup;
+import com.pengrad.telegrambot.request.SendMessage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import pro.sky.telegramcatdog.constants.PetType;
+import pro.sky.telegramcatdog.model.Guest;
+import pro.sky.telegramcatdog.model.Volunteer;
+import pro.sky.telegramcatdog.repository.BlockedChatRepository;
+import pro.sky.telegramcatdog.repository.BotStateRepository;
+import pro.sky.telegramcatdog.repository.GuestRepository;
+import pro.sky.telegramcatdog.repository.QueuedUpdateRepository;
+import pro.sky.telegramcatdog.repository.VolunteerRepository;
+import pro.sky.telegramcatdog.service.BlockedChatRegistry;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static pro.sky.telegramcatdog.constants.Constants.*;
+
+/**
+ * Throughput of the update processing hot path.
+ * Run with {@code ./gradlew jmh}, the gc profiler adds the allocation rate (gc.alloc.rate.norm) to the results.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TelegramBotUpdatesListenerBenchmark {
+
+    /** Size of the mixed batch, Telegram returns up to 100 updates per getUpdates call. */
+    @Param({"1", "100"})
+    private int batchSize;
+
+    private TelegramBotUpdatesListener newGuestListener;
+    private TelegramBotUpdatesListener knownGuestListener;
+
+    private List<Update> startBatch;
+    private List<Update> catShelterClickBatch;
+    private List<Update> callVolunteerBatch;
+    private List<Update> unknownCallbackBatch;
+    private List<Update> mixedBatch;
+
+    private final Gson gson = new Gson();
+
+    private ProcessedUpdateRegistry registry;
+    private long nextUpdateId = 1;
+
+    @Setup
+    public void setUp() throws IOException {
+        Volunteer volunteer = new Volunteer(1, "Volunteer 1", 1234567809L, "volunteer1", null);
+        Guest guest = new Guest(1234567809L, new Timestamp(System.currentTimeMillis()), PetType.DOG);
+
+        VolunteerRepository volunteerRepository = RepositoryStubs.stub(VolunteerRepository.class,
+                Map.of("findById", args -> Optional.of(volunteer)));
+        GuestRepository emptyGuestRepository = RepositoryStubs.stub(GuestRepository.class,
+                Map.of("save", args -> args[0]));
+        GuestRepository guestRepository = RepositoryStubs.stub(GuestRepository.class,
+                Map.of("findByChatId", args -> guest, "save", args -> args[0]));
+
+        // The fixtures repeat the same update id, the registry must not skip them
+        BotStateRepository botStateRepository = RepositoryStubs.stub(BotStateRepository.class, Map.of());
+        ProcessedUpdateRegistry acceptAll = new ProcessedUpdateRegistry(botStateRepository, 2, Duration.ofDays(7), 3) {
+            @Override
+            public boolean seenBefore(long updateId) {
+                return false;
+            }
+        };
+        registry = new ProcessedUpdateRegistry(botStateRepository, 4096, Duration.ofDays(7), 3);
+        // Election disabled, the database is never connected
+        DataSourceProperties dataSourceProperties = new DataSourceProperties();
+        dataSourceProperties.setUrl("jdbc:h2:mem:benchmark");
+        dataSourceProperties.setUsername("sa");
+        dataSourceProperties.setPassword("");
+        PollingLeaderElection noElection = new PollingLeaderElection(dataSourceProperties, false, 0, Duration.ofSeconds(2));
+        UpdateQueue noQueue = new UpdateQueue(RepositoryStubs.stub(QueuedUpdateRepository.class, Map.of()), false, 16);
+        // The batches repeat the same click, with a window they would be dropped
+        ClickDebouncer noDebounce = new ClickDebouncer(Duration.ZERO);
+        // No pool: the updates are handled on the benchmark thread
+        UpdateDispatcher inline = new UpdateDispatcher(new SimpleMeterRegistry(), 0, new int[]{6, 3, 1}, Duration.ZERO);
+        PollingBackpressure backpressure = new PollingBackpressure(inline, noQueue, new SimpleMeterRegistry(),
+                1000, 200, Duration.ofMillis(100));
+        BlockedChatRegistry noBlockedChats = new BlockedChatRegistry(RepositoryStubs.stub(BlockedChatRepository.class, Map.of()));
+        BotCircuitBreakers circuitBreakers = new BotCircuitBreakers(new SimpleMeterRegistry(),
+                5, Duration.ofSeconds(30), Duration.ofSeconds(5), Duration.ofSeconds(2));
+        // The stub bot never fails, nothing is parked
+        OutboundMessageSpool spool = new OutboundMessageSpool(new StubTelegramBot(), circuitBreakers, noBlockedChats,
+                new SimpleMeterRegistry(), Path.of("build/jmh-outbound-spool.jsonl"), 10000);
+        MenuFallbackCache fallbackCache = new MenuFallbackCache(10000);
+
+        newGuestListener = new TelegramBotUpdatesListener(new StubTelegramBot(), volunteerRepository, emptyGuestRepository,
+                event -> { }, acceptAll, noElection, noQueue, noDebounce, inline, backpressure, noBlockedChats,
+                circuitBreakers, spool, fallbackCache);
+        knownGuestListener = new TelegramBotUpdatesListener(new StubTelegramBot(), volunteerRepository, guestRepository,
+                event -> { }, acceptAll, noElection, noQueue, noDebounce, inline, backpressure, noBlockedChats,
+                circuitBreakers, spool, fallbackCache);
+
+        String textUpdate = readFixture("text_update.json");
+        String dataUpdate = readFixture("data_update.json");
+        String dataUpdateWithUsername = readFixture("data_update_with_username.json");
+
+        startBatch = batch(textUpdate, "/start");
+        catShelterClickBatch = batch(dataUpdate, BUTTON_CAT_SHELTER_CALLBACK_TEXT);
+        callVolunteerBatch = batch(dataUpdateWithUsername, BUTTON_CALL_VOLUNTEER_CALLBACK_TEXT);
+        unknownCallbackBatch = batch(dataUpdate, "button_Unknown_clicked");
+
+        // Roughly what a busy shelter sees: mostly menu clicks, some /start, rare calls for help
+        List<Update> mix = List.of(
+                update(textUpdate, "/start"),
+                update(dataUpdate, BUTTON_CAT_SHELTER_CALLBACK_TEXT),
+                update(dataUpdate, BUTTON_DOG_SHELTER_CALLBACK_TEXT),
+                update(dataUpdate, BUTTON_STAGE1_CALLBACK_TEXT),
+                update(dataUpdate, BUTTON_STAGE2_CALLBACK_TEXT),
+                update(dataUpdate, BUTTON_STAGE3_CALLBACK_TEXT),
+                update(textUpdate, "hello"),
+                update(dataUpdateWithUsername, BUTTON_CALL_VOLUNTEER_CALLBACK_TEXT));
+        mixedBatch = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            mixedBatch.add(mix.get(i % mix.size()));
+        }
+    }
+
+    @Benchmark
+    public int processStartNewGuest() {
+        return newGuestListener.process(startBatch);
+    }
+
+    @Benchmark
+    public int processStartKnownGuest() {
+        return knownGuestListener.process(startBatch);
+    }
+
+    @Benchmark
+    public int processCatShelterClick() {
+        return newGuestListener.process(catShelterClickBatch);
+    }
+
+    @Benchmark
+    public int processCallVolunteer() {
+        return knownGuestListener.process(callVolunteerBatch);
+    }
+
+    /** Cost of the duplicate check of a new update and of marking it handled. */
+    @Benchmark
+    public boolean dedupNewUpdate() {
+        long updateId = nextUpdateId++;
+        boolean seen = registry.seenBefore(updateId);
+        registry.handled(updateId);
+        return seen;
+    }
+
+    /** Cost of skipping a redelivered update. */
+    @Benchmark
+    public boolean dedupRedeliveredUpdate() {
+        return registry.seenBefore(nextUpdateId - 1);
+    }
+
+    /** Dispatch cost only: the callback data matches no button, only the callback query is answered. */
+    @Benchmark
+    public int dispatchUnknownCallback() {
+        return knownGuestListener.process(unknownCallbackBatch);
+    }
+
+    @Benchmark
+    public int processMixedBatch() {
+        return knownGuestListener.process(mixedBatch);
+    }
+
+    @Benchmark
+    public InlineKeyboardMarkup buildShelterTypeKeyboard() {
+        return knownGuestListener.createButtonsShelterTypeSelect();
+    }
+
+    @Benchmark
+    public InlineKeyboardMarkup buildStage0Keyboard() {
+        return knownGuestListener.createButtonsStage0();
+    }
+
+    /** The same Gson serialization the bot client does for the parameters of each request. */
+    @Benchmark
+    public void serializeStage0Message(Blackhole blackhole) {
+        SendMessage message = new SendMessage(1234567809L, CAT_SHELTER_WELCOME_MSG_TEXT)
+                .replyMarkup(knownGuestListener.createButtonsStage0());
+        blackhole.consume(gson.toJson(message.getParameters()));
+    }
+
+    private List<Update> batch(String json, String messageText) {
+        List<Update> updates = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            updates.add(update(json, messageText));
+        }
+        return updates;
+    }
+
+    private static Update update(String json, String messageText) {
+        return BotUtils.fromJson(json.replace("%message_text%", messageText), Update.class);
+    }
+
+    private static String readFixture(String name) throws IOException {
+        try (InputStream in = TelegramBotUpdatesListenerBenchmark.class.getResourceAsStream(name)) {
+            if (in == null) {
+                throw new IOException("Fixture not found: " + name);
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package pro.sky.telegramcatdog.loadtest;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Local stand-in for the Telegram Bot API.
+ * Implements {@code getUpdates}, {@code sendMessage}, {@code sendPhoto}, {@code getFile} and file downloads,
+ * any other method is answered with {@code {"ok":true,"result":true}}.
+ * Start the application with {@code --telegram.bot.api-url=http://localhost:<port>/bot} to use it.
+ */
+public class FakeTelegramApiServer {
+    private static final Pattern MULTIPART_FIELD = Pattern.compile("name=\"([^\"]+)\"\r\n(?:[^\r\n]+\r\n)*\r\n([^\r\n]*)");
+    private static final String TOO_MANY_REQUESTS =
+            "{\"ok\":false,\"error_code\":429,\"description\":\"Too Many Requests: retry after 1\",\"parameters\":{\"retry_after\":1}}";
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final ConcurrentSkipListMap<Long, String> pendingUpdates = new ConcurrentSkipListMap<>();
+    private final Object updatesMonitor = new Object();
+    private final CountDownLatch firstPoll = new CountDownLatch(1);
+    private final AtomicLong messageIds = new AtomicLong();
+    private final AtomicLong tooManyRequestsSent = new AtomicLong();
+    private final LatencyRecorder latencyRecorder;
+    private final double tooManyRequestsRate;
+
+    /**
+     * @param port                port to listen on, 0 means any free port
+     * @param tooManyRequestsRate share of send calls (0..1) answered with error 429
+     */
+    public FakeTelegramApiServer(int port, double tooManyRequestsRate, LatencyRecorder latencyRecorder) throws IOException {
+        this.tooManyRequestsRate = tooManyRequestsRate;
+        this.latencyRecorder = latencyRecorder;
+        server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public String getApiUrl() {
+        return "http://localhost:" + getPort() + "/bot";
+    }
+
+    public long getTooManyRequestsSent() {
+        return tooManyRequestsSent.get();
+    }
+
+    public int getPendingUpdatesCount() {
+        return pendingUpdates.size();
+    }
+
+    /**
+     * Waits until the bot calls {@code getUpdates} for the first time.
+     *
+     * @return {@code false} if the bot has not connected within the timeout
+     */
+    public boolean awaitFirstPoll(long timeout, TimeUnit unit) throws InterruptedException {
+        return firstPoll.await(timeout, unit);
+    }
+
+    /**
+     * Queues an update for the next {@code getUpdates} call.
+     */
+    public void offerUpdate(long updateId, String json) {
+        pendingUpdates.put(updateId, json);
+        synchronized (updatesMonitor) {
+            updatesMonitor.notifyAll();
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String path = exchange.getRequestURI().getPath();
+            if (path.startsWith("/file/")) {
+                respond(exchange, 200, "image/jpeg", fakePhoto());
+                return;
+            }
+            String method = path.substring(path.lastIndexOf('/') + 1);
+            Map<String, String> params = readParams(exchange);
+            String body;
+            switch (method) {
+                case "getUpdates":
+                    body = getUpdates(params);
+                    break;
+                case "sendMessage":
+                case "sendPhoto":
+                case "editMessageText":
+                case "editMessageReplyMarkup":
+                    if (injectTooManyRequests()) {
+                        respond(exchange, 429, "application/json", TOO_MANY_REQUESTS.getBytes(StandardCharsets.UTF_8));
+                        return;
+                    }
+                    if (method.startsWith("edit")) {
+                        latencyRecorder.messageEdited();
+                    } else {
+                        latencyRecorder.messageSent(Long.parseLong(params.getOrDefault("chat_id", "0")));
+                    }
+                    body = "{\"ok\":true,\"result\":" + message(params.get("chat_id")) + "}";
+                    break;
+                case "answerCallbackQuery":
+                    latencyRecorder.callbackAnswered(params.get("callback_query_id"));
+                    body = "{\"ok\":true,\"result\":true}";
+                    break;
+                case "getFile":
+                    String fileId = params.getOrDefault("file_id", "file");
+                    body = "{\"ok\":true,\"result\":{\"file_id\":\"" + fileId + "\",\"file_unique_id\":\"u" + fileId
+                            + "\",\"file_size\":" + fakePhoto().length + ",\"file_path\":\"photos/" + fileId + ".jpg\"}}";
+                    break;
+                default:
+                    body = "{\"ok\":true,\"result\":true}";
+            }
+            respond(exchange, 200, "application/json", body.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private String getUpdates(Map<String, String> params) {
+        long offset = Long.parseLong(params.getOrDefault("offset", "0"));
+        int limit = Integer.parseInt(params.getOrDefault("limit", "100"));
+        long timeoutMillis = Long.parseLong(params.getOrDefault("timeout", "0")) * 1000;
+        firstPoll.countDown();
+
+        // Updates below the offset are confirmed by the client
+        pendingUpdates.headMap(offset).clear();
+
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        synchronized (updatesMonitor) {
+            while (pendingUpdates.isEmpty() && System.currentTimeMillis() < deadline) {
+                try {
+                    updatesMonitor.wait(Math.max(1, deadline - System.currentTimeMillis()));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+
+        List<String> result = new ArrayList<>(Math.min(limit, pendingUpdates.size()));
+        for (String update : pendingUpdates.tailMap(offset).values()) {
+            if (result.size() == limit) {
+                break;
+            }
+            result.add(update);
+        }
+        return "{\"ok\":true,\"result\":[" + String.join(",", result) + "]}";
+    }
+
+    private boolean injectTooManyRequests() {
+        if (tooManyRequestsRate > 0 && ThreadLocalRandom.current().nextDouble() < tooManyRequestsRate) {
+            tooManyRequestsSent.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    private String message(String chatId) {
+        return "{\"message_id\":" + messageIds.incrementAndGet()
+                + ",\"date\":" + System.currentTimeMillis() / 1000
+                + ",\"chat\":{\"id\":" + chatId + ",\"type\":\"private\"}}";
+    }
+
+    private static Map<String, String> readParams(HttpExchange exchange) throws IOException {
+        Map<String, String> params = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query != null) {
+            parseForm(query, params);
+        }
+        String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+        String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        if (contentType != null && contentType.startsWith("multipart/")) {
+            Matcher matcher = MULTIPART_FIELD.matcher(body);
+            while (matcher.find()) {
+                params.putIfAbsent(matcher.group(1), matcher.group(2));
+            }
+        } else if (!body.isEmpty()) {
+            parseForm(body, params);
+        }
+        return params;
+    }
+
+    private static void parseForm(String form, Map<String, String> params) {
+        for (String pair : form.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                params.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static byte[] fakePhoto() {
+        // SOI + EOI markers are enough for the clients that only store the bytes
+        return new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xD9};
+    }
+}
@@ -0,0 +1,114 @@
+package pro.sky.telegramcatdog.loadtest;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Matches the bot responses with the synthetic updates, counting only the first response of each update.
+ * <p>
+ * A button click is answered first by {@code answerCallbackQuery}, so it is matched by the callback query id;
+ * the edited menu that follows is a follow-up. A message (/start) is matched by its chat with the next
+ * {@code sendMessage} to that chat, the messages of a chat are answered in order.
+ * End-to-end latency is the time from queueing the update on the fake server until its first response.
+ */
+public class LatencyRecorder {
+    private final Map<Long, Deque<Long>> pendingMessages = new ConcurrentHashMap<>();
+    private final Map<String, Long> pendingCallbacks = new ConcurrentHashMap<>();
+    private final AtomicLong expected = new AtomicLong();
+    private final AtomicLong followUps = new AtomicLong();
+    private long[] latencies = new long[1024];
+    private int count;
+
+    /**
+     * Registers an update which should get a response.
+     *
+     * @param callbackQueryId id of the callback query for button clicks, {@code null} for messages
+     */
+    public void expectResponse(long chatId, String callbackQueryId) {
+        expected.incrementAndGet();
+        long now = System.nanoTime();
+        if (callbackQueryId != null) {
+            pendingCallbacks.put(callbackQueryId, now);
+            return;
+        }
+        Deque<Long> pending = pendingMessages.computeIfAbsent(chatId, id -> new ArrayDeque<>());
+        synchronized (pending) {
+            pending.addLast(now);
+        }
+    }
+
+    /**
+     * A message is sent to the chat: the answer to its oldest unanswered message,
+     * or a follow-up (the reply to a click, a message to a volunteer chat).
+     */
+    public void messageSent(long chatId) {
+        Deque<Long> pending = pendingMessages.get(chatId);
+        Long startedAt = null;
+        if (pending != null) {
+            synchronized (pending) {
+                startedAt = pending.pollFirst();
+            }
+        }
+        if (startedAt == null) {
+            followUps.incrementAndGet();
+            return;
+        }
+        record(System.nanoTime() - startedAt);
+    }
+
+    /**
+     * A message is edited: the menu of a click, which has been answered by its callback answer already.
+     */
+    public void messageEdited() {
+        followUps.incrementAndGet();
+    }
+
+    public void callbackAnswered(String callbackQueryId) {
+        Long startedAt = callbackQueryId == null ? null : pendingCallbacks.remove(callbackQueryId);
+        if (startedAt == null) {
+            followUps.incrementAndGet();
+            return;
+        }
+        record(System.nanoTime() - startedAt);
+    }
+
+    public long getExpected() {
+        return expected.get();
+    }
+
+    /**
+     * @return responses which are not the first response of an update
+     */
+    public long getFollowUps() {
+        return followUps.get();
+    }
+
+    public synchronized int getCompleted() {
+        return count;
+    }
+
+    /**
+     * @param percentile 0..100
+     * @return latency in milliseconds, 0 if nothing was recorded
+     */
+    public synchronized double percentileMillis(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(latencies, count);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100 * count) - 1;
+        return sorted[Math.max(0, Math.min(index, count - 1))] / 1_000_000.0;
+    }
+
+    private synchronized void record(long latencyNanos) {
+        if (count == latencies.length) {
+            latencies = Arrays.copyOf(latencies, count * 2);
+        }
+        latencies[count++] = latencyNanos;
+    }
+}
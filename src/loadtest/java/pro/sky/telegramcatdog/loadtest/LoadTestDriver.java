@@ -0,0 +1,77 @@
+package pro.sky.telegramcatdog.loadtest;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Offline load test of the bot.
+ * <ol>
+ *     <li>{@code ./gradlew loadTest -Dloadtest.chats=500 -Dloadtest.rate=200}</li>
+ *     <li>start the application with {@code --telegram.bot.api-url=http://localhost:8089/bot --telegram.bot.token=load}</li>
+ * </ol>
+ * Settings (system properties):
+ * {@code loadtest.port} (8089), {@code loadtest.chats} (100), {@code loadtest.rate} updates per second (50),
+ * {@code loadtest.duration} seconds (60), {@code loadtest.mix} weights of start:click:photo (2:7:1),
+ * {@code loadtest.rate429} share of sends answered with 429 (0), {@code loadtest.drainTimeout} seconds (30).
+ */
+public class LoadTestDriver {
+
+    public static void main(String[] args) throws Exception {
+        int port = Integer.getInteger("loadtest.port", 8089);
+        int chats = Integer.getInteger("loadtest.chats", 100);
+        int rate = Integer.getInteger("loadtest.rate", 50);
+        int duration = Integer.getInteger("loadtest.duration", 60);
+        String[] mix = System.getProperty("loadtest.mix", "2:7:1").split(":");
+        double rate429 = Double.parseDouble(System.getProperty("loadtest.rate429", "0"));
+        int drainTimeout = Integer.getInteger("loadtest.drainTimeout", 30);
+
+        LatencyRecorder recorder = new LatencyRecorder();
+        FakeTelegramApiServer server = new FakeTelegramApiServer(port, rate429, recorder);
+        SyntheticTraffic traffic = new SyntheticTraffic(chats,
+                Integer.parseInt(mix[0]), Integer.parseInt(mix[1]), Integer.parseInt(mix[2]));
+        server.start();
+        try {
+            System.out.printf("Fake Telegram Bot API is listening on %s%n", server.getApiUrl());
+            System.out.println("Waiting for the bot to call getUpdates...");
+            if (!server.awaitFirstPoll(5, TimeUnit.MINUTES)) {
+                System.out.println("The bot has not connected, giving up");
+                return;
+            }
+
+            System.out.printf("Sending %d updates/s to %d chats for %d s%n", rate, chats, duration);
+            long intervalNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, rate);
+            long startedAt = System.nanoTime();
+            long total = (long) rate * duration;
+            for (long i = 0; i < total; i++) {
+                long sendAt = startedAt + i * intervalNanos;
+                long sleep = sendAt - System.nanoTime();
+                if (sleep > 0) {
+                    TimeUnit.NANOSECONDS.sleep(sleep);
+                }
+                traffic.sendNext(server, recorder);
+            }
+
+            long drainDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(drainTimeout);
+            while (recorder.getCompleted() < recorder.getExpected() && System.nanoTime() < drainDeadline) {
+                TimeUnit.MILLISECONDS.sleep(100);
+            }
+            double elapsedSeconds = (System.nanoTime() - startedAt) / 1e9;
+            report(recorder, server, total, elapsedSeconds);
+        } finally {
+            server.stop();
+        }
+    }
+
+    private static void report(LatencyRecorder recorder, FakeTelegramApiServer server, long sent, double elapsedSeconds) {
+        System.out.println("----------------------------------------");
+        System.out.printf("Updates sent:             %d%n", sent);
+        System.out.printf("Updates expecting reply:  %d%n", recorder.getExpected());
+        System.out.printf("Updates answered:         %d%n", recorder.getCompleted());
+        System.out.printf("Not confirmed by the bot: %d%n", server.getPendingUpdatesCount());
+        System.out.printf("Follow-up responses:      %d%n", recorder.getFollowUps());
+        System.out.printf("429 injected:             %d%n", server.getTooManyRequestsSent());
+        System.out.printf("Throughput:               %.1f answers/s%n", recorder.getCompleted() / elapsedSeconds);
+        System.out.printf("Latency p50 / p90 / p99 / max: %.1f / %.1f / %.1f / %.1f ms%n",
+                recorder.percentileMillis(50), recorder.percentileMillis(90),
+                recorder.percentileMillis(99), recorder.percentileMillis(100));
+    }
+}
@@ -0,0 +1,80 @@
+package pro.sky.telegramcatdog.loadtest;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Smoke test of the native executable: starts it with the in-memory H2 database and the fake Telegram Bot API,
+ * sends {@code /start} and a button click and waits for the answers.
+ * Run with {@code ./gradlew nativeSmokeTest}, the argument is the path of the executable.
+ */
+public class NativeSmokeTest {
+    private static final long CHAT_ID = 100_000_000L;
+
+    public static void main(String[] args) throws Exception {
+        File executable = new File(args[0]);
+        if (!executable.canExecute()) {
+            fail("Native executable not found: " + executable);
+        }
+
+        LatencyRecorder recorder = new LatencyRecorder();
+        FakeTelegramApiServer server = new FakeTelegramApiServer(0, 0, recorder);
+        server.start();
+        Process bot = null;
+        try {
+            long startedAt = System.nanoTime();
+            bot = new ProcessBuilder(List.of(executable.getPath(),
+                    "--telegram.bot.token=smoke",
+                    "--telegram.bot.api-url=" + server.getApiUrl(),
+                    "--server.port=0",
+                    "--spring.datasource.url=jdbc:h2:mem:smoke;DB_CLOSE_DELAY=-1",
+                    "--spring.datasource.driver-class-name=org.h2.Driver",
+                    "--spring.jpa.hibernate.ddl-auto=create-drop",
+                    "--spring.liquibase.enabled=false",
+                    "--telegram.bot.leader-election.enabled=false",
+                    "--telegram.bot.work-queue.enabled=false",
+                    "--adoption-reports.partitions.enabled=false"))
+                    .inheritIO()
+                    .start();
+
+            if (!server.awaitFirstPoll(60, TimeUnit.SECONDS)) {
+                fail("The bot has not called getUpdates");
+            }
+            System.out.printf("Native bot is polling %d ms after the start%n",
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt));
+
+            recorder.expectResponse(CHAT_ID, null);
+            server.offerUpdate(1, "{\"update_id\":1,\"message\":{\"message_id\":1,\"date\":" + System.currentTimeMillis() / 1000
+                    + ",\"chat\":{\"id\":" + CHAT_ID + ",\"type\":\"private\"},"
+                    + "\"from\":{\"id\":" + CHAT_ID + ",\"is_bot\":false,\"first_name\":\"Smoke\"},\"text\":\"/start\"}}");
+            recorder.expectResponse(CHAT_ID, "cb2");
+            server.offerUpdate(2, "{\"update_id\":2,\"callback_query\":{\"id\":\"cb2\","
+                    + "\"from\":{\"id\":" + CHAT_ID + ",\"is_bot\":false,\"first_name\":\"Smoke\"},"
+                    + "\"message\":{\"message_id\":2,\"date\":" + System.currentTimeMillis() / 1000
+                    + ",\"chat\":{\"id\":" + CHAT_ID + ",\"type\":\"private\"}},"
+                    + "\"chat_instance\":\"" + CHAT_ID + "\",\"data\":\"button_Cat_Shelter_clicked\"}}");
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+            while (recorder.getCompleted() < recorder.getExpected() && System.nanoTime() < deadline) {
+                TimeUnit.MILLISECONDS.sleep(100);
+            }
+            if (recorder.getCompleted() < recorder.getExpected()) {
+                fail("The bot has answered " + recorder.getCompleted() + " of " + recorder.getExpected() + " updates");
+            }
+            System.out.println("Native smoke test passed");
+        } finally {
+            if (bot != null) {
+                bot.destroy();
+                if (!bot.waitFor(30, TimeUnit.SECONDS)) {
+                    bot.destroyForcibly();
+                }
+            }
+            server.stop();
+        }
+    }
+
+    private static void fail(String message) {
+        throw new IllegalStateException("Native smoke test failed: " + message);
+    }
+}
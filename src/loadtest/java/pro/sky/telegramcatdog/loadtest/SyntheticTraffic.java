@@ -0,0 +1,82 @@
+package pro.sky.telegramcatdog.loadtest;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Generates Telegram updates in the Bot API JSON format for a set of synthetic chats.
+ * The share of each kind of update is given by weights: /start messages, button clicks and photos.
+ */
+public class SyntheticTraffic {
+    /** Callback data of the bot buttons, see {@code Constants} of the application. */
+    private static final String[] CALLBACKS = {
+            "button_Cat_Shelter_clicked",
+            "button_Dog_Shelter_clicked",
+            "button_Stage1_clicked",
+            "button_Stage2_clicked",
+            "button_Stage3_clicked",
+            "button_CallVolunteer_clicked"
+    };
+    private static final long FIRST_CHAT_ID = 100_000_000L;
+
+    private final int chats;
+    private final int startWeight;
+    private final int clickWeight;
+    private final int photoWeight;
+    private long nextUpdateId = 1;
+    private long nextMessageId = 1;
+
+    public SyntheticTraffic(int chats, int startWeight, int clickWeight, int photoWeight) {
+        if (chats <= 0 || startWeight + clickWeight + photoWeight <= 0) {
+            throw new IllegalArgumentException("At least one chat and one positive weight are required");
+        }
+        this.chats = chats;
+        this.startWeight = startWeight;
+        this.clickWeight = clickWeight;
+        this.photoWeight = photoWeight;
+    }
+
+    /**
+     * Creates the next update for a random chat, queues it on the server and registers the expected response.
+     * Photos are not expected to be answered.
+     */
+    public void sendNext(FakeTelegramApiServer server, LatencyRecorder recorder) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long chatId = FIRST_CHAT_ID + random.nextInt(chats);
+        long updateId = nextUpdateId++;
+        int kind = random.nextInt(startWeight + clickWeight + photoWeight);
+        String json;
+        if (kind < startWeight) {
+            json = message(updateId, chatId, ",\"text\":\"/start\"");
+            recorder.expectResponse(chatId, null);
+        } else if (kind < startWeight + clickWeight) {
+            String callbackQueryId = "cb" + updateId;
+            json = click(updateId, chatId, callbackQueryId, CALLBACKS[random.nextInt(CALLBACKS.length)]);
+            recorder.expectResponse(chatId, callbackQueryId);
+        } else {
+            json = message(updateId, chatId, ",\"photo\":[{\"file_id\":\"photo" + updateId
+                    + "\",\"file_unique_id\":\"uphoto" + updateId + "\",\"width\":1280,\"height\":960,\"file_size\":250000}]");
+        }
+        server.offerUpdate(updateId, json);
+    }
+
+    private String message(long updateId, long chatId, String content) {
+        return "{\"update_id\":" + updateId + ",\"message\":{" + messageFields(chatId) + content + "}}";
+    }
+
+    private String click(long updateId, long chatId, String callbackQueryId, String data) {
+        return "{\"update_id\":" + updateId + ",\"callback_query\":{\"id\":\"" + callbackQueryId + "\","
+                + user(chatId) + ",\"message\":{" + messageFields(chatId) + "},"
+                + "\"chat_instance\":\"" + chatId + "\",\"data\":\"" + data + "\"}}";
+    }
+
+    private String messageFields(long chatId) {
+        return "\"message_id\":" + nextMessageId++
+                + ",\"date\":" + System.currentTimeMillis() / 1000
+                + ",\"chat\":{\"id\":" + chatId + ",\"type\":\"private\"},"
+                + user(chatId);
+    }
+
+    private static String user(long chatId) {
+        return "\"from\":{\"id\":" + chatId + ",\"is_bot\":false,\"first_name\":\"Load" + chatId + "\"}";
+    }
+}
@@ -4,10 +4,15 @@ package pro.sky.telegramcatdog;
 import io.swagger.v3.oas.annotations.OpenAPIDefinition;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.ImportRuntimeHints;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import pro.sky.telegramcatdog.configuration.NativeImageHints;
 
 
 @SpringBootApplication
 @OpenAPIDefinition
+@EnableScheduling
+@ImportRuntimeHints(NativeImageHints.class)
 public class TelegramcatdogApplication {
 
 	public static void main(String[] args) {
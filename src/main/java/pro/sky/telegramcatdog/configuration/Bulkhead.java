@@ -0,0 +1,47 @@
+package pro.sky.telegramcatdog.configuration;
+
+/**
+ * Side of the application that the current thread works for. Each side has its own connection pool,
+ * see {@link BulkheadDataSourceConfiguration}, so a slow admin export can't take the connections of the bot.
+ * <p>
+ * The threads of the REST API are not marked, {@link #REST} is the default.
+ * The bot pipeline enters {@link #BOT} for the time of its work:
+ * <pre>{@code
+ * try (Bulkhead.Scope scope = Bulkhead.BOT.enter()) {
+ *     guestRepository.findByChatId(chatId);
+ * }
+ * }</pre>
+ * Enter it before the transaction begins: the connection is taken at its start and kept to the end.
+ */
+public enum Bulkhead {
+    BOT,
+    REST;
+
+    private static final ThreadLocal<Bulkhead> CURRENT = new ThreadLocal<>();
+
+    public static Bulkhead current() {
+        Bulkhead bulkhead = CURRENT.get();
+        return bulkhead == null ? REST : bulkhead;
+    }
+
+    /**
+     * Switches the current thread to this side until the scope is closed, then back to the previous one.
+     */
+    public Scope enter() {
+        Bulkhead previous = CURRENT.get();
+        CURRENT.set(this);
+        return () -> {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        };
+    }
+
+    @FunctionalInterface
+    public interface Scope extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
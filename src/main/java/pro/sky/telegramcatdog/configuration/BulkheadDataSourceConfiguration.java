@@ -0,0 +1,51 @@
+package pro.sky.telegramcatdog.configuration;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import javax.sql.DataSource;
+
+/**
+ * Separate connection pools for the bot pipeline and for the REST API, see {@link Bulkhead}.
+ * <p>
+ * Both pools connect to {@code spring.datasource.url}, their Hikari settings are {@code datasource.pools.bot.*}
+ * and {@code datasource.pools.rest.*}, e.g. {@code datasource.pools.bot.maximum-pool-size}.
+ * The repositories and the transactions use the routing {@link DataSource}, which picks the pool by the thread.
+ * Saturation of a pool is seen in {@code hikaricp.connections.pending} and {@code hikaricp.connections.timeout}
+ * with the tag {@code pool=bot|rest}.
+ */
+@Configuration
+public class BulkheadDataSourceConfiguration {
+
+    @Bean(destroyMethod = "close", autowireCandidate = false)
+    @ConfigurationProperties("datasource.pools.bot")
+    public HikariDataSource botDataSource(DataSourceProperties properties, MeterRegistry meterRegistry) {
+        return pool(properties, meterRegistry, "bot");
+    }
+
+    @Bean(destroyMethod = "close", autowireCandidate = false)
+    @ConfigurationProperties("datasource.pools.rest")
+    public HikariDataSource restDataSource(DataSourceProperties properties, MeterRegistry meterRegistry) {
+        return pool(properties, meterRegistry, "rest");
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(DataSourceProperties properties, MeterRegistry meterRegistry) {
+        return new BulkheadRoutingDataSource(botDataSource(properties, meterRegistry), restDataSource(properties, meterRegistry));
+    }
+
+    private static HikariDataSource pool(DataSourceProperties properties, MeterRegistry meterRegistry, String name) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName(name);
+        // the pool is started by the first connection, after the binding of its properties
+        dataSource.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+        return dataSource;
+    }
+}
@@ -0,0 +1,25 @@
+package pro.sky.telegramcatdog.configuration;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.util.Map;
+
+/**
+ * Takes the connections from the pool of the {@link Bulkhead} of the current thread.
+ */
+class BulkheadRoutingDataSource extends AbstractRoutingDataSource {
+
+    BulkheadRoutingDataSource(DataSource botDataSource, DataSource restDataSource) {
+        setTargetDataSources(Map.of(Bulkhead.BOT, botDataSource, Bulkhead.REST, restDataSource));
+        setDefaultTargetDataSource(restDataSource);
+        // no fallback to the default pool for an unknown key: there is none
+        setLenientFallback(false);
+        afterPropertiesSet();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return Bulkhead.current();
+    }
+}
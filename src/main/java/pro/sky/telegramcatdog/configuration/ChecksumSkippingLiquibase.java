@@ -0,0 +1,111 @@
+package pro.sky.telegramcatdog.configuration;
+
+import liquibase.exception.LiquibaseException;
+import liquibase.integration.spring.SpringLiquibase;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Liquibase that doesn't even open the changelog if it hasn't changed since the last successful update.
+ * A checksum of the changelog files is kept in {@code bot_state}; Liquibase itself still checks
+ * every changeset of every file against {@code databasechangelog}, which takes most of its startup time.
+ */
+public class ChecksumSkippingLiquibase extends SpringLiquibase {
+    static final String CHECKSUM_STATE = "liquibase_changelog_checksum";
+
+    private final Logger logger = LoggerFactory.getLogger(ChecksumSkippingLiquibase.class);
+    private final String changelogFiles;
+
+    /**
+     * @param changelogFiles location pattern of all the changelog files, e.g. {@code classpath*:db/changelog/**}
+     */
+    public ChecksumSkippingLiquibase(String changelogFiles) {
+        this.changelogFiles = changelogFiles;
+    }
+
+    @Override
+    public void afterPropertiesSet() throws LiquibaseException {
+        if (!isShouldRun()) {
+            return;
+        }
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(getDataSource());
+        long checksum = checksum();
+        Long applied = readAppliedChecksum(jdbcTemplate);
+        if (applied != null && applied == checksum) {
+            logger.info("Database changelog is unchanged, Liquibase update is skipped");
+            return;
+        }
+        super.afterPropertiesSet();
+        saveAppliedChecksum(jdbcTemplate, checksum);
+    }
+
+    /**
+     * First 8 bytes of SHA-256 of the changelog files in the order of their paths.
+     */
+    private long checksum() {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            Resource[] resources = new PathMatchingResourcePatternResolver(getResourceLoader()).getResources(changelogFiles);
+            List<Resource> files = Arrays.stream(resources)
+                    .filter(Resource::isReadable)
+                    .sorted(Comparator.comparing(ChecksumSkippingLiquibase::path))
+                    .toList();
+            for (Resource file : files) {
+                digest.update(path(file).getBytes());
+                try (InputStream in = file.getInputStream()) {
+                    digest.update(in.readAllBytes());
+                }
+            }
+            return ByteBuffer.wrap(digest.digest()).getLong();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String path(Resource resource) {
+        try {
+            String url = resource.getURL().toString();
+            // the same file in a jar and in a directory has the same checksum
+            return url.substring(url.lastIndexOf("db/changelog/"));
+        } catch (IOException | IndexOutOfBoundsException e) {
+            return String.valueOf(resource.getFilename());
+        }
+    }
+
+    private Long readAppliedChecksum(JdbcTemplate jdbcTemplate) {
+        try {
+            List<Long> values = jdbcTemplate.queryForList(
+                    "SELECT state_value FROM bot_state WHERE name = ?", Long.class, CHECKSUM_STATE);
+            return values.isEmpty() ? null : values.get(0);
+        } catch (DataAccessException e) {
+            // bot_state doesn't exist before the first update
+            return null;
+        }
+    }
+
+    private void saveAppliedChecksum(JdbcTemplate jdbcTemplate, long checksum) {
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        if (jdbcTemplate.update("UPDATE bot_state SET state_value = ?, updated_at = ? WHERE name = ?",
+                checksum, now, CHECKSUM_STATE) == 0) {
+            jdbcTemplate.update("INSERT INTO bot_state (name, state_value, updated_at) VALUES (?, ?, ?)",
+                    CHECKSUM_STATE, checksum, now);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package pro.sky.telegramcatdog.configuration;
+
+import liquibase.integration.spring.SpringLiquibase;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.liquibase.LiquibaseProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+
+/**
+ * Replaces the Liquibase of Spring Boot with {@link ChecksumSkippingLiquibase}
+ * when {@code spring.liquibase.skip-unchanged=true} (profile fast-startup).
+ */
+@Configuration
+@ConditionalOnProperty(name = "spring.liquibase.skip-unchanged", havingValue = "true")
+@EnableConfigurationProperties(LiquibaseProperties.class)
+public class LiquibaseConfiguration {
+
+    @Bean
+    public SpringLiquibase liquibase(DataSource dataSource, LiquibaseProperties properties,
+                                     @Value("${spring.liquibase.changelog-files:classpath*:db/changelog/**}") String changelogFiles) {
+        ChecksumSkippingLiquibase liquibase = new ChecksumSkippingLiquibase(changelogFiles);
+        liquibase.setDataSource(dataSource);
+        liquibase.setChangeLog(properties.getChangeLog());
+        liquibase.setContexts(properties.getContexts());
+        liquibase.setDefaultSchema(properties.getDefaultSchema());
+        liquibase.setDropFirst(properties.isDropFirst());
+        liquibase.setShouldRun(properties.isEnabled());
+        return liquibase;
+    }
+}
@@ -0,0 +1,76 @@
+package pro.sky.telegramcatdog.configuration;
+
+import org.springframework.aot.hint.BindingReflectionHintsRegistrar;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.aot.hint.TypeReference;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.core.type.classreading.MetadataReaderFactory;
+import org.springframework.core.type.classreading.SimpleMetadataReaderFactory;
+import org.springframework.util.ClassUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reflection and resource hints of the native image ({@code ./gradlew nativeCompile}),
+ * for what Spring AOT can't find by itself.
+ * <ul>
+ *     <li>Bot API models, requests and responses: Gson reads and writes their fields by reflection</li>
+ *     <li>entities and events: Jackson binding of the REST and SSE payloads</li>
+ *     <li>emoji-java loads its table from {@code emojis.json}, Liquibase the changelog files</li>
+ * </ul>
+ * The image fixes the {@code @Conditional} bean conditions at build time, so the optional background jobs
+ * are always registered and check their {@code enabled} flags at run time instead.
+ */
+public class NativeImageHints implements RuntimeHintsRegistrar {
+    private static final String[] BOT_API_CLASSES = {
+            "classpath*:com/pengrad/telegrambot/model/**/*.class",
+            "classpath*:com/pengrad/telegrambot/request/**/*.class",
+            "classpath*:com/pengrad/telegrambot/response/**/*.class",
+            "classpath*:com/pengrad/telegrambot/passport/**/*.class"
+    };
+    private static final String[] PAYLOAD_CLASSES = {
+            "classpath*:pro/sky/telegramcatdog/model/*.class",
+            "classpath*:pro/sky/telegramcatdog/event/*.class"
+    };
+
+    private final BindingReflectionHintsRegistrar bindingRegistrar = new BindingReflectionHintsRegistrar();
+
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+        hints.resources()
+                .registerPattern("emojis.json")
+                .registerPattern("db/changelog/*")
+                .registerPattern("db/changelog/sql/*");
+
+        for (String className : classNames(BOT_API_CLASSES, classLoader)) {
+            hints.reflection().registerType(TypeReference.of(className),
+                    MemberCategory.DECLARED_FIELDS,
+                    MemberCategory.INVOKE_DECLARED_CONSTRUCTORS);
+        }
+        for (String className : classNames(PAYLOAD_CLASSES, classLoader)) {
+            bindingRegistrar.registerReflectionHints(hints.reflection(), ClassUtils.resolveClassName(className, classLoader));
+        }
+    }
+
+    private static List<String> classNames(String[] patterns, ClassLoader classLoader) {
+        PathMatchingResourcePatternResolver resolver = new PathMatchingResourcePatternResolver(classLoader);
+        MetadataReaderFactory readerFactory = new SimpleMetadataReaderFactory(classLoader);
+        List<String> classNames = new ArrayList<>();
+        try {
+            for (String pattern : patterns) {
+                for (Resource resource : resolver.getResources(pattern)) {
+                    classNames.add(readerFactory.getMetadataReader(resource).getClassMetadata().getClassName());
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return classNames;
+    }
+}
@@ -0,0 +1,25 @@
+package pro.sky.telegramcatdog.configuration;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Stops the application as soon as it has started when {@code startup.exit-on-ready=true}.
+ * Used by the {@code appCds} Gradle task: the JVM dumps the classes loaded during the startup to the CDS archive on exit.
+ */
+@Component
+@ConditionalOnProperty(name = "startup.exit-on-ready", havingValue = "true")
+public class StartupTrainingExit implements ApplicationListener<ApplicationReadyEvent> {
+    private final Logger logger = LoggerFactory.getLogger(StartupTrainingExit.class);
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        logger.info("Training run: the application has started, exiting");
+        System.exit(SpringApplication.exit(event.getApplicationContext()));
+    }
+}
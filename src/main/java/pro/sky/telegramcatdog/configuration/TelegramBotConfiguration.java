@@ -1,22 +1,69 @@
 package pro.sky.telegramcatdog.configuration;
 
+import com.pengrad.telegrambot.Callback;
 import com.pengrad.telegrambot.TelegramBot;
 import com.pengrad.telegrambot.model.DeleteMyCommands;
+import com.pengrad.telegrambot.response.BaseResponse;
+import okhttp3.OkHttpClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
 
+import java.io.IOException;
+import java.time.Duration;
+
 @Configuration
 @Profile("!test")
 public class TelegramBotConfiguration {
+    private final Logger logger = LoggerFactory.getLogger(TelegramBotConfiguration.class);
+
     @Value("${telegram.bot.token}")
     private String token;
 
+    /**
+     * Bot API base url, the token and the method name are appended to it.
+     * Empty means the real Telegram API. Point it to the fake server for load tests,
+     * e.g. {@code http://localhost:8089/bot}
+     */
+    @Value("${telegram.bot.api-url:}")
+    private String apiUrl;
+
+    /**
+     * Connect, read and write timeout of a Bot API call, it bounds the time a slow Telegram holds an update.
+     * The updates are polled without long polling, so it is not limited by the polling timeout.
+     */
+    @Value("${telegram.bot.api-timeout:PT10S}")
+    private Duration apiTimeout;
+
     @Bean
     public TelegramBot telegramBot() {
-        TelegramBot bot = new TelegramBot(token);
-        bot.execute(new DeleteMyCommands());
+        TelegramBot.Builder builder = new TelegramBot.Builder(token)
+                .okHttpClient(new OkHttpClient.Builder()
+                        .connectTimeout(apiTimeout)
+                        .readTimeout(apiTimeout)
+                        .writeTimeout(apiTimeout)
+                        .build());
+        if (!apiUrl.isEmpty()) {
+            builder.apiUrl(apiUrl);
+        }
+        TelegramBot bot = builder.build();
+        // Not needed to handle updates, so it doesn't delay the startup
+        bot.execute(new DeleteMyCommands(), new Callback<DeleteMyCommands, BaseResponse>() {
+            @Override
+            public void onResponse(DeleteMyCommands request, BaseResponse response) {
+                if (!response.isOk()) {
+                    logger.warn("Bot commands are not deleted: {} {}", response.errorCode(), response.description());
+                }
+            }
+
+            @Override
+            public void onFailure(DeleteMyCommands request, IOException e) {
+                logger.warn("Bot commands are not deleted", e);
+            }
+        });
         return bot;
     }
 }
@@ -20,6 +20,12 @@ public class Constants {
     public final static String CONTACT_TELEGRAM_ID_TEXT = "Пожалуйста свяжитесь с пользователем id %s. Ему нужна помощь.";
     public final static String NO_VOLUNTEERS_TEXT = "На данный момент нет свободных волонтеров.";
 
+    // Notifications (sent through the outbox)
+    public final static String NEW_ADOPTION_REPORT_TEXT = "Новый ежедневный отчет от усыновителя id %d, отчет id %d.";
+    public final static String ADOPTER_ON_PROBATION_TEXT = "Вам назначен испытательный срок. Не забывайте присылать ежедневные отчеты о питомце.";
+    public final static String ADOPTER_APPROVED_TEXT = "Поздравляем! Вы успешно прошли испытательный срок " + EMOJI_SMILEY;
+    public final static String ADOPTER_REJECTED_TEXT = "К сожалению, Вы не прошли испытательный срок. Волонтер свяжется с Вами.";
+
     // Buttons text
     public final static String BUTTON_CAT_SHELTER_TEXT = "Приют для кошек";
     public final static String BUTTON_DOG_SHELTER_TEXT = "Приют для собак";
@@ -42,6 +48,10 @@ public class Constants {
     public final static String BUTTON_STAGE3_CALLBACK_TEXT = "button_Stage3_clicked";
     public final static String BUTTON_CALL_VOLUNTEER_CALLBACK_TEXT = "button_CallVolunteer_clicked";
 
+    // REST media types
+    /** JSON Merge Patch (RFC 7386), body of the PATCH endpoints */
+    public final static String MERGE_PATCH_JSON_VALUE = "application/merge-patch+json";
+
     // REST endpoint testing urls
     public final static String LOCALHOST_URL = "http://localhost:";
     public final static String BRANCHPARAMS_URL = "/pet-shelter/params";
@@ -49,6 +59,7 @@ public class Constants {
     public final static String VOLUNTEER_URL = "/pet-shelter/volunteer";
     public final static String BREED_URL = "/pet-shelter/breed";
     public final static String ADOPTION_REPORT_URL = "/pet-shelter/adoptionReport";
+    public final static String ADOPTER_URL = "/pet-shelter/adopter";
 
     public final static String ADOPTIONDOC_URL = "/pet-shelter/docs";
 
@@ -0,0 +1,44 @@
+package pro.sky.telegramcatdog.controller;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+import pro.sky.telegramcatdog.constants.AdopterStatus;
+import pro.sky.telegramcatdog.model.Adopter;
+import pro.sky.telegramcatdog.service.AdopterService;
+
+@RestController
+@RequestMapping("/pet-shelter/adopter")
+public class AdopterController {
+
+    private final AdopterService adopterService;
+
+    public AdopterController(AdopterService adopterService) {
+        this.adopterService = adopterService;
+    }
+
+    @Operation(
+            summary = "Изменение статуса усыновителя",
+            description = "Усыновитель получает уведомление в Telegram",
+            responses = {
+                    @ApiResponse(
+                            responseCode = "200",
+                            description = "Усыновитель с новым статусом",
+                            content = @Content(
+                                    mediaType = MediaType.APPLICATION_JSON_VALUE,
+                                    schema = @Schema(implementation = Adopter.class)
+                            )
+                    )
+            },
+            tags = "Работа с усыновителями"
+    )
+    @PutMapping("{adopterId}/status")
+    public Adopter changeStatus(@Parameter(description = "id усыновителя", example = "1") @PathVariable long adopterId,
+                                @Parameter(description = "новый статус", example = "APPROVED") @RequestParam AdopterStatus status) {
+        return adopterService.changeStatus(adopterId, status);
+    }
+}
@@ -1,16 +1,21 @@
 package pro.sky.telegramcatdog.controller;
 
 
+import com.fasterxml.jackson.databind.JsonNode;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import pro.sky.telegramcatdog.model.AdoptionDoc;
 import pro.sky.telegramcatdog.service.AdoptionDocService;
 
+import static pro.sky.telegramcatdog.constants.Constants.MERGE_PATCH_JSON_VALUE;
+
 @RestController
 @RequestMapping("pet-shelter/docs")
 public class AdoptionDocController {
@@ -36,8 +41,9 @@ public class AdoptionDocController {
             tags = "Работа с документами"
     )
     @GetMapping("{id}")
-    public AdoptionDoc readAdoptionDocById(@Parameter(description = "id документа", example = "42") @PathVariable Long id) {
-        return adoptionDocService.readAdoptionDoc(id);
+    public ResponseEntity<AdoptionDoc> readAdoptionDocById(@Parameter(description = "id документа", example = "42") @PathVariable Long id) {
+        AdoptionDoc adoptionDoc = adoptionDocService.readAdoptionDoc(id);
+        return ETags.ok(adoptionDoc);
     }
 
     @Operation(
@@ -87,8 +93,41 @@ public class AdoptionDocController {
                     )
             )
     )
+    @VersionConflictResponse
     @PutMapping
-    public AdoptionDoc updateAdoptionDoc(@RequestBody AdoptionDoc adoptionDoc) {
-        return adoptionDocService.updateAdoptionDoc(adoptionDoc);
+    public ResponseEntity<AdoptionDoc> updateAdoptionDoc(@RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                                         @RequestBody AdoptionDoc adoptionDoc) {
+        AdoptionDoc updatedDoc = adoptionDocService.updateAdoptionDoc(adoptionDoc, ETags.parseIfMatch(ifMatch));
+        if (updatedDoc == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ETags.ok(updatedDoc);
+    }
+
+    @Operation(
+            summary = "Частичное изменение документа (JSON Merge Patch)",
+            responses = {
+                    @ApiResponse(
+                            responseCode = "200",
+                            description = "Обновленные параметры документа",
+                            content = @Content(
+                                    mediaType = MediaType.APPLICATION_JSON_VALUE,
+                                    schema = @Schema(implementation = AdoptionDoc.class)
+                            )
+                    )
+            },
+            tags = "Работа с документами",
+            requestBody = @io.swagger.v3.oas.annotations.parameters.RequestBody(
+                    description = "Только изменяемые поля, null очищает поле",
+                    content = @Content(mediaType = MERGE_PATCH_JSON_VALUE)
+            )
+    )
+    @VersionConflictResponse
+    @PatchMapping(path = "{id}", consumes = {MERGE_PATCH_JSON_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    public ResponseEntity<AdoptionDoc> patchAdoptionDoc(@Parameter(description = "id документа", example = "42") @PathVariable Long id,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+            @RequestBody JsonNode patch) {
+        AdoptionDoc updatedDoc = adoptionDocService.patchAdoptionDoc(id, patch, ETags.parseIfMatch(ifMatch));
+        return ETags.ok(updatedDoc);
     }
 }
@@ -1,9 +1,13 @@
 package pro.sky.telegramcatdog.controller;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -11,6 +15,13 @@ import pro.sky.telegramcatdog.model.AdoptionReport;
 import pro.sky.telegramcatdog.model.Volunteer;
 import pro.sky.telegramcatdog.service.AdoptionReportService;
 
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+import static pro.sky.telegramcatdog.constants.Constants.MERGE_PATCH_JSON_VALUE;
+
 @RestController
 @RequestMapping("/pet-shelter/adoptionReport")
 public class AdoptionReportController {
@@ -71,14 +82,40 @@ public class AdoptionReportController {
                     )
             )
     )
+    @VersionConflictResponse
     @PutMapping("/{adoptionReportId}")
-    public AdoptionReport updateAdoptionReport(@PathVariable long adoptionReportId,
-                            @RequestBody AdoptionReport adoptionReport) {
-        return adoptionReportService.updateAdoptionReport(adoptionReportId, adoptionReport);
+    public ResponseEntity<AdoptionReport> updateAdoptionReport(@PathVariable long adoptionReportId,
+                                                               @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                                               @RequestBody AdoptionReport adoptionReport) {
+        AdoptionReport updatedReport = adoptionReportService.updateAdoptionReport(
+                adoptionReportId, adoptionReport, ETags.parseIfMatch(ifMatch));
+        return ETags.ok(updatedReport);
     }
 
 
 
+    @Operation(
+            summary = "Ежедневные отчеты за последние дни",
+            responses = {
+                    @ApiResponse(
+                            responseCode = "200",
+                            description = "Отчеты, начиная с самого нового",
+                            content = @Content(
+                                    mediaType = MediaType.APPLICATION_JSON_VALUE,
+                                    array = @ArraySchema(schema = @Schema(implementation = AdoptionReport.class))
+                            )
+                    )
+            },
+            tags = "Работа с ежедневными отчетами"
+    )
+    @GetMapping
+    public List<AdoptionReport> readRecentAdoptionReports(
+            @Parameter(description = "количество дней", example = "30") @RequestParam(defaultValue = "30") int days,
+            @Parameter(description = "id усыновителя, если нужны отчеты только одного усыновителя")
+            @RequestParam(required = false) Long adopterId) {
+        return adoptionReportService.readRecentAdoptionReports(days, adopterId);
+    }
+
     @Operation(
             summary = "Поиск ежедневного отчета по id",
             responses = {
@@ -94,12 +131,188 @@ public class AdoptionReportController {
             tags = "Работа с ежедневными отчетами"
     )
     @GetMapping("{adoptionReportId}")
-    public ResponseEntity<AdoptionReport> readAdoptionReport(@PathVariable long adoptionReportId) {
-        AdoptionReport findAdoptionReport = adoptionReportService.readAdoptionReport(adoptionReportId);
+    public ResponseEntity<AdoptionReport> readAdoptionReport(@PathVariable long adoptionReportId,
+            @Parameter(description = "дата отчета из самого отчета, без нее отчет ищется во всех месяцах")
+            @RequestParam(required = false) Instant reportDate) {
+        AdoptionReport findAdoptionReport = adoptionReportService.readAdoptionReport(adoptionReportId, toTimestamp(reportDate));
         if (findAdoptionReport == null) {
             return ResponseEntity.notFound().build();
         }
-        return ResponseEntity.ok(findAdoptionReport);
+        return ETags.ok(findAdoptionReport);
+    }
+
+    @Operation(
+            summary = "Фотография из ежедневного отчета",
+            responses = {
+                    @ApiResponse(
+                            responseCode = "200",
+                            description = "Фотография, уменьшенная до допустимого размера",
+                            content = @Content(mediaType = MediaType.IMAGE_JPEG_VALUE)
+                    ),
+                    @ApiResponse(
+                            responseCode = "404",
+                            description = "Нет отчета с таким id или в нем нет фотографии"
+                    )
+            },
+            tags = "Работа с ежедневными отчетами"
+    )
+    @GetMapping("{adoptionReportId}/picture")
+    public ResponseEntity<byte[]> readPicture(@PathVariable long adoptionReportId,
+            @Parameter(description = "дата отчета из самого отчета, без нее отчет ищется во всех месяцах")
+            @RequestParam(required = false) Instant reportDate) {
+        return toImageResponse(adoptionReportService.readPicture(adoptionReportId, toTimestamp(reportDate)));
     }
 
+    @Operation(
+            summary = "Миниатюра фотографии из ежедневного отчета",
+            responses = {
+                    @ApiResponse(
+                            responseCode = "200",
+                            description = "Миниатюра для списков и проверки отчетов",
+                            content = @Content(mediaType = MediaType.IMAGE_JPEG_VALUE)
+                    ),
+                    @ApiResponse(
+                            responseCode = "404",
+                            description = "Нет отчета с таким id или в нем нет фотографии"
+                    )
+            },
+            tags = "Работа с ежедневными отчетами"
+    )
+    @GetMapping("{adoptionReportId}/thumbnail")
+    public ResponseEntity<byte[]> readThumbnail(@PathVariable long adoptionReportId,
+            @Parameter(description = "дата отчета из самого отчета, без нее отчет ищется во всех месяцах")
+            @RequestParam(required = false) Instant reportDate) {
+        return toImageResponse(adoptionReportService.readThumbnail(adoptionReportId, toTimestamp(reportDate)));
+    }
+
+    @Operation(
+            summary = "Частичное изменение ежедневного отчета (JSON Merge Patch)",
+            responses = {
+                    @ApiResponse(
+                            responseCode = "200",
+                            description = "Обновленные параметры ежедневного отчета",
+                            content = @Content(
+                                    mediaType = MediaType.APPLICATION_JSON_VALUE,
+                                    schema = @Schema(implementation = AdoptionReport.class)
+                            )
+                    )
+            },
+            tags = "Работа с ежедневными отчетами",
+            requestBody = @io.swagger.v3.oas.annotations.parameters.RequestBody(
+                    description = "Только изменяемые поля, null очищает поле",
+                    content = @Content(mediaType = MERGE_PATCH_JSON_VALUE)
+            )
+    )
+    @VersionConflictResponse
+    @PatchMapping(path = "{id}", consumes = {MERGE_PATCH_JSON_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    public ResponseEntity<AdoptionReport> patchAdoptionReport(@Parameter(description = "id ежедневного отчета", example = "1") @PathVariable Long id,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+            @Parameter(description = "дата отчета из самого отчета, без нее отчет ищется во всех месяцах")
+            @RequestParam(required = false) Instant reportDate,
+            @RequestBody JsonNode patch) {
+        AdoptionReport updatedReport = adoptionReportService.patchAdoptionReport(id, patch, ETags.parseIfMatch(ifMatch),
+                toTimestamp(reportDate));
+        return ETags.ok(updatedReport);
+    }
+
+    @Operation(
+            summary = "Очередь непроверенных отчетов волонтера",
+            description = "Отчеты усыновителей волонтера, начиная с самого старого. "
+                    + "Следующая страница запрашивается с датой и id последнего отчета текущей страницы",
+            responses = {
+                    @ApiResponse(
+                            responseCode = "200",
+                            description = "Страница очереди",
+                            content = @Content(
+                                    mediaType = MediaType.APPLICATION_JSON_VALUE,
+                                    array = @ArraySchema(schema = @Schema(implementation = AdoptionReport.class))
+                            )
+                    )
+            },
+            tags = "Проверка ежедневных отчетов"
+    )
+    @GetMapping("review")
+    public List<AdoptionReport> readReviewQueue(
+            @Parameter(description = "id волонтера", example = "1") @RequestParam int volunteerId,
+            @Parameter(description = "дата последнего отчета предыдущей страницы")
+            @RequestParam(required = false) Instant afterDate,
+            @Parameter(description = "id последнего отчета предыдущей страницы")
+            @RequestParam(defaultValue = "0") long afterId,
+            @Parameter(description = "размер страницы", example = "20")
+            @RequestParam(defaultValue = "20") int limit) {
+        return adoptionReportService.readReviewQueue(volunteerId, toTimestamp(afterDate), afterId, limit);
+    }
+
+    @Operation(
+            summary = "Взять на проверку следующий отчет",
+            description = "Самый старый непроверенный отчет закрепляется за волонтером, другие волонтеры его не получат",
+            responses = {
+                    @ApiResponse(
+                            responseCode = "200",
+                            description = "Отчет, закрепленный за волонтером",
+                            content = @Content(
+                                    mediaType = MediaType.APPLICATION_JSON_VALUE,
+                                    schema = @Schema(implementation = AdoptionReport.class)
+                            )
+                    ),
+                    @ApiResponse(
+                            responseCode = "204",
+                            description = "Непроверенных отчетов нет"
+                    )
+            },
+            tags = "Проверка ежедневных отчетов"
+    )
+    @PostMapping("review/next")
+    public ResponseEntity<AdoptionReport> claimNextReport(
+            @Parameter(description = "id волонтера", example = "1") @RequestParam int volunteerId) {
+        AdoptionReport claimedReport = adoptionReportService.claimNextReport(volunteerId);
+        if (claimedReport == null) {
+            return ResponseEntity.noContent().build();
+        }
+        return ETags.ok(claimedReport);
+    }
+
+    @Operation(
+            summary = "Завершить проверку отчета",
+            responses = {
+                    @ApiResponse(
+                            responseCode = "200",
+                            description = "Проверенный отчет",
+                            content = @Content(
+                                    mediaType = MediaType.APPLICATION_JSON_VALUE,
+                                    schema = @Schema(implementation = AdoptionReport.class)
+                            )
+                    ),
+                    @ApiResponse(
+                            responseCode = "409",
+                            description = "Отчет не закреплен за этим волонтером"
+                    )
+            },
+            tags = "Проверка ежедневных отчетов"
+    )
+    @PostMapping("review/{adoptionReportId}")
+    public AdoptionReport completeReview(
+            @Parameter(description = "id ежедневного отчета", example = "1") @PathVariable long adoptionReportId,
+            @Parameter(description = "id волонтера", example = "1") @RequestParam int volunteerId,
+            @Parameter(description = "дата отчета из самого отчета, без нее отчет ищется во всех месяцах")
+            @RequestParam(required = false) Instant reportDate) {
+        return adoptionReportService.completeReview(adoptionReportId, volunteerId, toTimestamp(reportDate));
+    }
+
+    private static Timestamp toTimestamp(Instant instant) {
+        return instant == null ? null : Timestamp.from(instant);
+    }
+
+    private static ResponseEntity<byte[]> toImageResponse(Optional<byte[]> image) {
+        return image
+                .map(bytes -> ResponseEntity.ok()
+                        // pictures that could not be decoded are stored as they were sent
+                        .contentType(isJpeg(bytes) ? MediaType.IMAGE_JPEG : MediaType.APPLICATION_OCTET_STREAM)
+                        .body(bytes))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    private static boolean isJpeg(byte[] bytes) {
+        return bytes.length > 2 && bytes[0] == (byte) 0xFF && bytes[1] == (byte) 0xD8;
+    }
 }
@@ -1,15 +1,20 @@
 package pro.sky.telegramcatdog.controller;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import pro.sky.telegramcatdog.model.BranchParams;
 import pro.sky.telegramcatdog.service.BranchParamsService;
 
+import static pro.sky.telegramcatdog.constants.Constants.MERGE_PATCH_JSON_VALUE;
+
 @RestController
 @RequestMapping("pet-shelter/params")
 public class BranchParamsController {
@@ -34,8 +39,9 @@ public class BranchParamsController {
             tags = "Работа с бранчами"
     )
     @GetMapping("{id}")
-    public BranchParams getBranchById(@Parameter(description = "id бранча", example = "1") @PathVariable Integer id) {
-        return branchParamsService.getBranchById(id);
+    public ResponseEntity<BranchParams> getBranchById(@Parameter(description = "id бранча", example = "1") @PathVariable Integer id) {
+        BranchParams branchParams = branchParamsService.getBranchById(id);
+        return ETags.ok(branchParams);
     }
 
     @Operation(
@@ -85,8 +91,41 @@ public class BranchParamsController {
                     )
             )
     )
+    @VersionConflictResponse
     @PutMapping
-    public BranchParams editBranch(@RequestBody BranchParams branchParams) {
-        return branchParamsService.editBranch(branchParams);
+    public ResponseEntity<BranchParams> editBranch(@RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                                   @RequestBody BranchParams branchParams) {
+        BranchParams editedBranch = branchParamsService.editBranch(branchParams, ETags.parseIfMatch(ifMatch));
+        if (editedBranch == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ETags.ok(editedBranch);
+    }
+
+    @Operation(
+            summary = "Частичное изменение бранча (JSON Merge Patch)",
+            responses = {
+                    @ApiResponse(
+                            responseCode = "200",
+                            description = "Обновленные параметры бранча",
+                            content = @Content(
+                                    mediaType = MediaType.APPLICATION_JSON_VALUE,
+                                    schema = @Schema(implementation = BranchParams.class)
+                            )
+                    )
+            },
+            tags = "Работа с бранчами",
+            requestBody = @io.swagger.v3.oas.annotations.parameters.RequestBody(
+                    description = "Только изменяемые поля, null очищает поле",
+                    content = @Content(mediaType = MERGE_PATCH_JSON_VALUE)
+            )
+    )
+    @VersionConflictResponse
+    @PatchMapping(path = "{id}", consumes = {MERGE_PATCH_JSON_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    public ResponseEntity<BranchParams> patchBranchParams(@Parameter(description = "id бранча", example = "1") @PathVariable Integer id,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+            @RequestBody JsonNode patch) {
+        BranchParams editedBranch = branchParamsService.patchBranch(id, patch, ETags.parseIfMatch(ifMatch));
+        return ETags.ok(editedBranch);
     }
 }
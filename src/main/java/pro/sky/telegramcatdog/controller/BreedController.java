@@ -1,15 +1,20 @@
 package pro.sky.telegramcatdog.controller;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import pro.sky.telegramcatdog.model.Breed;
 import pro.sky.telegramcatdog.service.BreedService;
 
+import static pro.sky.telegramcatdog.constants.Constants.MERGE_PATCH_JSON_VALUE;
+
 @RestController
 @RequestMapping("pet-shelter/breed")
 public class BreedController {
@@ -36,8 +41,9 @@ public class BreedController {
             tags = "Работа с породами"
     )
     @GetMapping("{id}")
-    public Breed getBreedId(@Parameter(description = "id породы", example = "1") @PathVariable Integer id) {
-        return breedService.readBreed(id);
+    public ResponseEntity<Breed> getBreedId(@Parameter(description = "id породы", example = "1") @PathVariable Integer id) {
+        Breed breed = breedService.readBreed(id);
+        return ETags.ok(breed);
     }
 
     @Operation(
@@ -87,8 +93,41 @@ public class BreedController {
                     )
             )
     )
+    @VersionConflictResponse
     @PutMapping
-    public Breed editBreed(@RequestBody Breed breed) {
-        return breedService.editBreed(breed);
+    public ResponseEntity<Breed> editBreed(@RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                           @RequestBody Breed breed) {
+        Breed editedBreed = breedService.editBreed(breed, ETags.parseIfMatch(ifMatch));
+        if (editedBreed == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ETags.ok(editedBreed);
+    }
+
+    @Operation(
+            summary = "Частичное изменение породы (JSON Merge Patch)",
+            responses = {
+                    @ApiResponse(
+                            responseCode = "200",
+                            description = "Обновленные параметры породы",
+                            content = @Content(
+                                    mediaType = MediaType.APPLICATION_JSON_VALUE,
+                                    schema = @Schema(implementation = Breed.class)
+                            )
+                    )
+            },
+            tags = "Работа с породами",
+            requestBody = @io.swagger.v3.oas.annotations.parameters.RequestBody(
+                    description = "Только изменяемые поля, null очищает поле",
+                    content = @Content(mediaType = MERGE_PATCH_JSON_VALUE)
+            )
+    )
+    @VersionConflictResponse
+    @PatchMapping(path = "{id}", consumes = {MERGE_PATCH_JSON_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    public ResponseEntity<Breed> patchBreed(@Parameter(description = "id породы", example = "1") @PathVariable Long id,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+            @RequestBody JsonNode patch) {
+        Breed editedBreed = breedService.patchBreed(id, patch, ETags.parseIfMatch(ifMatch));
+        return ETags.ok(editedBreed);
     }
 }
@@ -0,0 +1,45 @@
+package pro.sky.telegramcatdog.controller;
+
+import org.springframework.http.ResponseEntity;
+import pro.sky.telegramcatdog.model.Versioned;
+
+/**
+ * Entity versions in {@code ETag} / {@code If-Match} headers.
+ */
+final class ETags {
+
+    private ETags() {
+    }
+
+    static String of(int version) {
+        return "\"" + version + "\"";
+    }
+
+    /**
+     * 200 with the entity and its version in {@code ETag}.
+     */
+    static <T extends Versioned> ResponseEntity<T> ok(T entity) {
+        return ResponseEntity.ok().eTag(of(entity.getVersion())).body(entity);
+    }
+
+    /**
+     * @param ifMatch value of the {@code If-Match} header, e.g. {@code "3"} or {@code W/"3"}
+     * @return expected version or {@code null} if the header is absent or {@code *}
+     */
+    static Integer parseIfMatch(String ifMatch) {
+        if (ifMatch == null || ifMatch.isBlank() || ifMatch.trim().equals("*")) {
+            return null;
+        }
+        String tag = ifMatch.trim();
+        if (tag.startsWith("W/")) {
+            tag = tag.substring(2);
+        }
+        tag = tag.replace("\"", "");
+        try {
+            return Integer.valueOf(tag);
+        } catch (NumberFormatException e) {
+            // Not one of our tags, it can't match any version
+            return -1;
+        }
+    }
+}
@@ -1,15 +1,20 @@
 package pro.sky.telegramcatdog.controller;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import pro.sky.telegramcatdog.model.Pet;
 import pro.sky.telegramcatdog.service.PetService;
 
+import static pro.sky.telegramcatdog.constants.Constants.MERGE_PATCH_JSON_VALUE;
+
 @RestController
 @RequestMapping("pet-shelter/pet")
 public class PetController {
@@ -35,8 +40,9 @@ public class PetController {
             tags = "Работа с питомцами"
     )
     @GetMapping("{id}")
-    public Pet getPet(@Parameter(description = "id питомца", example = "1") @PathVariable Long id) {
-        return petService.findPet(id);
+    public ResponseEntity<Pet> getPet(@Parameter(description = "id питомца", example = "1") @PathVariable Long id) {
+        Pet pet = petService.findPet(id);
+        return ETags.ok(pet);
     }
 
     @Operation(
@@ -86,8 +92,41 @@ public class PetController {
                     )
             )
     )
+    @VersionConflictResponse
     @PutMapping
-    public Pet editPet(@RequestBody Pet pet) {
-        return petService.editPet(pet);
+    public ResponseEntity<Pet> editPet(@RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                       @RequestBody Pet pet) {
+        Pet editedPet = petService.editPet(pet, ETags.parseIfMatch(ifMatch));
+        if (editedPet == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ETags.ok(editedPet);
+    }
+
+    @Operation(
+            summary = "Частичное изменение питомца (JSON Merge Patch)",
+            responses = {
+                    @ApiResponse(
+                            responseCode = "200",
+                            description = "Обновленные параметры питомца",
+                            content = @Content(
+                                    mediaType = MediaType.APPLICATION_JSON_VALUE,
+                                    schema = @Schema(implementation = Pet.class)
+                            )
+                    )
+            },
+            tags = "Работа с питомцами",
+            requestBody = @io.swagger.v3.oas.annotations.parameters.RequestBody(
+                    description = "Только изменяемые поля, null очищает поле",
+                    content = @Content(mediaType = MERGE_PATCH_JSON_VALUE)
+            )
+    )
+    @VersionConflictResponse
+    @PatchMapping(path = "{id}", consumes = {MERGE_PATCH_JSON_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    public ResponseEntity<Pet> patchPet(@Parameter(description = "id питомца", example = "1") @PathVariable Long id,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+            @RequestBody JsonNode patch) {
+        Pet editedPet = petService.patchPet(id, patch, ETags.parseIfMatch(ifMatch));
+        return ETags.ok(editedPet);
     }
 }
@@ -0,0 +1,20 @@
+package pro.sky.telegramcatdog.controller;
+
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Documents the 412 answer of the PUT and PATCH requests checked against {@code If-Match}.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@ApiResponse(
+        responseCode = "412",
+        description = "Объект был изменен другим пользователем, версия в If-Match устарела"
+)
+@interface VersionConflictResponse {
+}
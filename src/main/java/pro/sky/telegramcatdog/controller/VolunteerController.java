@@ -1,23 +1,54 @@
 package pro.sky.telegramcatdog.controller;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import pro.sky.telegramcatdog.model.Volunteer;
+import pro.sky.telegramcatdog.service.VolunteerFeedService;
 import pro.sky.telegramcatdog.service.VolunteerService;
 
+import static pro.sky.telegramcatdog.constants.Constants.MERGE_PATCH_JSON_VALUE;
+
 @RestController
 @RequestMapping("pet-shelter/volunteer")
 public class VolunteerController {
 
     private final VolunteerService volunteerService;
+    private final VolunteerFeedService volunteerFeedService;
 
-    public VolunteerController(VolunteerService volunteerService) {
+    public VolunteerController(VolunteerService volunteerService, VolunteerFeedService volunteerFeedService) {
         this.volunteerService = volunteerService;
+        this.volunteerFeedService = volunteerFeedService;
+    }
+
+    @Operation(
+            summary = "Поток событий для волонтеров (Server-Sent Events)",
+            description = "События adoption-report (новый ежедневный отчет) и help-request (гость позвал волонтера). "
+                    + "Событие overflow означает, что часть событий пропущена и данные нужно перечитать",
+            responses = {
+                    @ApiResponse(
+                            responseCode = "200",
+                            description = "Поток событий",
+                            content = @Content(mediaType = MediaType.TEXT_EVENT_STREAM_VALUE)
+                    )
+            },
+            tags = "Работа с волонтерами"
+    )
+    @GetMapping(path = "feed", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter subscribeToFeed(
+            @Parameter(description = "id волонтера, если нужны только его события", example = "1")
+            @RequestParam(required = false) Integer volunteerId,
+            @Parameter(description = "id последнего полученного события, для повторного подключения")
+            @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId) {
+        return volunteerFeedService.subscribe(volunteerId, lastEventId);
     }
 
     @Operation(
@@ -40,7 +71,7 @@ public class VolunteerController {
         if (findVolunteer == null) {
             return ResponseEntity.notFound().build();
         }
-        return ResponseEntity.ok(findVolunteer);
+        return ETags.ok(findVolunteer);
     }
 
     @Operation(
@@ -90,9 +121,39 @@ public class VolunteerController {
                     )
             )
     )
+    @VersionConflictResponse
     @PutMapping("{volunteerId}")
-    public Volunteer updateVolunteer(@PathVariable long volunteerId,
-                                   @RequestBody Volunteer volunteer) {
-        return volunteerService.updateVolunteer(volunteerId, volunteer);
+    public ResponseEntity<Volunteer> updateVolunteer(@PathVariable long volunteerId,
+                                                     @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                                     @RequestBody Volunteer volunteer) {
+        Volunteer updatedVolunteer = volunteerService.updateVolunteer(volunteerId, volunteer, ETags.parseIfMatch(ifMatch));
+        return ETags.ok(updatedVolunteer);
+    }
+
+    @Operation(
+            summary = "Частичное изменение волонтера (JSON Merge Patch)",
+            responses = {
+                    @ApiResponse(
+                            responseCode = "200",
+                            description = "Обновленные параметры волонтера",
+                            content = @Content(
+                                    mediaType = MediaType.APPLICATION_JSON_VALUE,
+                                    schema = @Schema(implementation = Volunteer.class)
+                            )
+                    )
+            },
+            tags = "Работа с волонтерами",
+            requestBody = @io.swagger.v3.oas.annotations.parameters.RequestBody(
+                    description = "Только изменяемые поля, null очищает поле",
+                    content = @Content(mediaType = MERGE_PATCH_JSON_VALUE)
+            )
+    )
+    @VersionConflictResponse
+    @PatchMapping(path = "{id}", consumes = {MERGE_PATCH_JSON_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    public ResponseEntity<Volunteer> patchVolunteer(@Parameter(description = "id волонтера", example = "1") @PathVariable Long id,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+            @RequestBody JsonNode patch) {
+        Volunteer updatedVolunteer = volunteerService.patchVolunteer(id, patch, ETags.parseIfMatch(ifMatch));
+        return ETags.ok(updatedVolunteer);
     }
 }
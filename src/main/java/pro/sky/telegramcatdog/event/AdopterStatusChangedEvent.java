@@ -0,0 +1,11 @@
+package pro.sky.telegramcatdog.event;
+
+import pro.sky.telegramcatdog.constants.AdopterStatus;
+
+/**
+ * Status of the adopter has been changed by a volunteer.
+ *
+ * @param telegram telegram id of the adopter, see {@code adopters.telegram}
+ */
+public record AdopterStatusChangedEvent(long adopterId, String telegram, AdopterStatus status) {
+}
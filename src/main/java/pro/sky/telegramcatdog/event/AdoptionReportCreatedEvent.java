@@ -0,0 +1,22 @@
+package pro.sky.telegramcatdog.event;
+
+import java.sql.Timestamp;
+
+/**
+ * A new adoption report has been saved.
+ *
+ * @param volunteerId volunteer of the adopter, {@code null} if the report has no adopter
+ */
+public record AdoptionReportCreatedEvent(long reportId, Long adopterId, Integer volunteerId, Timestamp reportDate)
+        implements VolunteerEvent {
+
+    @Override
+    public String name() {
+        return "adoption-report";
+    }
+
+    @Override
+    public Integer volunteerIdOrNull() {
+        return volunteerId;
+    }
+}
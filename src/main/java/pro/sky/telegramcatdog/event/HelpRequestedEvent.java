@@ -0,0 +1,20 @@
+package pro.sky.telegramcatdog.event;
+
+/**
+ * A guest has clicked "Call a volunteer" in the bot.
+ *
+ * @param username    telegram username of the guest, {@code null} if the guest has none
+ * @param volunteerId volunteer the request was sent to, {@code null} if there are no volunteers
+ */
+public record HelpRequestedEvent(long chatId, String username, Long volunteerId) implements VolunteerEvent {
+
+    @Override
+    public String name() {
+        return "help-request";
+    }
+
+    @Override
+    public Integer volunteerIdOrNull() {
+        return volunteerId == null ? null : volunteerId.intValue();
+    }
+}
@@ -0,0 +1,19 @@
+package pro.sky.telegramcatdog.event;
+
+/**
+ * Event shown on the volunteer dashboards, see {@link pro.sky.telegramcatdog.service.VolunteerFeedService}.
+ */
+public interface VolunteerEvent {
+
+    /**
+     * @return name of the SSE event
+     */
+    String name();
+
+    /**
+     * @return volunteer the event is addressed to, {@code null} if it is for all volunteers
+     */
+    default Integer volunteerIdOrNull() {
+        return null;
+    }
+}
@@ -0,0 +1,15 @@
+package pro.sky.telegramcatdog.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * The queue of the image processing pool is full, the client should retry later.
+ */
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class ImageProcessingBusyException extends RuntimeException {
+
+    public ImageProcessingBusyException() {
+        super("Too many images are being processed, try again later");
+    }
+}
@@ -0,0 +1,15 @@
+package pro.sky.telegramcatdog.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * The picture has more pixels than {@code adoption-reports.images.max-pixels}, it is not decoded.
+ */
+@ResponseStatus(HttpStatus.PAYLOAD_TOO_LARGE)
+public class ImageTooLargeException extends RuntimeException {
+
+    public ImageTooLargeException(int width, int height) {
+        super("Picture " + width + "x" + height + " has too many pixels");
+    }
+}
@@ -0,0 +1,28 @@
+package pro.sky.telegramcatdog.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * The volunteer tries to complete the review of a report that is not claimed by them
+ * (claimed by someone else, already reviewed or never claimed).
+ */
+@ResponseStatus(HttpStatus.CONFLICT)
+public class ReviewNotClaimedException extends RuntimeException {
+    private long id;
+    private long volunteerId;
+
+    public ReviewNotClaimedException(long id, long volunteerId) {
+        super("Adoption report id " + id + " is not claimed by volunteer id " + volunteerId);
+        this.id = id;
+        this.volunteerId = volunteerId;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public long getVolunteerId() {
+        return volunteerId;
+    }
+}
@@ -0,0 +1,28 @@
+package pro.sky.telegramcatdog.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * The entity was modified by someone else after the client has read it
+ * (its version differs from the one in {@code If-Match} header or in the request body).
+ */
+@ResponseStatus(HttpStatus.PRECONDITION_FAILED)
+public class VersionConflictException extends RuntimeException {
+    private long id;
+    private int version;
+
+    public VersionConflictException(long id, int version) {
+        super("Entity id " + id + " has been modified, version " + version + " is outdated");
+        this.id = id;
+        this.version = version;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+}
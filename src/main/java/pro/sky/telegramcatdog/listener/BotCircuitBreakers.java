@@ -0,0 +1,54 @@
+package pro.sky.telegramcatdog.listener;
+
+import com.google.gson.Gson;
+import com.pengrad.telegrambot.TelegramBot;
+import com.pengrad.telegrambot.request.BaseRequest;
+import com.pengrad.telegrambot.response.BaseResponse;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Circuit breakers of the bot pipeline: one for the Telegram Bot API, one for the database.
+ */
+@Component
+public class BotCircuitBreakers {
+    private static final String UNAVAILABLE_RESPONSE =
+            "{\"ok\":false,\"error_code\":503,\"description\":\"Service Unavailable: Telegram is not called\"}";
+
+    private final Gson gson = new Gson();
+    private final CircuitBreaker telegram;
+    private final CircuitBreaker database;
+
+    public BotCircuitBreakers(MeterRegistry meterRegistry,
+                              @Value("${telegram.bot.circuit-breaker.failure-threshold:5}") int failureThreshold,
+                              @Value("${telegram.bot.circuit-breaker.open-duration:PT30S}") Duration openDuration,
+                              @Value("${telegram.bot.circuit-breaker.telegram.slow-call-threshold:PT5S}") Duration telegramSlowCall,
+                              @Value("${telegram.bot.circuit-breaker.database.slow-call-threshold:PT2S}") Duration databaseSlowCall) {
+        this.telegram = new CircuitBreaker("telegram", failureThreshold, openDuration, telegramSlowCall, meterRegistry);
+        this.database = new CircuitBreaker("database", failureThreshold, openDuration, databaseSlowCall, meterRegistry);
+    }
+
+    /**
+     * Calls Telegram through its breaker. A server error, an exception and a call that is not made
+     * all give the response {@code 503 Service Unavailable}, so the callers handle them as one.
+     */
+    public <T extends BaseRequest<T, R>, R extends BaseResponse> R execute(TelegramBot telegramBot, BaseRequest<T, R> request) {
+        return telegram.call(() -> telegramBot.execute(request), BotCircuitBreakers::isUnavailable,
+                () -> gson.fromJson(UNAVAILABLE_RESPONSE, request.getResponseType()));
+    }
+
+    public static boolean isUnavailable(BaseResponse response) {
+        return response != null && !response.isOk() && response.errorCode() >= 500;
+    }
+
+    public CircuitBreaker telegram() {
+        return telegram;
+    }
+
+    public CircuitBreaker database() {
+        return database;
+    }
+}
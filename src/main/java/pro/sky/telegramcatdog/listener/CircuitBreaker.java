@@ -0,0 +1,138 @@
+package pro.sky.telegramcatdog.listener;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Stops calling a dependency that is down, so the bot answers from the fallback at once instead of waiting
+ * for a timeout on every update.
+ * <p>
+ * Closed: calls go through, {@code failureThreshold} failures in a row open the breaker.
+ * A call that throws, returns a failed result or takes longer than {@code slowCallThreshold} is a failure.
+ * Open: calls are not made, the fallback answers. After {@code openDuration} one trial call goes through (half-open):
+ * its success closes the breaker, its failure opens it again.
+ * Metrics: {@code bot.circuit.open} (1 when open or half-open) and {@code bot.circuit.rejected}, tagged by {@code name}.
+ */
+public class CircuitBreaker {
+    enum State {CLOSED, OPEN, HALF_OPEN}
+
+    private final Logger logger = LoggerFactory.getLogger(CircuitBreaker.class);
+    private final String name;
+    private final int failureThreshold;
+    private final long openNanos;
+    private final long slowCallNanos;
+    private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+    private final AtomicInteger failures = new AtomicInteger();
+    private final Counter rejected;
+    private volatile long openedAt;
+
+    public CircuitBreaker(String name, int failureThreshold, Duration openDuration, Duration slowCallThreshold,
+                          MeterRegistry meterRegistry) {
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+        this.openNanos = openDuration.toNanos();
+        this.slowCallNanos = slowCallThreshold.toNanos();
+        Gauge.builder("bot.circuit.open", state, current -> current.get() == State.CLOSED ? 0 : 1)
+                .tag("name", name)
+                .description("1 when the calls are not made")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("bot.circuit.rejected")
+                .tag("name", name)
+                .description("Calls answered by the fallback without trying")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @param failed tells if the result is a failure, e.g. a server error response
+     * @param fallback answers when the call is not made or fails
+     */
+    public <T> T call(Supplier<T> call, Predicate<? super T> failed, Supplier<T> fallback) {
+        if (!tryAcquire()) {
+            return fallback.get();
+        }
+        long start = System.nanoTime();
+        T result;
+        try {
+            result = call.get();
+        } catch (RuntimeException e) {
+            logger.warn("Call to {} failed: {}", name, e.toString());
+            onFailure();
+            return fallback.get();
+        }
+        if (failed.test(result)) {
+            onFailure();
+            return fallback.get();
+        }
+        // The result of a slow call is still used, the next calls are not made
+        if (System.nanoTime() - start > slowCallNanos) {
+            logger.warn("Call to {} took longer than {} ms", name, slowCallNanos / 1_000_000);
+            onFailure();
+        } else {
+            onSuccess();
+        }
+        return result;
+    }
+
+    public <T> T call(Supplier<T> call, Supplier<T> fallback) {
+        return call(call, result -> false, fallback);
+    }
+
+    public void run(Runnable call, Runnable fallback) {
+        call(() -> {
+            call.run();
+            return null;
+        }, () -> {
+            fallback.run();
+            return null;
+        });
+    }
+
+    public boolean isClosed() {
+        return state.get() == State.CLOSED;
+    }
+
+    State getState() {
+        return state.get();
+    }
+
+    private boolean tryAcquire() {
+        State current = state.get();
+        if (current == State.CLOSED) {
+            return true;
+        }
+        // Only one trial call after the open duration, the others wait for its result
+        if (current == State.OPEN && System.nanoTime() - openedAt >= openNanos
+                && state.compareAndSet(State.OPEN, State.HALF_OPEN)) {
+            return true;
+        }
+        rejected.increment();
+        return false;
+    }
+
+    private void onSuccess() {
+        failures.set(0);
+        // A call started before the breaker opened doesn't close it
+        if (state.compareAndSet(State.HALF_OPEN, State.CLOSED)) {
+            logger.info("Circuit breaker {} is closed, calls are made again", name);
+        }
+    }
+
+    private void onFailure() {
+        if (state.get() == State.HALF_OPEN || failures.incrementAndGet() >= failureThreshold) {
+            openedAt = System.nanoTime();
+            if (state.getAndSet(State.OPEN) != State.OPEN) {
+                logger.warn("Circuit breaker {} is open for {} ms, the fallback answers", name, openNanos / 1_000_000);
+            }
+            failures.set(0);
+        }
+    }
+}
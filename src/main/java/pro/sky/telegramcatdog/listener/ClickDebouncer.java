@@ -0,0 +1,66 @@
+package pro.sky.telegramcatdog.listener;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Coalesces repeated clicks of the same button in a chat: users hammer the buttons when the bot is slow.
+ * A click is dropped while the same click of the chat is being handled or within {@code window} after it.
+ * <p>
+ * One entry per chat, the last click only: a click of another button is always handled and replaces the entry.
+ */
+@Component
+public class ClickDebouncer {
+    private final Map<Long, Click> lastClicks = new ConcurrentHashMap<>();
+    private final long windowNanos;
+
+    public ClickDebouncer(@Value("${telegram.bot.click-debounce.window:PT1S}") Duration window) {
+        this.windowNanos = window.toNanos();
+    }
+
+    /**
+     * @return {@code false} if the click repeats the one being handled or just handled, it must be dropped
+     */
+    public boolean tryStart(long chatId, String data) {
+        long now = System.nanoTime();
+        boolean[] started = new boolean[1];
+        lastClicks.compute(chatId, (id, last) -> {
+            if (last != null && Objects.equals(last.data(), data) && (last.inFlight() || now - last.at() < windowNanos)) {
+                return last;
+            }
+            started[0] = true;
+            return new Click(data, true, now);
+        });
+        return started[0];
+    }
+
+    /**
+     * Marks the click handled, the window starts now.
+     */
+    public void finish(long chatId, String data) {
+        long now = System.nanoTime();
+        lastClicks.computeIfPresent(chatId, (id, last) -> Objects.equals(last.data(), data) ? new Click(data, false, now) : last);
+    }
+
+    /**
+     * Forgets the chats that haven't clicked within the window.
+     */
+    @Scheduled(fixedDelayString = "${telegram.bot.click-debounce.purge-interval:PT1M}")
+    public void purge() {
+        long now = System.nanoTime();
+        lastClicks.values().removeIf(last -> !last.inFlight() && now - last.at() >= windowNanos);
+    }
+
+    int getChatsCount() {
+        return lastClicks.size();
+    }
+
+    private record Click(String data, boolean inFlight, long at) {
+    }
+}
@@ -0,0 +1,58 @@
+package pro.sky.telegramcatdog.listener;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import pro.sky.telegramcatdog.constants.PetType;
+import pro.sky.telegramcatdog.model.Volunteer;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * What the bot has read from the database lately, to answer the menus while the database is not available:
+ * the last menu of the recent chats and the volunteer on duty. The texts of the menus are constants.
+ */
+@Component
+public class MenuFallbackCache {
+    private final Map<Long, PetType> lastMenus;
+    private volatile Volunteer volunteer;
+
+    public MenuFallbackCache(@Value("${telegram.bot.circuit-breaker.cached-chats:10000}") int maxChats) {
+        // least recently used chats are evicted
+        this.lastMenus = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, PetType> eldest) {
+                return size() > maxChats;
+            }
+        };
+    }
+
+    public void rememberLastMenu(long chatId, PetType lastMenu) {
+        if (lastMenu == null) {
+            return;
+        }
+        synchronized (lastMenus) {
+            lastMenus.put(chatId, lastMenu);
+        }
+    }
+
+    /**
+     * @return {@code null} if the chat is not known
+     */
+    public PetType lastMenu(long chatId) {
+        synchronized (lastMenus) {
+            return lastMenus.get(chatId);
+        }
+    }
+
+    public void rememberVolunteer(Volunteer volunteer) {
+        this.volunteer = volunteer;
+    }
+
+    /**
+     * @return {@code null} if no volunteer has been read yet
+     */
+    public Volunteer volunteer() {
+        return volunteer;
+    }
+}
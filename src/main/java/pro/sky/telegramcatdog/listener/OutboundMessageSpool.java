@@ -0,0 +1,210 @@
+package pro.sky.telegramcatdog.listener;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.pengrad.telegrambot.TelegramBot;
+import com.pengrad.telegrambot.model.request.InlineKeyboardMarkup;
+import com.pengrad.telegrambot.request.SendMessage;
+import com.pengrad.telegrambot.response.SendResponse;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import pro.sky.telegramcatdog.service.BlockedChatRegistry;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps the messages to the chats that could not be sent while Telegram is not available, and sends them later.
+ * <p>
+ * The messages are appended to a local file ({@code telegram.bot.outbound-spool.path}), one JSON line each,
+ * synced to the disk, so they survive a restart. While the Telegram circuit breaker lets the calls through,
+ * the file is replayed in order; the sent lines are removed by an atomic rewrite.
+ * A new message to a chat that has messages in the spool is parked after them even when Telegram is back,
+ * so the chat doesn't get a fresh menu before the older ones.
+ * Not for the database: the database may be down at the same time. Metric: {@code bot.outbound.spool.size}.
+ */
+@Component
+public class OutboundMessageSpool {
+    private static final String REPLY_MARKUP = "reply_markup";
+
+    private final Logger logger = LoggerFactory.getLogger(OutboundMessageSpool.class);
+    private final Gson gson = new Gson();
+    private final TelegramBot telegramBot;
+    private final BotCircuitBreakers circuitBreakers;
+    private final BlockedChatRegistry blockedChatRegistry;
+    private final Path path;
+    private final int maxMessages;
+    private final AtomicInteger size = new AtomicInteger();
+    // Parked messages by chat; guarded by this
+    private final Map<Long, Integer> parkedByChat = new HashMap<>();
+
+    public OutboundMessageSpool(TelegramBot telegramBot, BotCircuitBreakers circuitBreakers,
+                                BlockedChatRegistry blockedChatRegistry, MeterRegistry meterRegistry,
+                                @Value("${telegram.bot.outbound-spool.path:data/outbound-spool.jsonl}") Path path,
+                                @Value("${telegram.bot.outbound-spool.max-messages:10000}") int maxMessages) {
+        this.telegramBot = telegramBot;
+        this.circuitBreakers = circuitBreakers;
+        this.blockedChatRegistry = blockedChatRegistry;
+        this.path = path;
+        this.maxMessages = maxMessages;
+        Gauge.builder("bot.outbound.spool.size", size, AtomicInteger::get)
+                .description("Messages waiting for Telegram to be available")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public synchronized void open() throws IOException {
+        if (Files.exists(path)) {
+            List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+            size.set(lines.size());
+            countByChat(lines);
+            if (size.get() > 0) {
+                logger.info("{} messages are waiting in {}", size.get(), path);
+            }
+        } else if (path.toAbsolutePath().getParent() != null) {
+            Files.createDirectories(path.toAbsolutePath().getParent());
+        }
+    }
+
+    /**
+     * Stores the message to be sent later.
+     */
+    public synchronized void park(SendMessage message) {
+        if (size.get() >= maxMessages) {
+            logger.error("Outbound spool is full ({} messages), message to chat {} is dropped",
+                    maxMessages, message.getParameters().get("chat_id"));
+            return;
+        }
+        String line = gson.toJson(message.getParameters()) + System.lineSeparator();
+        try {
+            Files.writeString(path, line, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND, StandardOpenOption.DSYNC);
+            size.incrementAndGet();
+            parkedByChat.merge((Long) message.getParameters().get("chat_id"), 1, Integer::sum);
+            logger.debug("Message to chat {} is parked until Telegram is available", message.getParameters().get("chat_id"));
+        } catch (IOException e) {
+            logger.error("Failed to park message to chat {}", message.getParameters().get("chat_id"), e);
+        }
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * @return {@code true} if messages to the chat are waiting, a new one must be parked after them
+     */
+    public boolean hasParked(long chatId) {
+        if (size.get() == 0) {
+            return false;
+        }
+        synchronized (this) {
+            return parkedByChat.containsKey(chatId);
+        }
+    }
+
+    /**
+     * Sends the parked messages in order and stops at the first one that is not sent.
+     * New messages are parked meanwhile, the lock is held only to read and to rewrite the file.
+     */
+    @Scheduled(fixedDelayString = "${telegram.bot.outbound-spool.replay-interval:PT5S}")
+    public void replay() {
+        // While the breaker is open the first message is not sent, after the open duration it is the trial call
+        if (size.get() == 0) {
+            return;
+        }
+        List<String> lines;
+        synchronized (this) {
+            try {
+                lines = Files.exists(path) ? Files.readAllLines(path, StandardCharsets.UTF_8) : List.of();
+            } catch (IOException e) {
+                logger.error("Failed to read {}", path, e);
+                return;
+            }
+        }
+        int sent = 0;
+        for (String line : lines) {
+            if (!send(line)) {
+                break;
+            }
+            sent++;
+        }
+        if (sent > 0) {
+            removeFirst(sent);
+            logger.info("{} parked messages are sent, {} are left", sent, size.get());
+        }
+    }
+
+    /**
+     * @return {@code true} if the message doesn't need to be sent again
+     */
+    private boolean send(String line) {
+        SendMessage message;
+        try {
+            JsonObject parameters = gson.fromJson(line, JsonObject.class);
+            long chatId = parameters.get("chat_id").getAsLong();
+            message = new SendMessage(chatId, parameters.get("text").getAsString());
+            if (parameters.has(REPLY_MARKUP)) {
+                message.replyMarkup(gson.fromJson(parameters.get(REPLY_MARKUP), InlineKeyboardMarkup.class));
+            }
+            if (blockedChatRegistry.isBlocked(chatId)) {
+                return true;
+            }
+        } catch (RuntimeException e) {
+            logger.error("Parked message '{}' is not readable and is dropped", line, e);
+            return true;
+        }
+        SendResponse response = circuitBreakers.execute(telegramBot, message);
+        if (BotCircuitBreakers.isUnavailable(response)) {
+            return false;
+        }
+        if (response != null && !response.isOk()) {
+            long chatId = (Long) message.getParameters().get("chat_id");
+            logger.warn("Parked message to chat {} is dropped, error code: {}", chatId, response.errorCode());
+            blockedChatRegistry.blockIfForbidden(chatId, response.errorCode());
+        }
+        return true;
+    }
+
+    private void countByChat(List<String> lines) {
+        parkedByChat.clear();
+        for (String line : lines) {
+            try {
+                parkedByChat.merge(gson.fromJson(line, JsonObject.class).get("chat_id").getAsLong(), 1, Integer::sum);
+            } catch (RuntimeException e) {
+                // dropped by the replay
+            }
+        }
+    }
+
+    private synchronized void removeFirst(int count) {
+        try {
+            List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+            // the messages parked during the replay are appended after the replayed ones
+            List<String> left = lines.subList(Math.min(count, lines.size()), lines.size());
+            Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+            Files.write(temp, left, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.DSYNC);
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            size.set(left.size());
+            countByChat(left);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to remove the sent messages from " + path, e);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package pro.sky.telegramcatdog.listener;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Pauses polling while the handlers are behind: Telegram keeps the updates that are not polled yet,
+ * so the backlog waits there instead of the memory or the database.
+ * <p>
+ * The backlog is the updates polled but not handled: the queues of the {@link UpdateDispatcher},
+ * or the pending rows of the {@link UpdateQueue} when it is enabled. Polling stops when the backlog reaches
+ * {@code high-water-mark} and resumes when it is down to {@code low-water-mark}.
+ * Metrics for autoscaling: {@code bot.updates.backlog}, {@code bot.polling.paused} (0 or 1) and {@code bot.polling.pauses}.
+ */
+@Component
+public class PollingBackpressure {
+    private final Logger logger = LoggerFactory.getLogger(PollingBackpressure.class);
+    private final UpdateDispatcher updateDispatcher;
+    private final UpdateQueue updateQueue;
+    private final int highWaterMark;
+    private final int lowWaterMark;
+    private final long checkIntervalMillis;
+    private final Counter pauses;
+    private volatile boolean paused;
+
+    public PollingBackpressure(UpdateDispatcher updateDispatcher, UpdateQueue updateQueue, MeterRegistry meterRegistry,
+                               @Value("${telegram.bot.backpressure.high-water-mark:1000}") int highWaterMark,
+                               @Value("${telegram.bot.backpressure.low-water-mark:200}") int lowWaterMark,
+                               @Value("${telegram.bot.backpressure.check-interval:PT0.1S}") Duration checkInterval) {
+        if (lowWaterMark > highWaterMark) {
+            throw new IllegalArgumentException("Low water mark " + lowWaterMark + " is above high water mark " + highWaterMark);
+        }
+        this.updateDispatcher = updateDispatcher;
+        this.updateQueue = updateQueue;
+        this.highWaterMark = highWaterMark;
+        this.lowWaterMark = lowWaterMark;
+        this.checkIntervalMillis = Math.max(1, checkInterval.toMillis());
+        Gauge.builder("bot.updates.backlog", this, PollingBackpressure::getBacklog)
+                .description("Updates polled but not handled yet")
+                .register(meterRegistry);
+        Gauge.builder("bot.polling.paused", this, backpressure -> backpressure.paused ? 1 : 0)
+                .description("1 while polling is paused by the backlog")
+                .register(meterRegistry);
+        this.pauses = Counter.builder("bot.polling.pauses")
+                .description("Times polling was paused by the backlog")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Returns at once below the high water mark, otherwise waits until the backlog is down to the low water mark.
+     *
+     * @param stopping stops waiting when it becomes {@code true}
+     */
+    public void awaitCapacity(BooleanSupplier stopping) {
+        long backlog = getBacklog();
+        if (backlog < highWaterMark) {
+            return;
+        }
+        paused = true;
+        pauses.increment();
+        long pausedAt = System.nanoTime();
+        logger.warn("Backlog of {} updates, polling paused", backlog);
+        try {
+            while (backlog > lowWaterMark && !stopping.getAsBoolean()) {
+                TimeUnit.MILLISECONDS.sleep(checkIntervalMillis);
+                backlog = getBacklog();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            paused = false;
+        }
+        logger.info("Polling resumed after {} ms, backlog of {} updates",
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - pausedAt), backlog);
+    }
+
+    public long getBacklog() {
+        if (updateQueue.isEnabled()) {
+            try {
+                return updateQueue.countPending();
+            } catch (RuntimeException e) {
+                // The database is down: enqueue fails anyway, polling is not paused for it
+                logger.debug("Failed to count the pending updates", e);
+                return 0;
+            }
+        }
+        return updateDispatcher.getQueueDepth();
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+}
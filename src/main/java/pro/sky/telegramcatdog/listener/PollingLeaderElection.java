@@ -0,0 +1,172 @@
+package pro.sky.telegramcatdog.listener;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Elects the only instance that polls {@code getUpdates}: Telegram allows one consumer per bot token.
+ * <p>
+ * The leader holds a session-level Postgres advisory lock on its own connection. It is not taken from the pool:
+ * a pooled connection is not closed, and the lock would outlive the leadership.
+ * Followers try to take the lock every {@code check-interval}. When the leader stops, the lock is released at once;
+ * when it crashes, Postgres releases the lock as soon as the connection is closed, so a follower takes over
+ * within the check interval. A leader that can no longer reach the database stops polling by itself.
+ * <p>
+ * Without leader election ({@code telegram.bot.leader-election.enabled=false}, e.g. on H2) the instance always polls.
+ * To try it locally, start two instances on one database with different {@code server.port}.
+ */
+@Component
+public class PollingLeaderElection {
+    private final Logger logger = LoggerFactory.getLogger(PollingLeaderElection.class);
+    private final DataSource dataSource;
+    private final boolean enabled;
+    private final long lockId;
+    private final Duration checkInterval;
+    private ScheduledExecutorService elector;
+    private Connection connection;
+    private volatile boolean leader;
+
+    @Autowired
+    public PollingLeaderElection(DataSourceProperties dataSourceProperties,
+                                 @Value("${telegram.bot.leader-election.enabled:false}") boolean enabled,
+                                 @Value("${telegram.bot.leader-election.lock-id:7355608}") long lockId,
+                                 @Value("${telegram.bot.leader-election.check-interval:PT2S}") Duration checkInterval) {
+        this(new DriverManagerDataSource(dataSourceProperties.determineUrl(),
+                dataSourceProperties.determineUsername(), dataSourceProperties.determinePassword()),
+                enabled, lockId, checkInterval);
+    }
+
+    /**
+     * @param dataSource opens the connection of the lock, it must not be a pool
+     */
+    PollingLeaderElection(DataSource dataSource, boolean enabled, long lockId, Duration checkInterval) {
+        this.dataSource = dataSource;
+        this.enabled = enabled;
+        this.lockId = lockId;
+        this.checkInterval = checkInterval;
+    }
+
+    /**
+     * Starts taking part in the election.
+     *
+     * @param onElected called when this instance becomes the leader
+     * @param onRevoked called when this instance has lost the leadership
+     */
+    public synchronized void join(Runnable onElected, Runnable onRevoked) {
+        if (!enabled) {
+            leader = true;
+            onElected.run();
+            return;
+        }
+        elector = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "bot-leader-election");
+            thread.setDaemon(true);
+            return thread;
+        });
+        elector.scheduleWithFixedDelay(() -> check(onElected, onRevoked), 0, checkInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the election, the callbacks are not called after it returns. The leadership is kept until {@link #release()}.
+     */
+    public synchronized void leave() {
+        if (elector == null) {
+            return;
+        }
+        elector.shutdownNow();
+        try {
+            if (!elector.awaitTermination(checkInterval.toMillis() + 1000, TimeUnit.MILLISECONDS)) {
+                logger.warn("Leader election check is still running");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        elector = null;
+    }
+
+    /**
+     * Gives the leadership to the next instance. Call it after polling is stopped.
+     */
+    public synchronized void release() {
+        if (leader && connection != null) {
+            try (PreparedStatement statement = connection.prepareStatement("SELECT pg_advisory_unlock(?)")) {
+                statement.setLong(1, lockId);
+                statement.execute();
+                logger.info("Bot polling leadership released");
+            } catch (SQLException e) {
+                logger.warn("Failed to release the leader lock, it is released with the connection", e);
+            }
+        }
+        leader = false;
+        closeConnection();
+    }
+
+    public boolean isLeader() {
+        return leader;
+    }
+
+    private void check(Runnable onElected, Runnable onRevoked) {
+        try {
+            if (leader) {
+                // The lock lives as long as the session
+                if (!connection.isValid((int) Math.max(1, checkInterval.toSeconds()))) {
+                    throw new SQLException("Leader lock connection is broken");
+                }
+            } else if (tryLock()) {
+                leader = true;
+                logger.info("This instance is the bot polling leader");
+                onElected.run();
+            }
+        } catch (SQLException | RuntimeException e) {
+            if (leader) {
+                logger.warn("Bot polling leadership lost", e);
+                leader = false;
+                closeConnection();
+                onRevoked.run();
+            } else {
+                logger.warn("Leader election check failed", e);
+                closeConnection();
+            }
+        }
+    }
+
+    private boolean tryLock() throws SQLException {
+        if (connection == null || connection.isClosed()) {
+            connection = dataSource.getConnection();
+            connection.setAutoCommit(true);
+        }
+        try (PreparedStatement statement = connection.prepareStatement("SELECT pg_try_advisory_lock(?)")) {
+            statement.setLong(1, lockId);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() && resultSet.getBoolean(1);
+            }
+        }
+    }
+
+    private void closeConnection() {
+        if (connection == null) {
+            return;
+        }
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            logger.debug("Failed to close the leader lock connection", e);
+        }
+        connection = null;
+    }
+}
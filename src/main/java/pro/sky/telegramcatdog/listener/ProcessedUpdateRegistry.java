@@ -0,0 +1,188 @@
+package pro.sky.telegramcatdog.listener;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import pro.sky.telegramcatdog.model.BotState;
+import pro.sky.telegramcatdog.repository.BotStateRepository;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Remembers the processed Telegram update ids, so that a redelivered update is not answered twice.
+ * <p>
+ * Recent ids are kept in a ring indexed by {@code update_id mod window}: checking an id is one array read
+ * and one CAS, without locks or allocation. Update ids grow, so an id older than the whole window
+ * (its slot already holds a newer id) is considered processed.
+ * <p>
+ * An id is taken by {@link #seenBefore} and is in flight until {@link #handled} or {@link #failed}.
+ * A failed update is forgotten, so its redelivery is handled again, up to {@code telegram.bot.dedup-max-failures} times.
+ * The mark persisted in {@code bot_state} is the highest id with no update in flight at or below it
+ * ({@link #confirmableMark}), the ids up to it are skipped after a restart.
+ * <p>
+ * After a week without updates Telegram starts the ids from a random number, which may be lower than the mark.
+ * So the mark is ignored if it was raised longer than {@code telegram.bot.dedup-mark-max-age} ago, and everything
+ * is forgotten when no new update came for that long or an id is far below the mark.
+ */
+@Component
+public class ProcessedUpdateRegistry {
+    static final String LAST_UPDATE_ID = "last_update_id";
+
+    private final Logger logger = LoggerFactory.getLogger(ProcessedUpdateRegistry.class);
+    private final BotStateRepository botStateRepository;
+    private final AtomicLongArray window;
+    private final int mask;
+    private final long markMaxAgeMillis;
+    private final int maxFailures;
+    private final AtomicLong highWaterMark = new AtomicLong();
+    private final ConcurrentSkipListSet<Long> inFlight = new ConcurrentSkipListSet<>();
+    private final Map<Long, Integer> failures = new ConcurrentHashMap<>();
+    private volatile long persistedMark;
+    private volatile boolean markReset;
+    private volatile long lastSeenAt = System.currentTimeMillis();
+
+    /**
+     * @param windowSize number of recent ids remembered, rounded up to a power of two
+     */
+    public ProcessedUpdateRegistry(BotStateRepository botStateRepository,
+                                   @Value("${telegram.bot.dedup-window:4096}") int windowSize,
+                                   @Value("${telegram.bot.dedup-mark-max-age:P7D}") Duration markMaxAge,
+                                   @Value("${telegram.bot.dedup-max-failures:3}") int maxFailures) {
+        this.botStateRepository = botStateRepository;
+        int size = Integer.highestOneBit(Math.max(2, windowSize - 1)) << 1;
+        this.window = new AtomicLongArray(size);
+        this.mask = size - 1;
+        this.markMaxAgeMillis = markMaxAge.toMillis();
+        this.maxFailures = maxFailures;
+    }
+
+    @PostConstruct
+    public void loadHighWaterMark() {
+        BotState state = botStateRepository.findById(LAST_UPDATE_ID)
+                .orElseGet(() -> botStateRepository.save(new BotState(LAST_UPDATE_ID, 0)));
+        long now = System.currentTimeMillis();
+        if (state.getStateValue() > 0 && state.getUpdatedAt() != null
+                && now - state.getUpdatedAt().getTime() > markMaxAgeMillis) {
+            logger.info("Last update id {} is from {}, Telegram may have started the ids anew, it is ignored",
+                    state.getStateValue(), state.getUpdatedAt());
+            reset();
+            return;
+        }
+        persistedMark = Math.max(persistedMark, state.getStateValue());
+        highWaterMark.accumulateAndGet(persistedMark, Math::max);
+        lastSeenAt = now;
+        logger.info("Updates up to id {} are processed already", persistedMark);
+    }
+
+    /**
+     * Checks the update and takes it: it is in flight until {@link #handled} or {@link #failed} is called.
+     *
+     * @return {@code true} if the update has been seen before and must be skipped
+     */
+    public boolean seenBefore(long updateId) {
+        long now = System.currentTimeMillis();
+        if (now - lastSeenAt > markMaxAgeMillis || updateId + window.length() < highWaterMark.get()) {
+            logger.info("Update id {} is far below the mark {} or no update came since {}, the ids are started anew",
+                    updateId, highWaterMark.get(), new Timestamp(lastSeenAt));
+            reset();
+        }
+        if (updateId <= persistedMark) {
+            return true;
+        }
+        int slot = (int) (updateId & mask);
+        while (true) {
+            long previous = window.get(slot);
+            if (previous >= updateId) {
+                // the same id, or an id older than the window
+                return true;
+            }
+            if (window.compareAndSet(slot, previous, updateId)) {
+                break;
+            }
+        }
+        inFlight.add(updateId);
+        highWaterMark.accumulateAndGet(updateId, Math::max);
+        lastSeenAt = now;
+        return false;
+    }
+
+    /**
+     * The update taken by {@link #seenBefore} is handled, the mark may pass it.
+     */
+    public void handled(long updateId) {
+        failures.remove(updateId);
+        inFlight.remove(updateId);
+    }
+
+    /**
+     * The handler of the update taken by {@link #seenBefore} has thrown. The update is forgotten and stays in flight,
+     * so its redelivery is handled again and the mark doesn't pass it; after {@code dedup-max-failures} it is given up.
+     *
+     * @return {@code true} if the update is to be handled again
+     */
+    public boolean failed(long updateId) {
+        int failed = failures.merge(updateId, 1, Integer::sum);
+        if (failed >= maxFailures) {
+            logger.error("Update {} failed {} times, it is skipped", updateId, failed);
+            handled(updateId);
+            return false;
+        }
+        window.compareAndSet((int) (updateId & mask), updateId, 0);
+        return true;
+    }
+
+    /**
+     * @return the highest id such that the updates up to it are handled or given up
+     */
+    public long confirmableMark() {
+        long mark = highWaterMark.get();
+        Long oldest = inFlight.ceiling(Long.MIN_VALUE);
+        return oldest == null ? mark : Math.min(mark, oldest - 1);
+    }
+
+    /**
+     * Persists the {@link #confirmableMark}.
+     */
+    public void persistHighWaterMark() {
+        long mark = confirmableMark();
+        if (mark <= persistedMark && !markReset) {
+            return;
+        }
+        try {
+            Timestamp now = new Timestamp(System.currentTimeMillis());
+            if (markReset) {
+                botStateRepository.setValue(LAST_UPDATE_ID, mark, now);
+                markReset = false;
+            } else {
+                botStateRepository.raiseValue(LAST_UPDATE_ID, mark, now);
+            }
+            persistedMark = mark;
+        } catch (RuntimeException e) {
+            // the window still protects from recent duplicates, the mark is saved with the next batch
+            logger.warn("Failed to persist last update id {}", mark, e);
+        }
+    }
+
+    /**
+     * Forgets all the ids, the next persisted mark overwrites the stored one.
+     */
+    private synchronized void reset() {
+        for (int i = 0; i < window.length(); i++) {
+            window.set(i, 0);
+        }
+        inFlight.clear();
+        failures.clear();
+        highWaterMark.set(0);
+        persistedMark = 0;
+        markReset = true;
+        lastSeenAt = System.currentTimeMillis();
+    }
+}
@@ -6,71 +6,317 @@ import com.pengrad.telegrambot.model.CallbackQuery;
 import com.pengrad.telegrambot.model.Update;
 import com.pengrad.telegrambot.model.request.InlineKeyboardButton;
 import com.pengrad.telegrambot.model.request.InlineKeyboardMarkup;
+import com.pengrad.telegrambot.request.AnswerCallbackQuery;
+import com.pengrad.telegrambot.request.EditMessageText;
 import com.pengrad.telegrambot.request.SendMessage;
+import com.pengrad.telegrambot.response.BaseResponse;
 import com.pengrad.telegrambot.response.SendResponse;
-import jakarta.annotation.PostConstruct;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
+import pro.sky.telegramcatdog.configuration.Bulkhead;
 import pro.sky.telegramcatdog.constants.PetType;
+import pro.sky.telegramcatdog.event.HelpRequestedEvent;
 import pro.sky.telegramcatdog.model.Guest;
 import pro.sky.telegramcatdog.model.Volunteer;
 import pro.sky.telegramcatdog.repository.GuestRepository;
 import pro.sky.telegramcatdog.repository.VolunteerRepository;
+import pro.sky.telegramcatdog.service.BlockedChatRegistry;
 
 import java.sql.Timestamp;
+import java.time.Duration;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
 import static pro.sky.telegramcatdog.constants.Constants.*;
 
 @Service
-public class TelegramBotUpdatesListener implements UpdatesListener {
+@Lazy(false)
+public class TelegramBotUpdatesListener implements UpdatesListener, SmartLifecycle {
+    private static final String MESSAGE_NOT_MODIFIED = "message is not modified";
     private Logger logger = LoggerFactory.getLogger(TelegramBotUpdatesListener.class);
     private TelegramBot telegramBot;
-    private PetType shelterType;
     private final VolunteerRepository volunteerRepository;
     private final GuestRepository guestRepository;
-
-    public TelegramBotUpdatesListener(TelegramBot telegramBot, VolunteerRepository volunteerRepository, GuestRepository guestRepository) {
+    private final ApplicationEventPublisher eventPublisher;
+    private final ProcessedUpdateRegistry processedUpdateRegistry;
+    private final PollingLeaderElection leaderElection;
+    private final UpdateQueue updateQueue;
+    private final ClickDebouncer clickDebouncer;
+    private final UpdateDispatcher updateDispatcher;
+    private final PollingBackpressure backpressure;
+    private final BlockedChatRegistry blockedChatRegistry;
+    private final BotCircuitBreakers circuitBreakers;
+    private final OutboundMessageSpool outboundSpool;
+    private final MenuFallbackCache fallbackCache;
+    private final ReentrantLock processing = new ReentrantLock();
+    @Value("${telegram.bot.shutdown-timeout:PT20S}")
+    private Duration shutdownTimeout = Duration.ofSeconds(20);
+    @Value("${telegram.bot.dispatcher.confirm-wait:PT1S}")
+    private Duration confirmWait = Duration.ofSeconds(1);
+    @Value("${telegram.bot.echo-button-clicks:false}")
+    private boolean echoButtonClicks;
+    @Value("${telegram.bot.edit-menus:true}")
+    private boolean editMenus = true;
+    private volatile boolean stopping;
+    private volatile long stopDeadline;
+    private volatile boolean running;
+
+    public TelegramBotUpdatesListener(TelegramBot telegramBot, VolunteerRepository volunteerRepository, GuestRepository guestRepository,
+                                      ApplicationEventPublisher eventPublisher, ProcessedUpdateRegistry processedUpdateRegistry,
+                                      PollingLeaderElection leaderElection, UpdateQueue updateQueue,
+                                      ClickDebouncer clickDebouncer, UpdateDispatcher updateDispatcher,
+                                      PollingBackpressure backpressure, BlockedChatRegistry blockedChatRegistry,
+                                      BotCircuitBreakers circuitBreakers, OutboundMessageSpool outboundSpool,
+                                      MenuFallbackCache fallbackCache) {
         this.telegramBot = telegramBot;
         this.volunteerRepository = volunteerRepository;
         this.guestRepository = guestRepository;
+        this.eventPublisher = eventPublisher;
+        this.processedUpdateRegistry = processedUpdateRegistry;
+        this.leaderElection = leaderElection;
+        this.updateQueue = updateQueue;
+        this.clickDebouncer = clickDebouncer;
+        this.updateDispatcher = updateDispatcher;
+        this.backpressure = backpressure;
+        this.blockedChatRegistry = blockedChatRegistry;
+        this.circuitBreakers = circuitBreakers;
+        this.outboundSpool = outboundSpool;
+        this.fallbackCache = fallbackCache;
     }
 
-    @PostConstruct
-    public void init() {
+    /**
+     * Joins the leader election when the context is ready, not during its refresh.
+     * Only the leader polls, Telegram allows one {@code getUpdates} consumer per token.
+     */
+    @Override
+    public void start() {
+        running = true;
+        leaderElection.join(this::startPolling, this::stopPolling);
+    }
+
+    /**
+     * Stops polling, then lets another instance take over.
+     */
+    @Override
+    public void stop() {
+        running = false;
+        leaderElection.leave();
+        stopPolling();
+        leaderElection.release();
+    }
+
+    private void startPolling() {
+        stopping = false;
+        // The previous leader has moved the mark since the startup
+        processedUpdateRegistry.loadHighWaterMark();
         telegramBot.setUpdatesListener(this);
+        logger.info("Telegram updates polling started");
+    }
+
+    /**
+     * Stops polling and waits for the batch in flight. The batch is cut short at the shutdown deadline,
+     * the rest of it is not confirmed and Telegram delivers it to the next instance.
+     */
+    private void stopPolling() {
+        telegramBot.removeGetUpdatesListener();
+        stopDeadline = System.nanoTime() + shutdownTimeout.toNanos();
+        stopping = true;
+        try {
+            // process() holds the lock for the whole batch
+            if (processing.tryLock(shutdownTimeout.toMillis() + 1000, TimeUnit.MILLISECONDS)) {
+                processing.unlock();
+            } else {
+                logger.warn("Batch of updates is still being processed after {}", shutdownTimeout);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        processedUpdateRegistry.persistHighWaterMark();
+        logger.info("Telegram updates polling stopped");
     }
 
     @Override
-    public int process(List<Update> updates) {
-        updates.forEach(update -> {
+    public boolean isRunning() {
+        return running;
+    }
 
-            logger.info("Processing update: {}", update);
+    @Override
+    public int process(List<Update> updates) {
+        // The bot has its own connection pool, the REST API can't exhaust it
+        try (Bulkhead.Scope scope = Bulkhead.BOT.enter()) {
+            int confirmed = processBatch(updates);
+            // The next getUpdates is sent when this method returns: it waits until the handlers have caught up
+            backpressure.awaitCapacity(() -> stopping);
+            return confirmed;
+        }
+    }
 
-            // Process shelter type selection message
-            if (update.message() != null) {
-                String incomeMsgText = update.message().text();
-                // For stickers incomeMsgText is null
-                if (incomeMsgText == null) {
-                    return;
+    private int processBatch(List<Update> updates) {
+        processing.lock();
+        try {
+            if (updateQueue.isEnabled() && enqueue(updates)) {
+                return UpdatesListener.CONFIRMED_UPDATES_ALL;
+            }
+            for (Update update : updates) {
+                if (stopping && System.nanoTime() - stopDeadline > 0) {
+                    logger.warn("Shutdown deadline reached, updates from {} are left to the next instance", update.updateId());
+                    return lastProcessedUpdateId(updates, update);
                 }
-                if (incomeMsgText.equals("/start")) {
-                    processStartCommand(update);
+                // Telegram redelivers the updates that were not confirmed, e.g. after a crash
+                if (processedUpdateRegistry.seenBefore(update.updateId())) {
+                    logger.debug("Skipping update {} processed before", update.updateId());
+                    continue;
+                }
+                if (updateDispatcher.isEnabled()) {
+                    // Handled by the priority lanes, the help requests first
+                    updateDispatcher.submit(update, this::processTracked);
+                } else if (!processTracked(update)) {
+                    // Not confirmed: Telegram delivers it again with the rest of the batch
+                    processedUpdateRegistry.persistHighWaterMark();
+                    return confirmedUpTo(updates);
                 }
             }
-            // Process button clicks
-            else {
-                processButtonClick(update);
+            if (updateDispatcher.isEnabled()) {
+                // The handlers run on the dispatcher: confirmed up to the first update still in flight,
+                // so Telegram delivers the rest again after a crash
+                awaitHandled(updates.get(updates.size() - 1).updateId());
+                processedUpdateRegistry.persistHighWaterMark();
+                return confirmedUpTo(updates);
             }
+            processedUpdateRegistry.persistHighWaterMark();
+            return UpdatesListener.CONFIRMED_UPDATES_ALL;
+        } finally {
+            processing.unlock();
+        }
+    }
+
+    /**
+     * Leaves the updates to the workers of the partitions of their chats, see {@link UpdateQueueWorker}.
+     * The queue drops the redelivered updates by their id.
+     * <p>
+     * Goes through the database breaker: while the database is down the updates are handled here, as without the queue,
+     * and the handlers answer from their fallbacks. Not confirming them would make Telegram return them at once, in a loop.
+     *
+     * @return {@code false} if the updates are not queued
+     */
+    private boolean enqueue(List<Update> updates) {
+        return circuitBreakers.database().call(() -> {
+            updateQueue.enqueue(updates);
+            return true;
+        }, () -> {
+            logger.warn("{} updates are not queued, they are handled by the polling instance", updates.size());
+            return false;
         });
-        return UpdatesListener.CONFIRMED_UPDATES_ALL;
     }
 
+    /**
+     * Waits up to {@code telegram.bot.dispatcher.confirm-wait} for the dispatcher to handle the updates up to the id,
+     * so that the next poll doesn't return the same batch right away.
+     */
+    private void awaitHandled(long updateId) {
+        long deadline = System.nanoTime() + confirmWait.toNanos();
+        try {
+            while (processedUpdateRegistry.confirmableMark() < updateId && System.nanoTime() - deadline < 0 && !stopping) {
+                TimeUnit.MILLISECONDS.sleep(10);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return the last update id of the batch that is handled along with all the updates before it
+     */
+    private int confirmedUpTo(List<Update> updates) {
+        long mark = processedUpdateRegistry.confirmableMark();
+        if (mark >= updates.get(updates.size() - 1).updateId()) {
+            return UpdatesListener.CONFIRMED_UPDATES_ALL;
+        }
+        return mark < updates.get(0).updateId() ? UpdatesListener.CONFIRMED_UPDATES_NONE : (int) mark;
+    }
+
+    private static int lastProcessedUpdateId(List<Update> updates, Update firstSkipped) {
+        int index = updates.indexOf(firstSkipped);
+        return index == 0 ? UpdatesListener.CONFIRMED_UPDATES_NONE : updates.get(index - 1).updateId();
+    }
+
+    /**
+     * Handles the update on the bot connection pool, whatever thread calls it: the polling thread,
+     * a worker of {@link UpdateDispatcher} or of {@link UpdateQueueWorker}.
+     */
+    void processUpdate(Update update) {
+        try (Bulkhead.Scope scope = Bulkhead.BOT.enter()) {
+            handleUpdate(update);
+        }
+    }
+
+    /**
+     * Handles the update taken by {@link ProcessedUpdateRegistry#seenBefore} and tells the registry how it went.
+     *
+     * @return {@code false} if the handler has thrown and the update is to be handled again
+     */
+    private boolean processTracked(Update update) {
+        try {
+            processUpdate(update);
+            processedUpdateRegistry.handled(update.updateId());
+            return true;
+        } catch (RuntimeException e) {
+            boolean retried = processedUpdateRegistry.failed(update.updateId());
+            logger.error("Failed to handle update {}, {}", update.updateId(),
+                    retried ? "it is handled again when redelivered" : "it is skipped", e);
+            return !retried;
+        }
+    }
+
+    private void handleUpdate(Update update) {
+        logger.info("Processing update: {}", update);
+
+        // Process shelter type selection message
+        if (update.message() != null) {
+            String incomeMsgText = update.message().text();
+            // For stickers incomeMsgText is null
+            if (incomeMsgText == null) {
+                return;
+            }
+            if (incomeMsgText.equals("/start")) {
+                processStartCommand(update);
+            }
+        }
+        // Process button clicks
+        else {
+            processButtonClick(update);
+        }
+    }
+
+    /**
+     * Sends the message unless the chat has blocked the bot, see {@link BlockedChatRegistry}.
+     * While Telegram is not available, or older messages of the chat are still parked, the message is parked
+     * in {@link OutboundMessageSpool} and sent later.
+     */
     private void sendMessage(SendMessage message) {
-        SendResponse response = telegramBot.execute(message);
-        if (response != null && !response.isOk()) {
+        // SendMessage is always created with a numeric chat id here
+        long chatId = (Long) message.getParameters().get("chat_id");
+        if (blockedChatRegistry.isBlocked(chatId)) {
+            logger.debug("Chat {} has blocked the bot, message is not sent", chatId);
+            return;
+        }
+        if (outboundSpool.hasParked(chatId)) {
+            // Sent after the older messages of the chat
+            outboundSpool.park(message);
+            return;
+        }
+        SendResponse response = circuitBreakers.execute(telegramBot, message);
+        if (BotCircuitBreakers.isUnavailable(response)) {
+            outboundSpool.park(message);
+        } else if (response != null && !response.isOk()) {
             logger.warn("Message was not sent: {}, error code: {}", message, response.errorCode());
+            blockedChatRegistry.blockIfForbidden(chatId, response.errorCode());
         }
     }
 
@@ -78,7 +324,7 @@ public class TelegramBotUpdatesListener implements UpdatesListener {
      * Creates buttons for the shelter type selection message (reply to the /start command)
      * @return {@code InlineKeyboardMarkup}
      */
-    private InlineKeyboardMarkup createButtonsShelterTypeSelect() {
+    InlineKeyboardMarkup createButtonsShelterTypeSelect() {
         InlineKeyboardMarkup inlineKeyboardMarkup = new InlineKeyboardMarkup();
         inlineKeyboardMarkup.addRow(new InlineKeyboardButton(BUTTON_CAT_SHELTER_TEXT).callbackData(BUTTON_CAT_SHELTER_CALLBACK_TEXT));
         inlineKeyboardMarkup.addRow(new InlineKeyboardButton(BUTTON_DOG_SHELTER_TEXT).callbackData(BUTTON_DOG_SHELTER_CALLBACK_TEXT));
@@ -89,7 +335,7 @@ public class TelegramBotUpdatesListener implements UpdatesListener {
      * Creates buttons for the reply message to the shelter type selection (Stage 0)
      * @return {@code InlineKeyboardMarkup}
      */
-    private InlineKeyboardMarkup createButtonsStage0() {
+    InlineKeyboardMarkup createButtonsStage0() {
         InlineKeyboardMarkup inlineKeyboardMarkup = new InlineKeyboardMarkup();
         inlineKeyboardMarkup.addRow(new InlineKeyboardButton(BUTTON_STAGE1_TEXT).callbackData(BUTTON_STAGE1_CALLBACK_TEXT));
         inlineKeyboardMarkup.addRow(new InlineKeyboardButton(BUTTON_STAGE2_TEXT).callbackData(BUTTON_STAGE2_CALLBACK_TEXT));
@@ -109,48 +355,57 @@ public class TelegramBotUpdatesListener implements UpdatesListener {
         CallbackQuery callbackQuery = update.callbackQuery();
         if (callbackQuery != null) {
             long chatId = callbackQuery.message().chat().id();
-
-            if (callbackQuery.data().equals(BUTTON_CAT_SHELTER_CALLBACK_TEXT)) {
-                // Cat shelter selected
-                sendButtonClickMessage(chatId, BUTTON_CAT_SHELTER_CALLBACK_TEXT);
-                processCatShelterClick(chatId);
-
-            } else if (callbackQuery.data().equals(BUTTON_DOG_SHELTER_CALLBACK_TEXT)) {
-                // Dog shelter selected
-                sendButtonClickMessage(chatId, BUTTON_DOG_SHELTER_CALLBACK_TEXT);
-                processDogShelterClick(chatId);
-
-            } else if (callbackQuery.data().equals(BUTTON_STAGE1_CALLBACK_TEXT)) {
-                // General info about the shelter (stage 1)
-                sendButtonClickMessage(chatId, BUTTON_STAGE1_CALLBACK_TEXT);
-                processStage1Click(chatId);
-
-            } else if (callbackQuery.data().equals(BUTTON_STAGE2_CALLBACK_TEXT)) {
-                // How to adopt a dog/cat (stage 2)
-                sendButtonClickMessage(chatId, BUTTON_STAGE2_CALLBACK_TEXT);
-                processStage2Click(chatId);
-
-            } else if (callbackQuery.data().equals(BUTTON_STAGE3_CALLBACK_TEXT)) {
-                // Send a follow-up report (stage 3)
-                sendButtonClickMessage(chatId, BUTTON_STAGE3_CALLBACK_TEXT);
-                processStage3Click(chatId);
-
-            } else if (callbackQuery.data().equals(BUTTON_CALL_VOLUNTEER_CALLBACK_TEXT)) {
-                // Call a volunteer
-                sendButtonClickMessage(chatId, BUTTON_CALL_VOLUNTEER_CALLBACK_TEXT);
-                callVolunteer(update);
+            // The message with the clicked keyboard, the next menu replaces it
+            Integer messageId = callbackQuery.message().messageId();
+            acknowledgeClick(callbackQuery, chatId);
+            if (!clickDebouncer.tryStart(chatId, callbackQuery.data())) {
+                logger.debug("Repeated click {} in chat {} is dropped", callbackQuery.data(), chatId);
+                return;
+            }
+            try {
+                handleClick(update, callbackQuery, chatId, messageId);
+            } finally {
+                clickDebouncer.finish(chatId, callbackQuery.data());
             }
         }
     }
 
+    private void handleClick(Update update, CallbackQuery callbackQuery, long chatId, Integer messageId) {
+        if (callbackQuery.data().equals(BUTTON_CAT_SHELTER_CALLBACK_TEXT)) {
+            // Cat shelter selected
+            processCatShelterClick(chatId, messageId);
+
+        } else if (callbackQuery.data().equals(BUTTON_DOG_SHELTER_CALLBACK_TEXT)) {
+            // Dog shelter selected
+            processDogShelterClick(chatId, messageId);
+
+        } else if (callbackQuery.data().equals(BUTTON_STAGE1_CALLBACK_TEXT)) {
+            // General info about the shelter (stage 1)
+            processStage1Click(chatId, messageId);
+
+        } else if (callbackQuery.data().equals(BUTTON_STAGE2_CALLBACK_TEXT)) {
+            // How to adopt a dog/cat (stage 2)
+            processStage2Click(chatId, messageId);
+
+        } else if (callbackQuery.data().equals(BUTTON_STAGE3_CALLBACK_TEXT)) {
+            // Send a follow-up report (stage 3)
+            processStage3Click(chatId, messageId);
+
+        } else if (callbackQuery.data().equals(BUTTON_CALL_VOLUNTEER_CALLBACK_TEXT)) {
+            // Call a volunteer
+            callVolunteer(update);
+        }
+    }
+
     private void processStartCommand(Update update) {
         long chatId = update.message().chat().id();
-        Guest guest = guestRepository.findByChatId(chatId);
-        if (guest == null) {
+        // The user has unblocked the bot to send it
+        blockedChatRegistry.unblock(chatId);
+        PetType lastMenu = findLastMenu(chatId);
+        if (lastMenu == null) {
             sendShelterTypeSelectMessage(chatId);
         } else {
-            shelterType = guest.getLastMenu();
-            switch (guest.getLastMenu()) {
+            switch (lastMenu) {
                 case DOG:
                     sendStage0Message(chatId, DOG_SHELTER_WELCOME_MSG_TEXT);
                     break;
@@ -163,16 +418,26 @@ public class TelegramBotUpdatesListener implements UpdatesListener {
         }
     }
 
-    private void processCatShelterClick(long chatId) {
-        shelterType = PetType.CAT;
-        saveGuest(chatId, shelterType);
-        sendStage0Message(chatId, CAT_SHELTER_WELCOME_MSG_TEXT);
+    /**
+     * @return last menu of the guest, from the cache if the database is not available; {@code null} for a new guest
+     */
+    private PetType findLastMenu(long chatId) {
+        return circuitBreakers.database().call(() -> {
+            Guest guest = guestRepository.findByChatId(chatId);
+            PetType lastMenu = guest == null ? null : guest.getLastMenu();
+            fallbackCache.rememberLastMenu(chatId, lastMenu);
+            return lastMenu;
+        }, () -> fallbackCache.lastMenu(chatId));
+    }
+
+    private void processCatShelterClick(long chatId, Integer messageId) {
+        saveGuest(chatId, PetType.CAT);
+        showMenu(chatId, messageId, CAT_SHELTER_WELCOME_MSG_TEXT, createButtonsStage0());
     }
 
-    private void processDogShelterClick(long chatId) {
-        shelterType = PetType.DOG;
-        saveGuest(chatId, shelterType);
-        sendStage0Message(chatId, DOG_SHELTER_WELCOME_MSG_TEXT);
+    private void processDogShelterClick(long chatId, Integer messageId) {
+        saveGuest(chatId, PetType.DOG);
+        showMenu(chatId, messageId, DOG_SHELTER_WELCOME_MSG_TEXT, createButtonsStage0());
     }
 
     private void sendShelterTypeSelectMessage(long chatId) {
@@ -189,11 +454,31 @@ public class TelegramBotUpdatesListener implements UpdatesListener {
         sendMessage(message);
     }
 
+    /**
+     * Shows the menu in place of the message with the clicked keyboard ({@code telegram.bot.edit-menus=true}),
+     * so the chat doesn't grow with every step. Sends a new message if there is nothing to edit
+     * or Telegram refuses the edit, e.g. the message is too old.
+     * @param messageId message with the clicked keyboard, {@code null} to send a new message
+     */
+    private void showMenu(long chatId, Integer messageId, String text, InlineKeyboardMarkup keyboard) {
+        if (editMenus && messageId != null) {
+            BaseResponse response = circuitBreakers.execute(telegramBot, new EditMessageText(chatId, messageId, text).replyMarkup(keyboard));
+            // "message is not modified": the same menu is clicked again, it is shown already
+            if (response == null || response.isOk()
+                    || (response.description() != null && response.description().contains(MESSAGE_NOT_MODIFIED))) {
+                return;
+            }
+            logger.debug("Menu message {} was not edited: {}, sending a new one", messageId, response.description());
+        }
+        sendMessage(new SendMessage(chatId, text).replyMarkup(keyboard));
+    }
+
     /**
      * Processing request: General info about the shelter (stage 1)
      * @param chatId
+     * @param messageId message with the clicked menu, pass it to {@link #showMenu} to replace it
      */
-    private void processStage1Click(long chatId) {
+    private void processStage1Click(long chatId, Integer messageId) {
 
         // to do (Olga): Implement Stage 1 button click functionality (welcome message, buttons)
     }
@@ -201,8 +486,9 @@ public class TelegramBotUpdatesListener implements UpdatesListener {
     /**
      * Processing request: How to adopt a dog/cat (stage 2)
      * @param chatId
+     * @param messageId message with the clicked menu, pass it to {@link #showMenu} to replace it
      */
-    private void processStage2Click(long chatId) {
+    private void processStage2Click(long chatId, Integer messageId) {
 
         // to do (Denis): Implement Stage 2 button click functionality (welcome message, buttons)
     }
@@ -210,15 +496,31 @@ public class TelegramBotUpdatesListener implements UpdatesListener {
     /**
      * Processing request: Send a follow-up report (stage 3)
      * @param chatId
+     * @param messageId message with the clicked menu, pass it to {@link #showMenu} to replace it
      */
-    private void processStage3Click(long chatId) {
+    private void processStage3Click(long chatId, Integer messageId) {
 
         // to do (Tamerlan): Implement Stage 3 button click functionality (welcome message, buttons)
     }
 
+    /**
+     * Answers the callback query: the client stops the progress indicator of the button.
+     * The answer is not a chat message, so it doesn't count against the chat limits.
+     * With {@code telegram.bot.echo-button-clicks=true} the callback data is also sent to the chat, for debugging.
+     */
+    private void acknowledgeClick(CallbackQuery callbackQuery, long chatId) {
+        // Not retried: Telegram accepts the answer only shortly after the click
+        BaseResponse response = circuitBreakers.execute(telegramBot, new AnswerCallbackQuery(callbackQuery.id()));
+        if (response != null && !response.isOk()) {
+            logger.warn("Callback query {} was not answered, error code: {}", callbackQuery.id(), response.errorCode());
+        }
+        if (echoButtonClicks) {
+            sendButtonClickMessage(chatId, callbackQuery.data());
+        }
+    }
+
     /**
      * Sends technical message that the button has been clicked.
-     * Can be disabled if it is not needed.
      * @param chatId sends message to this chat
      * @param message the message itself
      */
@@ -240,7 +542,12 @@ public class TelegramBotUpdatesListener implements UpdatesListener {
         userId += update.callbackQuery().from().id();
         logger.info("UserId = {}", userId);
         // To do: select random volunteer. Now it always selects the 1st one.
-        Volunteer volunteer = volunteerRepository.findById(1L).orElse(null);
+        // The last volunteer read is called while the database is not available
+        Volunteer volunteer = circuitBreakers.database().call(() -> {
+            Volunteer found = volunteerRepository.findById(1L).orElse(null);
+            fallbackCache.rememberVolunteer(found);
+            return found;
+        }, fallbackCache::volunteer);
         if (volunteer == null) {
             // Guest chat_id. Send message to the guest.
             chatId = Long.parseLong(userId);
@@ -258,13 +565,23 @@ public class TelegramBotUpdatesListener implements UpdatesListener {
                 sendMessage(message);
             }
         }
+        // Shown on the volunteer dashboards
+        eventPublisher.publishEvent(new HelpRequestedEvent(update.callbackQuery().from().id(),
+                update.callbackQuery().from().username(), volunteer == null ? null : volunteer.getId()));
     }
 
+    /**
+     * Saves a new guest. While the database is not available the menu is answered anyway,
+     * the guest is saved by a click after it is back.
+     */
     private void saveGuest(long chatId, PetType lastMenu) {
-        Guest guest = guestRepository.findByChatId(chatId);
-        if (guest == null) {
-            guest = new Guest(chatId, new Timestamp(System.currentTimeMillis()), lastMenu);
-            guestRepository.save(guest);
-        }
+        fallbackCache.rememberLastMenu(chatId, lastMenu);
+        circuitBreakers.database().run(() -> {
+            Guest guest = guestRepository.findByChatId(chatId);
+            if (guest == null) {
+                guest = new Guest(chatId, new Timestamp(System.currentTimeMillis()), lastMenu);
+                guestRepository.save(guest);
+            }
+        }, () -> logger.warn("Database is not available, guest {} is not saved", chatId));
     }
 }
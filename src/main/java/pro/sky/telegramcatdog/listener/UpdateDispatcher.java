@@ -0,0 +1,259 @@
+package pro.sky.telegramcatdog.listener;
+
+import com.pengrad.telegrambot.model.Update;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Processes the polled updates on a pool of threads. Every chat has a single queue of its updates:
+ * they are handled one at a time, in the order of polling.
+ * <p>
+ * A chat with updates waiting is queued in the {@link UpdateLane} of its next update. The workers take the lanes
+ * by weighted round-robin ({@code telegram.bot.dispatcher.weights}, urgent:menu:messages), falling back to any non-empty
+ * lane, so a backlog of other chats' menu clicks doesn't delay the calls for a volunteer and an idle lane doesn't waste
+ * the turns. A worker handles one update of the chat and queues the chat again by the lane of the chat's next update.
+ * Metrics: {@code bot.updates.queue.depth} and {@code bot.updates.latency} (from polling to handled) by lane,
+ * {@code bot.dispatcher.threads.busy}: the pool is saturated when it stays at {@code threads}.
+ * <p>
+ * With {@code telegram.bot.dispatcher.threads=0} there is no pool and the listener handles the updates itself.
+ */
+@Component
+public class UpdateDispatcher {
+    private final Logger logger = LoggerFactory.getLogger(UpdateDispatcher.class);
+    private final int threads;
+    private final Duration shutdownTimeout;
+    // Chats waiting for a worker, by the lane of their next update
+    private final Map<UpdateLane, Queue<Chat>> queues = new EnumMap<>(UpdateLane.class);
+    private final Map<UpdateLane, AtomicInteger> laneDepths = new EnumMap<>(UpdateLane.class);
+    private final Map<UpdateLane, Timer> latencies = new EnumMap<>(UpdateLane.class);
+    private final UpdateLane[] schedule;
+    private final AtomicInteger scheduleIndex = new AtomicInteger();
+    private final Semaphore pending = new Semaphore(0);
+    private final AtomicInteger depth = new AtomicInteger();
+    private final AtomicInteger busy = new AtomicInteger();
+    // Chats with updates waiting or being handled; guarded by itself
+    private final Map<Long, Chat> chats = new HashMap<>();
+    private ExecutorService workers;
+    private volatile boolean running = true;
+
+    public UpdateDispatcher(MeterRegistry meterRegistry,
+                            @Value("${telegram.bot.dispatcher.threads:0}") int threads,
+                            @Value("${telegram.bot.dispatcher.weights:6,3,1}") int[] weights,
+                            @Value("${telegram.bot.shutdown-timeout:PT20S}") Duration shutdownTimeout) {
+        this.threads = threads;
+        this.shutdownTimeout = shutdownTimeout;
+        this.schedule = schedule(weights);
+        for (UpdateLane lane : UpdateLane.values()) {
+            queues.put(lane, new ConcurrentLinkedQueue<>());
+            AtomicInteger laneDepth = new AtomicInteger();
+            laneDepths.put(lane, laneDepth);
+            Gauge.builder("bot.updates.queue.depth", laneDepth, AtomicInteger::get)
+                    .tag("lane", lane.tag())
+                    .description("Updates waiting to be handled")
+                    .register(meterRegistry);
+            latencies.put(lane, Timer.builder("bot.updates.latency")
+                    .tag("lane", lane.tag())
+                    .description("Time from polling to the end of handling")
+                    .publishPercentiles(0.5, 0.95, 0.99)
+                    .register(meterRegistry));
+        }
+        Gauge.builder("bot.dispatcher.threads.busy", busy, AtomicInteger::get)
+                .description("Workers handling an update")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void startWorkers() {
+        if (!isEnabled()) {
+            return;
+        }
+        AtomicInteger threadNumber = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "update-dispatcher-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < threads; i++) {
+            workers.execute(this::work);
+        }
+    }
+
+    /**
+     * Handles the queued updates before the application stops, polling is stopped already.
+     */
+    @PreDestroy
+    public void stopWorkers() {
+        if (workers == null) {
+            return;
+        }
+        long deadline = System.nanoTime() + shutdownTimeout.toNanos();
+        while (depth.get() > 0 && System.nanoTime() - deadline < 0) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        if (depth.get() > 0) {
+            logger.warn("{} confirmed updates are not handled before the shutdown", depth.get());
+        }
+        running = false;
+        workers.shutdownNow();
+    }
+
+    public boolean isEnabled() {
+        return threads > 0;
+    }
+
+    /**
+     * @return updates waiting in all the lanes
+     */
+    public int getQueueDepth() {
+        return depth.get();
+    }
+
+    public void submit(Update update, Consumer<Update> handler) {
+        UpdateLane lane = UpdateLane.of(update);
+        long chatId = UpdateQueue.chatIdOf(update);
+        depth.incrementAndGet();
+        laneDepths.get(lane).incrementAndGet();
+        Task task = new Task(update, lane, handler, System.nanoTime());
+        synchronized (chats) {
+            Chat chat = chats.get(chatId);
+            if (chat != null) {
+                // Queued or being handled already, the update waits for the earlier ones of the chat
+                chat.tasks().add(task);
+                return;
+            }
+            chat = new Chat(chatId, new ArrayDeque<>());
+            chat.tasks().add(task);
+            chats.put(chatId, chat);
+            queues.get(lane).add(chat);
+        }
+        pending.release();
+    }
+
+    private void work() {
+        while (running) {
+            Chat chat;
+            try {
+                pending.acquire();
+                chat = next();
+            } catch (InterruptedException e) {
+                return;
+            }
+            Task task;
+            synchronized (chats) {
+                task = chat.tasks().poll();
+            }
+            laneDepths.get(task.lane()).decrementAndGet();
+            handle(task);
+            Task nextTask;
+            synchronized (chats) {
+                nextTask = chat.tasks().peek();
+                if (nextTask == null) {
+                    chats.remove(chat.chatId());
+                } else {
+                    queues.get(nextTask.lane()).add(chat);
+                }
+            }
+            if (nextTask != null) {
+                pending.release();
+            }
+        }
+    }
+
+    private void handle(Task task) {
+        busy.incrementAndGet();
+        try {
+            task.handler().accept(task.update());
+        } catch (RuntimeException e) {
+            logger.error("Failed to handle update {}", task.update().updateId(), e);
+        } finally {
+            busy.decrementAndGet();
+            depth.decrementAndGet();
+            latencies.get(task.lane()).record(System.nanoTime() - task.queuedAt(), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Takes a chat from the lane of the next turn, or from the first non-empty lane by priority.
+     * A permit of {@code pending} is acquired, so some lane has a chat for this worker.
+     */
+    private Chat next() {
+        while (true) {
+            UpdateLane turn = schedule[Math.floorMod(scheduleIndex.getAndIncrement(), schedule.length)];
+            Chat chat = queues.get(turn).poll();
+            if (chat != null) {
+                return chat;
+            }
+            for (UpdateLane lane : UpdateLane.values()) {
+                chat = queues.get(lane).poll();
+                if (chat != null) {
+                    return chat;
+                }
+            }
+            // Not expected: a chat is queued before its permit is released
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Smooth weighted round-robin order of the lanes, e.g. 2,1,1 gives urgent, menu, urgent, messages.
+     */
+    static UpdateLane[] schedule(int[] weights) {
+        UpdateLane[] lanes = UpdateLane.values();
+        if (weights.length != lanes.length || Arrays.stream(weights).anyMatch(weight -> weight <= 0)) {
+            throw new IllegalArgumentException("One positive weight per lane is expected: " + Arrays.toString(weights));
+        }
+        int total = Arrays.stream(weights).sum();
+        int[] current = new int[lanes.length];
+        List<UpdateLane> order = new ArrayList<>(total);
+        for (int turn = 0; turn < total; turn++) {
+            int best = 0;
+            for (int i = 0; i < lanes.length; i++) {
+                current[i] += weights[i];
+                if (current[i] > current[best]) {
+                    best = i;
+                }
+            }
+            current[best] -= total;
+            order.add(lanes[best]);
+        }
+        return order.toArray(new UpdateLane[0]);
+    }
+
+    private record Task(Update update, UpdateLane lane, Consumer<Update> handler, long queuedAt) {
+    }
+
+    /**
+     * Updates of a chat in the order of polling, the first one is the next to handle; guarded by {@code chats}.
+     */
+    private record Chat(long chatId, Queue<Task> tasks) {
+    }
+}
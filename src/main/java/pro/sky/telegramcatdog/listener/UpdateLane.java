@@ -0,0 +1,33 @@
+package pro.sky.telegramcatdog.listener;
+
+import com.pengrad.telegrambot.model.Message;
+import com.pengrad.telegrambot.model.Update;
+
+import static pro.sky.telegramcatdog.constants.Constants.BUTTON_CALL_VOLUNTEER_CALLBACK_TEXT;
+
+/**
+ * Priority lanes of the updates, see {@link UpdateDispatcher}.
+ */
+public enum UpdateLane {
+    /** Calls for a volunteer and adoption reports (photos, documents). */
+    URGENT,
+    /** Menu button clicks. */
+    MENU,
+    /** /start and the other messages. */
+    MESSAGES;
+
+    public static UpdateLane of(Update update) {
+        if (update.callbackQuery() != null) {
+            return BUTTON_CALL_VOLUNTEER_CALLBACK_TEXT.equals(update.callbackQuery().data()) ? URGENT : MENU;
+        }
+        Message message = update.message();
+        if (message != null && (message.photo() != null || message.document() != null)) {
+            return URGENT;
+        }
+        return MESSAGES;
+    }
+
+    public String tag() {
+        return name().toLowerCase();
+    }
+}
@@ -0,0 +1,88 @@
+package pro.sky.telegramcatdog.listener;
+
+import com.google.gson.Gson;
+import com.pengrad.telegrambot.BotUtils;
+import com.pengrad.telegrambot.model.Update;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import pro.sky.telegramcatdog.model.QueuedUpdate;
+import pro.sky.telegramcatdog.repository.QueuedUpdateRepository;
+
+import java.util.List;
+
+/**
+ * Shared queue of the updates between the polling leader and the workers of all the instances
+ * ({@code telegram.bot.work-queue.enabled=true}, PostgreSQL only).
+ * <p>
+ * Updates are partitioned by the hash of the chat id. A partition is processed by one worker at a time
+ * in the order of arrival, so the updates of a chat are handled in the same order whichever instance owns the partition.
+ * The {@link UpdateLane} of an update is queued with it: it decides which chat of a batch goes first, see {@link UpdateQueueWorker}.
+ */
+@Component
+public class UpdateQueue {
+    private final QueuedUpdateRepository queuedUpdateRepository;
+    private final boolean enabled;
+    private final int partitions;
+    private final Gson gson = new Gson();
+
+    public UpdateQueue(QueuedUpdateRepository queuedUpdateRepository,
+                       @Value("${telegram.bot.work-queue.enabled:false}") boolean enabled,
+                       @Value("${telegram.bot.work-queue.partitions:16}") int partitions) {
+        this.queuedUpdateRepository = queuedUpdateRepository;
+        this.enabled = enabled;
+        this.partitions = partitions;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getPartitions() {
+        return partitions;
+    }
+
+    /**
+     * Queues the batch in one transaction, the updates queued before are skipped.
+     */
+    @Transactional
+    public void enqueue(List<Update> updates) {
+        for (Update update : updates) {
+            long chatId = chatIdOf(update);
+            // The field names of the models are the Bot API ones, Gson writes the same JSON Telegram has sent
+            queuedUpdateRepository.enqueue(partitionOf(chatId), UpdateLane.of(update).ordinal(), chatId, update.updateId(),
+                    gson.toJson(update));
+        }
+    }
+
+    /**
+     * @return updates queued and not processed yet, in all the partitions, without the dead-lettered ones
+     */
+    public long countPending() {
+        return queuedUpdateRepository.countByProcessedAtIsNullAndDeadLetteredAtIsNull();
+    }
+
+    public Update read(QueuedUpdate queuedUpdate) {
+        return BotUtils.fromJson(queuedUpdate.getPayload(), Update.class);
+    }
+
+    int partitionOf(long chatId) {
+        return Math.floorMod(Long.hashCode(chatId), partitions);
+    }
+
+    /**
+     * @return chat of the message or of the clicked button, the user for the updates without a chat, 0 if there is neither
+     */
+    static long chatIdOf(Update update) {
+        if (update.message() != null) {
+            return update.message().chat().id();
+        }
+        if (update.callbackQuery() != null) {
+            if (update.callbackQuery().message() != null) {
+                return update.callbackQuery().message().chat().id();
+            }
+            return update.callbackQuery().from().id();
+        }
+        return 0;
+    }
+}
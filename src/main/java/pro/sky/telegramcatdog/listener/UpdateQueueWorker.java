@@ -0,0 +1,349 @@
+package pro.sky.telegramcatdog.listener;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import pro.sky.telegramcatdog.configuration.Bulkhead;
+import pro.sky.telegramcatdog.configuration.NativeImageHints;
+import pro.sky.telegramcatdog.model.QueuedUpdate;
+import pro.sky.telegramcatdog.repository.QueuedUpdateRepository;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Processes the updates of the {@link UpdateQueue} partitions owned by this instance.
+ * <p>
+ * A partition is owned by holding a Postgres advisory lock on it, on a dedicated connection.
+ * Every instance also holds a shared membership lock, so each one sees how many workers there are
+ * and takes its fair share of the partitions: the instances with more give some up, the others pick them up.
+ * A partition is given up only after its batch in flight is done, so the updates of a chat stay in order.
+ * If an instance dies, its locks go with its connection and the others take its partitions at the next rebalance.
+ * Before each batch the worker checks in {@code pg_locks} that the session of its lock connection still holds
+ * the lock of the partition; if not, the partition may be drained by another instance already, and the drain stops.
+ * <p>
+ * A partition is drained in the order of arrival. Within a batch the chats go by the {@link UpdateLane} of their oldest
+ * update (the calls for a volunteer first), each chat's updates in the order of arrival.
+ * <p>
+ * An update whose handler throws is not marked processed: the later updates of its chat are skipped for the rest
+ * of the drain and the update is tried again at the next poll, the other chats of the partition go on.
+ * After {@code max-attempts} it is dead-lettered ({@code dead_lettered_at}), kept for inspection and skipped.
+ * <p>
+ * Does nothing unless {@code telegram.bot.work-queue.enabled=true}, checked when the worker starts
+ * (see {@link NativeImageHints}).
+ */
+@Component
+@Lazy(false)
+public class UpdateQueueWorker implements SmartLifecycle {
+    private static final int PARTITION_LOCK = 7355609;
+    private static final int MEMBER_LOCK = 7355610;
+
+    private final Logger logger = LoggerFactory.getLogger(UpdateQueueWorker.class);
+    private final DataSource lockDataSource;
+    private final UpdateQueue updateQueue;
+    private final QueuedUpdateRepository queuedUpdateRepository;
+    private final TelegramBotUpdatesListener listener;
+    private final int threads;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final Duration pollInterval;
+    private final Duration rebalanceInterval;
+    private final Duration retention;
+    // Changed by the rebalancer thread only, or in stop() after it has finished
+    private final NavigableMap<Integer, Partition> owned = new TreeMap<>();
+    private ScheduledExecutorService rebalancer;
+    private ScheduledExecutorService workers;
+    private Connection connection;
+    // Backend process of the lock connection, 0 when there is none
+    private volatile int lockPid;
+    private volatile boolean running;
+
+    public UpdateQueueWorker(DataSourceProperties dataSourceProperties, UpdateQueue updateQueue,
+                             QueuedUpdateRepository queuedUpdateRepository, TelegramBotUpdatesListener listener,
+                             @Value("${telegram.bot.work-queue.threads:4}") int threads,
+                             @Value("${telegram.bot.work-queue.batch-size:20}") int batchSize,
+                             @Value("${telegram.bot.work-queue.max-attempts:5}") int maxAttempts,
+                             @Value("${telegram.bot.work-queue.poll-interval:PT0.1S}") Duration pollInterval,
+                             @Value("${telegram.bot.work-queue.rebalance-interval:PT5S}") Duration rebalanceInterval,
+                             @Value("${telegram.bot.work-queue.retention:PT24H}") Duration retention) {
+        // Not from the pool: the locks must be released when the connection is closed
+        this.lockDataSource = new DriverManagerDataSource(dataSourceProperties.determineUrl(),
+                dataSourceProperties.determineUsername(), dataSourceProperties.determinePassword());
+        this.updateQueue = updateQueue;
+        this.queuedUpdateRepository = queuedUpdateRepository;
+        this.listener = listener;
+        this.threads = threads;
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.pollInterval = pollInterval;
+        this.rebalanceInterval = rebalanceInterval;
+        this.retention = retention;
+    }
+
+    @Override
+    public void start() {
+        if (!updateQueue.isEnabled()) {
+            return;
+        }
+        workers = Executors.newScheduledThreadPool(threads, namedThreads("update-worker-"));
+        rebalancer = Executors.newSingleThreadScheduledExecutor(namedThreads("update-queue-rebalancer-"));
+        running = true;
+        rebalancer.scheduleWithFixedDelay(this::rebalance, 0, rebalanceInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Finishes the batches in flight and gives up all the partitions.
+     */
+    @Override
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        rebalancer.shutdownNow();
+        try {
+            rebalancer.awaitTermination(rebalanceInterval.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        owned.values().forEach(Partition::cancel);
+        owned.clear();
+        workers.shutdownNow();
+        closeConnection();
+        logger.info("Update queue worker stopped");
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Scheduled(fixedDelayString = "${telegram.bot.work-queue.purge-interval:PT1H}")
+    public void purgeProcessed() {
+        if (!updateQueue.isEnabled()) {
+            return;
+        }
+        int deleted = queuedUpdateRepository.deleteProcessedBefore(new Timestamp(System.currentTimeMillis() - retention.toMillis()));
+        logger.debug("{} processed updates purged from the queue", deleted);
+    }
+
+    /**
+     * Takes or gives up partitions so that every worker has its fair share.
+     */
+    private void rebalance() {
+        try {
+            if (connection == null) {
+                connection = lockDataSource.getConnection();
+                connection.setAutoCommit(true);
+                execute("SELECT pg_advisory_lock_shared(?, 0)", MEMBER_LOCK, 0);
+                lockPid = backendPid();
+            }
+            int partitions = updateQueue.getPartitions();
+            int workersCount = Math.max(1, countMembers());
+            int fairShare = (partitions + workersCount - 1) / workersCount;
+            while (owned.size() > fairShare) {
+                int number = owned.lastKey();
+                owned.remove(number).cancel();
+                execute("SELECT pg_advisory_unlock(?, ?)", PARTITION_LOCK, number);
+                logger.info("Update queue partition {} given up, {} workers", number, workersCount);
+            }
+            for (int number = 0; number < partitions && owned.size() < fairShare; number++) {
+                if (!owned.containsKey(number) && execute("SELECT pg_try_advisory_lock(?, ?)", PARTITION_LOCK, number)) {
+                    owned.put(number, new Partition(number));
+                    logger.info("Update queue partition {} taken, {} workers", number, workersCount);
+                }
+            }
+        } catch (SQLException | RuntimeException e) {
+            logger.warn("Update queue rebalance failed, all the partitions are given up", e);
+            owned.values().forEach(Partition::cancel);
+            owned.clear();
+            closeConnection();
+        }
+    }
+
+    private int backendPid() throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT pg_backend_pid()");
+             ResultSet resultSet = statement.executeQuery()) {
+            resultSet.next();
+            return resultSet.getInt(1);
+        }
+    }
+
+    private int countMembers() throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT count(*) FROM pg_locks WHERE locktype = 'advisory' AND classid = ? AND objid = 0 AND objsubid = 2 AND granted")) {
+            statement.setInt(1, MEMBER_LOCK);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                resultSet.next();
+                return resultSet.getInt(1);
+            }
+        }
+    }
+
+    private boolean execute(String sql, int key1, int key2) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setInt(1, key1);
+            statement.setInt(2, key2);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                // pg_advisory_lock_shared returns void
+                return resultSet.next() && !Boolean.FALSE.equals(resultSet.getObject(1));
+            }
+        }
+    }
+
+    private void closeConnection() {
+        lockPid = 0;
+        if (connection == null) {
+            return;
+        }
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            logger.debug("Failed to close the partition lock connection", e);
+        }
+        connection = null;
+    }
+
+    /**
+     * Processes the pending updates of the partition one by one. Each one is marked processed right after it is handled,
+     * so after a crash at most one update of the partition is handled again.
+     * Stops when the partition is not owned any more, when it is cancelled or at an update that failed.
+     */
+    void drainPartition(int number, BooleanSupplier cancelled) {
+        // Chats with a failed update in this drain, their later updates wait for its retry
+        Set<Long> stalledChats = new HashSet<>();
+        long afterId = 0;
+        List<QueuedUpdate> batch;
+        do {
+            batch = queuedUpdateRepository.findPending(number, afterId, batchSize);
+            if (batch.isEmpty()) {
+                return;
+            }
+            // The lock goes with a broken connection, and another worker may have taken the partition
+            if (!ownsPartition(number)) {
+                logger.warn("Update queue partition {} is not owned any more, its drain is stopped", number);
+                return;
+            }
+            for (QueuedUpdate queuedUpdate : byChatPriority(batch)) {
+                if (cancelled.getAsBoolean()) {
+                    return;
+                }
+                if (!stalledChats.contains(queuedUpdate.getChatId()) && !process(queuedUpdate)) {
+                    stalledChats.add(queuedUpdate.getChatId());
+                }
+            }
+            afterId = batch.get(batch.size() - 1).getId();
+        } while (batch.size() == batchSize && !cancelled.getAsBoolean());
+    }
+
+    /**
+     * The batch chat by chat: the chats by the lane of their oldest update, then by arrival,
+     * the updates of each chat in the order of arrival.
+     */
+    static List<QueuedUpdate> byChatPriority(List<QueuedUpdate> batch) {
+        Map<Long, List<QueuedUpdate>> chats = new LinkedHashMap<>();
+        for (QueuedUpdate queuedUpdate : batch) {
+            chats.computeIfAbsent(queuedUpdate.getChatId(), chatId -> new ArrayList<>()).add(queuedUpdate);
+        }
+        // sorted() is stable: the chats of the same lane keep the order of arrival
+        return chats.values().stream()
+                .sorted(Comparator.comparingInt(updates -> updates.get(0).getLane()))
+                .flatMap(List::stream)
+                .toList();
+    }
+
+    private boolean ownsPartition(int number) {
+        int pid = lockPid;
+        return pid != 0 && queuedUpdateRepository.holdsAdvisoryLock(PARTITION_LOCK, number, pid);
+    }
+
+    /**
+     * @return {@code false} if the update is to be tried again before the next ones of its chat
+     */
+    private boolean process(QueuedUpdate queuedUpdate) {
+        try {
+            listener.processUpdate(updateQueue.read(queuedUpdate));
+        } catch (RuntimeException e) {
+            queuedUpdateRepository.markFailed(queuedUpdate.getId(), maxAttempts, new Timestamp(System.currentTimeMillis()));
+            int attempts = queuedUpdate.getAttempts() + 1;
+            if (attempts >= maxAttempts) {
+                logger.error("Queued update {} failed {} times, it is dead-lettered", queuedUpdate.getUpdateId(), attempts, e);
+                return true;
+            }
+            logger.warn("Queued update {} failed, attempt {} of {}", queuedUpdate.getUpdateId(), attempts, maxAttempts, e);
+            return false;
+        }
+        queuedUpdateRepository.markProcessed(queuedUpdate.getId(), new Timestamp(System.currentTimeMillis()));
+        return true;
+    }
+
+    private static ThreadFactory namedThreads(String prefix) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private class Partition {
+        private final int number;
+        private final ReentrantLock draining = new ReentrantLock();
+        private final ScheduledFuture<?> task;
+        private volatile boolean cancelled;
+
+        Partition(int number) {
+            this.number = number;
+            this.task = workers.scheduleWithFixedDelay(this::drain, 0, pollInterval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        private void drain() {
+            draining.lock();
+            try (Bulkhead.Scope scope = Bulkhead.BOT.enter()) {
+                drainPartition(number, () -> cancelled);
+            } catch (RuntimeException e) {
+                logger.warn("Update queue partition {} is not available", number, e);
+            } finally {
+                draining.unlock();
+            }
+        }
+
+        /**
+         * Stops polling the partition and waits for the update in flight.
+         */
+        void cancel() {
+            cancelled = true;
+            task.cancel(false);
+            draining.lock();
+            draining.unlock();
+        }
+    }
+}
@@ -7,7 +7,8 @@ import java.util.Collection;
 import java.util.Objects;
 
 @Entity
-@Table(name = "adopters")
+@Table(name = "adopters",
+        indexes = @Index(name = "adopters_volunteer_id_status_idx", columnList = "volunteer_id, status"))
 public class Adopter {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -19,6 +20,7 @@ public class Adopter {
     private String phone1;
     private String phone2;
     private String telegram;
+    @Column(name = "volunteer_id")
     private int volunteerId;
     private AdopterStatus status;
 
@@ -1,17 +1,21 @@
 package pro.sky.telegramcatdog.model;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.DynamicUpdate;
 
 import java.util.Objects;
 
 @Entity
-public class AdoptionDoc {
+@DynamicUpdate
+public class AdoptionDoc implements Versioned {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private long id;
     @Column(name = "short_desc")
     private String shortDesc;
     private String description;
+    @Version
+    private int version;
 
     public AdoptionDoc() {
     }
@@ -22,6 +26,14 @@ public class AdoptionDoc {
         this.description = description;
     }
 
+    public int getVersion() {
+        return version;
+    }
+
+    public void setVersion(int version) {
+        this.version = version;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
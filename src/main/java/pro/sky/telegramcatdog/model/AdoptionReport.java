@@ -1,14 +1,25 @@
 package pro.sky.telegramcatdog.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import jakarta.persistence.*;
+import org.hibernate.Length;
+import org.hibernate.annotations.DynamicUpdate;
 
 import java.sql.Timestamp;
 import java.time.LocalDateTime;
 import java.util.Objects;
 
 @Entity
-@Table(name = "adoption_reports")
-public class AdoptionReport {
+@DynamicUpdate
+@Table(name = "adoption_reports", indexes = {
+        @Index(name = "adoption_reports_adopter_id_report_date_idx", columnList = "adopter_id, report_date DESC"),
+        @Index(name = "adoption_reports_pet_id_report_date_idx", columnList = "pet_id, report_date DESC"),
+        @Index(name = "adoption_reports_report_date_idx", columnList = "report_date"),
+        // partial index (WHERE reviewed_at IS NULL) in PostgreSQL, see init.sql
+        @Index(name = "adoption_reports_review_queue_idx", columnList = "volunteer_id, report_date, id")
+})
+public class AdoptionReport implements Versioned {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     @Column(name = "id")
@@ -16,15 +27,41 @@ public class AdoptionReport {
     @ManyToOne
     @JoinColumn(name = "adopter_id")
     private Adopter adopterId;
+    @Column(name = "report_date", nullable = false)
     private Timestamp reportDate;
     @ManyToOne
     @JoinColumn(name = "pet_id")
     private Pet petId;
+    // Pictures are served separately, see /pet-shelter/adoptionReport/{id}/picture and /thumbnail
+    @JsonProperty(access = JsonProperty.Access.WRITE_ONLY)
+    @Column(length = Length.LONG32)
     private byte[] picture;
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    @Column(length = Length.LONG32)
+    private byte[] thumbnail;
     private String diet;
     @Column(name = "wellbeing")
     private String wellBeing;
     private String behaviorChange;
+    @Version
+    private int version;
+    // Review by a volunteer, see AdoptionReportService.claimNextReport
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    @Column(name = "claimed_by")
+    private Long claimedBy;
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    @Column(name = "claimed_at")
+    private Timestamp claimedAt;
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    @Column(name = "reviewed_by")
+    private Long reviewedBy;
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    @Column(name = "reviewed_at")
+    private Timestamp reviewedAt;
+    // Volunteer of the adopter, copied here for the review queue index; PostgreSQL triggers keep it up to date
+    @JsonIgnore
+    @Column(name = "volunteer_id")
+    private Integer volunteerId;
 
     public AdoptionReport() {
     }
@@ -38,6 +75,38 @@ public class AdoptionReport {
         this.behaviorChange = behaviorChange;
     }
 
+    public int getVersion() {
+        return version;
+    }
+
+    public void setVersion(int version) {
+        this.version = version;
+    }
+
+    public Long getClaimedBy() {
+        return claimedBy;
+    }
+
+    public Timestamp getClaimedAt() {
+        return claimedAt;
+    }
+
+    public Long getReviewedBy() {
+        return reviewedBy;
+    }
+
+    public Timestamp getReviewedAt() {
+        return reviewedAt;
+    }
+
+    public Integer getVolunteerId() {
+        return volunteerId;
+    }
+
+    public void setVolunteerId(Integer volunteerId) {
+        this.volunteerId = volunteerId;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -91,6 +160,14 @@ public class AdoptionReport {
         this.picture = picture;
     }
 
+    public byte[] getThumbnail() {
+        return thumbnail;
+    }
+
+    public void setThumbnail(byte[] thumbnail) {
+        this.thumbnail = thumbnail;
+    }
+
     public String getDiet() {
         return diet;
     }
@@ -0,0 +1,49 @@
+package pro.sky.telegramcatdog.model;
+
+import jakarta.persistence.*;
+
+import java.sql.Timestamp;
+import java.util.Objects;
+
+/**
+ * Chat that Telegram refuses to deliver to (403: the user has blocked the bot or the chat is deactivated).
+ * See {@link pro.sky.telegramcatdog.service.BlockedChatRegistry}.
+ */
+@Entity
+@Table(name = "blocked_chats")
+public class BlockedChat {
+    @Id
+    @Column(name = "chat_id")
+    private long chatId;
+    @Column(name = "blocked_at", nullable = false)
+    private Timestamp blockedAt;
+
+    public BlockedChat() {
+    }
+
+    public BlockedChat(long chatId) {
+        this.chatId = chatId;
+        this.blockedAt = new Timestamp(System.currentTimeMillis());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof BlockedChat)) return false;
+        BlockedChat that = (BlockedChat) o;
+        return chatId == that.chatId;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(chatId);
+    }
+
+    public long getChatId() {
+        return chatId;
+    }
+
+    public Timestamp getBlockedAt() {
+        return blockedAt;
+    }
+}
@@ -0,0 +1,54 @@
+package pro.sky.telegramcatdog.model;
+
+import jakarta.persistence.*;
+
+import java.sql.Timestamp;
+import java.util.Objects;
+
+/**
+ * Named value of the bot state that must survive a restart, e.g. the last processed update id.
+ */
+@Entity
+@Table(name = "bot_state")
+public class BotState {
+    @Id
+    private String name;
+    @Column(name = "state_value", nullable = false)
+    private long stateValue;
+    @Column(name = "updated_at")
+    private Timestamp updatedAt;
+
+    public BotState() {
+    }
+
+    public BotState(String name, long stateValue) {
+        this.name = name;
+        this.stateValue = stateValue;
+        this.updatedAt = new Timestamp(System.currentTimeMillis());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof BotState)) return false;
+        BotState botState = (BotState) o;
+        return Objects.equals(name, botState.name);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(name);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getStateValue() {
+        return stateValue;
+    }
+
+    public Timestamp getUpdatedAt() {
+        return updatedAt;
+    }
+}
@@ -4,11 +4,14 @@ import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Version;
+import org.hibernate.annotations.DynamicUpdate;
 
 import java.util.Objects;
 
 @Entity
-public class BranchParams {
+@DynamicUpdate
+public class BranchParams implements Versioned {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private int id;
@@ -22,6 +25,8 @@ public class BranchParams {
     private String info;
     private int probPeriod;
     private int probExtend;
+    @Version
+    private int version;
 
     public BranchParams(int id, String name) {
         this.id = id;
@@ -76,6 +81,14 @@ public class BranchParams {
         return probExtend;
     }
 
+    public int getVersion() {
+        return version;
+    }
+
+    public void setVersion(int version) {
+        this.version = version;
+    }
+
     public void setName(String name) {
         this.name = name;
     }
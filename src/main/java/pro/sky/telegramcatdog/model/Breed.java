@@ -1,6 +1,7 @@
 package pro.sky.telegramcatdog.model;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.DynamicUpdate;
 import pro.sky.telegramcatdog.constants.PetType;
 
 import java.util.Collection;
@@ -8,8 +9,9 @@ import java.util.Objects;
 
 
 @Entity
+@DynamicUpdate
 @Table(name = "breeds")
-public class Breed {
+public class Breed implements Versioned {
 
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -22,6 +24,8 @@ public class Breed {
 
     @OneToMany(mappedBy = "breedId")
     private Collection<Pet> pets;
+    @Version
+    private int version;
 
     public Breed(){
 
@@ -57,6 +61,14 @@ public class Breed {
         this.name = name;
     }
 
+    public int getVersion() {
+        return version;
+    }
+
+    public void setVersion(int version) {
+        this.version = version;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -8,7 +8,8 @@ import java.sql.Timestamp;
 import java.util.Objects;
 
 @Entity
-@Table(name = "guests")
+@Table(name = "guests",
+        indexes = @Index(name = "guests_chat_id_uidx", columnList = "chat_id", unique = true))
 public class Guest {
 
     @Id
@@ -0,0 +1,83 @@
+package pro.sky.telegramcatdog.model;
+
+import jakarta.persistence.*;
+
+import java.sql.Timestamp;
+import java.util.Objects;
+
+/**
+ * Telegram message waiting to be sent, written in the same transaction as the change it notifies about.
+ * See {@link pro.sky.telegramcatdog.service.NotificationOutboxRelay}.
+ */
+@Entity
+@Table(name = "notification_outbox",
+        indexes = @Index(name = "notification_outbox_next_attempt_at_idx", columnList = "next_attempt_at, id"))
+public class OutboxMessage {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    @Column(name = "chat_id", nullable = false)
+    private long chatId;
+    @Column(nullable = false)
+    private String text;
+    @Column(name = "created_at", nullable = false)
+    private Timestamp createdAt;
+    private int attempts;
+    @Column(name = "next_attempt_at", nullable = false)
+    private Timestamp nextAttemptAt;
+
+    public OutboxMessage() {
+    }
+
+    public OutboxMessage(long chatId, String text) {
+        this.chatId = chatId;
+        this.text = text;
+        this.createdAt = new Timestamp(System.currentTimeMillis());
+        this.nextAttemptAt = createdAt;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof OutboxMessage)) return false;
+        OutboxMessage that = (OutboxMessage) o;
+        return Objects.equals(id, that.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id);
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public long getChatId() {
+        return chatId;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public Timestamp getCreatedAt() {
+        return createdAt;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    public Timestamp getNextAttemptAt() {
+        return nextAttemptAt;
+    }
+
+    public void setNextAttemptAt(Timestamp nextAttemptAt) {
+        this.nextAttemptAt = nextAttemptAt;
+    }
+}
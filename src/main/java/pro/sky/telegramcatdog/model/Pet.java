@@ -1,6 +1,7 @@
 package pro.sky.telegramcatdog.model;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.DynamicUpdate;
 import pro.sky.telegramcatdog.constants.Color;
 import pro.sky.telegramcatdog.constants.PetType;
 import pro.sky.telegramcatdog.constants.Sex;
@@ -9,8 +10,12 @@ import java.util.Collection;
 import java.util.Objects;
 
 @Entity
-@Table(name = "pets")
-public class Pet {
+@DynamicUpdate
+@Table(name = "pets", indexes = {
+        @Index(name = "pets_adopter_id_idx", columnList = "adopter_id"),
+        @Index(name = "pets_breed_id_idx", columnList = "breed_id")
+})
+public class Pet implements Versioned {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private long id;
@@ -29,6 +34,8 @@ public class Pet {
 
     @OneToMany(mappedBy = "petId")
     private Collection<AdoptionReport> adoptionReports;
+    @Version
+    private int version;
 
     public Pet() {
 
@@ -82,6 +89,14 @@ public class Pet {
         return picture;
     }
 
+    public int getVersion() {
+        return version;
+    }
+
+    public void setVersion(int version) {
+        this.version = version;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
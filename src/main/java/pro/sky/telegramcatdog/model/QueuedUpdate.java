@@ -0,0 +1,97 @@
+package pro.sky.telegramcatdog.model;
+
+import jakarta.persistence.*;
+import org.hibernate.Length;
+
+import java.sql.Timestamp;
+import java.util.Objects;
+
+/**
+ * Telegram update received by the polling leader and waiting for the worker that owns its partition.
+ * See {@link pro.sky.telegramcatdog.listener.UpdateQueueWorker}.
+ */
+@Entity
+@Table(name = "update_queue", indexes = {
+        // partial index (WHERE processed_at IS NULL AND dead_lettered_at IS NULL) in PostgreSQL, see init.sql
+        @Index(name = "update_queue_partition_no_idx", columnList = "partition_no, id"),
+        @Index(name = "update_queue_processed_at_idx", columnList = "processed_at")
+})
+public class QueuedUpdate {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    @Column(name = "partition_no", nullable = false)
+    private int partitionNo;
+    @Column(name = "chat_id", nullable = false)
+    private long chatId;
+    @Column(name = "update_id", nullable = false, unique = true)
+    private long updateId;
+    // Ordinal of the priority lane, see UpdateLane
+    @Column(nullable = false)
+    private int lane;
+    @Column(nullable = false, length = Length.LONG32)
+    private String payload;
+    @Column(name = "created_at", nullable = false)
+    private Timestamp createdAt;
+    @Column(name = "processed_at")
+    private Timestamp processedAt;
+    private int attempts;
+    @Column(name = "dead_lettered_at")
+    private Timestamp deadLetteredAt;
+
+    public QueuedUpdate() {
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof QueuedUpdate)) return false;
+        QueuedUpdate that = (QueuedUpdate) o;
+        return Objects.equals(id, that.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id);
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public int getPartitionNo() {
+        return partitionNo;
+    }
+
+    public long getChatId() {
+        return chatId;
+    }
+
+    public long getUpdateId() {
+        return updateId;
+    }
+
+    public int getLane() {
+        return lane;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+
+    public Timestamp getCreatedAt() {
+        return createdAt;
+    }
+
+    public Timestamp getProcessedAt() {
+        return processedAt;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public Timestamp getDeadLetteredAt() {
+        return deadLetteredAt;
+    }
+}
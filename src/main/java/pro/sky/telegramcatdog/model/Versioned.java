@@ -0,0 +1,8 @@
+package pro.sky.telegramcatdog.model;
+
+/**
+ * Entity with an optimistic lock version ({@code @Version}), sent to the clients as the {@code ETag}.
+ */
+public interface Versioned {
+    int getVersion();
+}
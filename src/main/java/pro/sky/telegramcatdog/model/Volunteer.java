@@ -1,13 +1,15 @@
 package pro.sky.telegramcatdog.model;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.DynamicUpdate;
 
 import java.util.Collection;
 import java.util.Objects;
 
 @Entity
+@DynamicUpdate
 @Table(name = "volunteers")
-public class Volunteer {
+public class Volunteer implements Versioned {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private long id;
@@ -18,6 +20,8 @@ public class Volunteer {
     private byte[] picture;
     @OneToMany(mappedBy = "volunteerId")
     private Collection<Adopter> adopters;
+    @Version
+    private int version;
 
     public Volunteer() {
     }
@@ -30,6 +34,14 @@ public class Volunteer {
         this.picture = picture;
     }
 
+    public int getVersion() {
+        return version;
+    }
+
+    public void setVersion(int version) {
+        this.version = version;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -1,9 +1,30 @@
 package pro.sky.telegramcatdog.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import pro.sky.telegramcatdog.model.AdoptionDoc;
 
+import java.util.Optional;
+
 @Repository
 public interface AdoptionDocRepository extends JpaRepository<AdoptionDoc, Long> {
+    /**
+     * Sets the short and the full text of the document when its version is still the expected one.
+     * @param version expected current version or {@code null} for any version, it is incremented by the update
+     * @return number of updated rows, 0 if there is no such document or its version has changed
+     */
+    @Modifying(clearAutomatically = true)
+    @Query("update AdoptionDoc d set d.shortDesc = :#{#adoptionDoc.shortDesc}, d.description = :#{#adoptionDoc.description}, " +
+            "d.version = d.version + 1 " +
+            "where d.id = :#{#adoptionDoc.id} and (:version is null or d.version = :version)")
+    int updateIfVersionMatches(@Param("adoptionDoc") AdoptionDoc adoptionDoc, @Param("version") Integer version);
+
+    /**
+     * Version after an update made without the expected version.
+     */
+    @Query("select d.version from AdoptionDoc d where d.id = :id")
+    Optional<Integer> findVersionById(@Param("id") long id);
 }
@@ -1,9 +1,148 @@
 package pro.sky.telegramcatdog.repository;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import pro.sky.telegramcatdog.model.AdoptionReport;
 
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Optional;
+
 @Repository
 public interface AdoptionReportRepository extends JpaRepository<AdoptionReport, Long> {
+    /**
+     * Reports since the given date, newest first.
+     * The condition on report_date lets PostgreSQL scan only the partitions of this period.
+     */
+    List<AdoptionReport> findAllByReportDateGreaterThanEqualOrderByReportDateDesc(Timestamp from);
+
+    /**
+     * Reports of the adopter since the given date, newest first (partition pruning as above).
+     */
+    List<AdoptionReport> findAllByAdopterId_IdAndReportDateGreaterThanEqualOrderByReportDateDesc(Long adopterId, Timestamp from);
+
+    /**
+     * Writes the report together with a new picture and thumbnail; the report date and the review state are not touched.
+     * The row is changed only if it still has the expected version.
+     * The report is looked for in the partitions of [dateFrom, dateTo) only, like in {@link #findByIdInPeriod}.
+     * @param version expected current version or {@code null} for any version, it is incremented by the update
+     * @return number of updated rows, 0 if there is no such adoption report or its version has changed
+     */
+    @Modifying(clearAutomatically = true)
+    @Query("update AdoptionReport r set r.adopterId = :#{#adoptionReport.adopterId}, r.petId = :#{#adoptionReport.petId}, " +
+            "r.picture = :#{#adoptionReport.picture}, r.thumbnail = :#{#adoptionReport.thumbnail}, r.diet = :#{#adoptionReport.diet}, " +
+            "r.wellBeing = :#{#adoptionReport.wellBeing}, r.behaviorChange = :#{#adoptionReport.behaviorChange}, " +
+            "r.version = r.version + 1 " +
+            "where r.id = :#{#adoptionReport.id} and r.reportDate >= :dateFrom and r.reportDate < :dateTo " +
+            "and (:version is null or r.version = :version)")
+    int updateIfVersionMatches(@Param("adoptionReport") AdoptionReport adoptionReport, @Param("version") Integer version,
+                               @Param("dateFrom") Timestamp dateFrom, @Param("dateTo") Timestamp dateTo);
+
+    /**
+     * Same as {@link #updateIfVersionMatches} but keeps the picture and the thumbnail.
+     */
+    @Modifying(clearAutomatically = true)
+    @Query("update AdoptionReport r set r.adopterId = :#{#adoptionReport.adopterId}, r.petId = :#{#adoptionReport.petId}, " +
+            "r.diet = :#{#adoptionReport.diet}, " +
+            "r.wellBeing = :#{#adoptionReport.wellBeing}, r.behaviorChange = :#{#adoptionReport.behaviorChange}, " +
+            "r.version = r.version + 1 " +
+            "where r.id = :#{#adoptionReport.id} and r.reportDate >= :dateFrom and r.reportDate < :dateTo " +
+            "and (:version is null or r.version = :version)")
+    int updateWithoutPictureIfVersionMatches(@Param("adoptionReport") AdoptionReport adoptionReport, @Param("version") Integer version,
+                                             @Param("dateFrom") Timestamp dateFrom, @Param("dateTo") Timestamp dateTo);
+
+    /**
+     * Report date of the report. The id alone doesn't tell the partition, so this probes the primary key of every
+     * partition: it is used only when the client has not sent the report date.
+     */
+    @Query("select r.reportDate from AdoptionReport r where r.id = :id")
+    Optional<Timestamp> findReportDateById(@Param("id") long id);
+
+    /**
+     * Version after an update made without the expected version, looked for in the partitions of [dateFrom, dateTo).
+     */
+    @Query("select r.version from AdoptionReport r where r.id = :id and r.reportDate >= :dateFrom and r.reportDate < :dateTo")
+    Optional<Integer> findVersionById(@Param("id") long id,
+                                      @Param("dateFrom") Timestamp dateFrom, @Param("dateTo") Timestamp dateTo);
+
+    /**
+     * The report by id, looked for only in the partitions of the report dates in [dateFrom, dateTo).
+     */
+    @Query("select r from AdoptionReport r where r.id = :id and r.reportDate >= :dateFrom and r.reportDate < :dateTo")
+    Optional<AdoptionReport> findByIdInPeriod(@Param("id") long id,
+                                              @Param("dateFrom") Timestamp dateFrom, @Param("dateTo") Timestamp dateTo);
+
+    @Query("select r.picture from AdoptionReport r where r.id = :id and r.reportDate >= :dateFrom and r.reportDate < :dateTo")
+    Optional<byte[]> findPictureById(@Param("id") long id,
+                                     @Param("dateFrom") Timestamp dateFrom, @Param("dateTo") Timestamp dateTo);
+
+    @Query("select r.thumbnail from AdoptionReport r where r.id = :id and r.reportDate >= :dateFrom and r.reportDate < :dateTo")
+    Optional<byte[]> findThumbnailById(@Param("id") long id,
+                                       @Param("dateFrom") Timestamp dateFrom, @Param("dateTo") Timestamp dateTo);
+
+    /**
+     * Keyset page of the review queue of the volunteer: unreviewed reports of the volunteer's adopters
+     * after the given (report date, id), oldest first. Reports claimed by someone else are skipped until the claim expires.
+     * The cost of a page doesn't depend on the position in the queue, there is no offset.
+     */
+    @Query("select r from AdoptionReport r where r.volunteerId = :volunteerId and r.reviewedAt is null " +
+            "and (r.claimedAt is null or r.claimedBy = :volunteerId or r.claimedAt < :claimExpiredBefore) " +
+            "and (r.reportDate > :afterDate or (r.reportDate = :afterDate and r.id > :afterId)) " +
+            "order by r.reportDate, r.id")
+    List<AdoptionReport> findReviewQueue(@Param("volunteerId") int volunteerId,
+                                         @Param("claimExpiredBefore") Timestamp claimExpiredBefore,
+                                         @Param("afterDate") Timestamp afterDate,
+                                         @Param("afterId") long afterId,
+                                         Pageable page);
+
+    /**
+     * Id and report date of a report: together they find it in its partition.
+     */
+    interface ReportKey {
+        Long getId();
+
+        Timestamp getReportDate();
+    }
+
+    /**
+     * Keys of the reports the volunteer can claim after the given (report date, id), oldest first.
+     * Served by the partial index on (volunteer_id, report_date, id): the scan stops at the page size.
+     */
+    @Query("select r.id as id, r.reportDate as reportDate from AdoptionReport r " +
+            "where r.volunteerId = :volunteerId and r.reviewedAt is null " +
+            "and (r.claimedAt is null or r.claimedAt < :claimExpiredBefore) " +
+            "and (r.reportDate > :afterDate or (r.reportDate = :afterDate and r.id > :afterId)) " +
+            "order by r.reportDate, r.id")
+    List<ReportKey> findClaimCandidates(@Param("volunteerId") int volunteerId,
+                                        @Param("claimExpiredBefore") Timestamp claimExpiredBefore,
+                                        @Param("afterDate") Timestamp afterDate,
+                                        @Param("afterId") long afterId,
+                                        Pageable page);
+
+    /**
+     * Claims the report for the volunteer if nobody holds a live claim on it.
+     * The condition is checked by the update itself, so of two concurrent claims only one updates the row.
+     * @return 1 if the report is claimed, 0 if it is reviewed or claimed by someone else
+     */
+    @Modifying(clearAutomatically = true)
+    @Query("update AdoptionReport r set r.claimedBy = :volunteerId, r.claimedAt = :now " +
+            "where r.id = :id and r.reportDate = :reportDate and r.reviewedAt is null " +
+            "and (r.claimedAt is null or r.claimedAt < :claimExpiredBefore)")
+    int claim(@Param("id") long id, @Param("reportDate") Timestamp reportDate, @Param("volunteerId") long volunteerId,
+              @Param("now") Timestamp now, @Param("claimExpiredBefore") Timestamp claimExpiredBefore);
+
+    /**
+     * Marks the report reviewed. Only the volunteer holding the claim can do it.
+     * @return 1 if the report is marked, 0 otherwise
+     */
+    @Modifying(clearAutomatically = true)
+    @Query("update AdoptionReport r set r.reviewedBy = :volunteerId, r.reviewedAt = :now " +
+            "where r.id = :id and r.reportDate >= :dateFrom and r.reportDate < :dateTo " +
+            "and r.reviewedAt is null and r.claimedBy = :volunteerId")
+    int completeReview(@Param("id") long id, @Param("dateFrom") Timestamp dateFrom, @Param("dateTo") Timestamp dateTo,
+                       @Param("volunteerId") long volunteerId, @Param("now") Timestamp now);
 }
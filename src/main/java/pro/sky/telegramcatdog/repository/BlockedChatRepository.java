@@ -0,0 +1,25 @@
+package pro.sky.telegramcatdog.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import pro.sky.telegramcatdog.model.BlockedChat;
+
+import java.util.List;
+
+@Repository
+public interface BlockedChatRepository extends JpaRepository<BlockedChat, Long> {
+    @Query("select b.chatId from BlockedChat b order by b.chatId")
+    List<Long> findAllChatIds();
+
+    /**
+     * @return number of deleted rows, 0 if the chat is not blocked
+     */
+    @Transactional
+    @Modifying
+    @Query("delete from BlockedChat b where b.chatId = :chatId")
+    int unblock(@Param("chatId") long chatId);
+}
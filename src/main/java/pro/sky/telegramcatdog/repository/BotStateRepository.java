@@ -0,0 +1,32 @@
+package pro.sky.telegramcatdog.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import pro.sky.telegramcatdog.model.BotState;
+
+import java.sql.Timestamp;
+
+@Repository
+public interface BotStateRepository extends JpaRepository<BotState, String> {
+    /**
+     * Raises the value, a smaller value never overwrites a bigger one.
+     * @return number of updated rows, 0 if there is no such state or its value is not smaller
+     */
+    @Transactional
+    @Modifying
+    @Query("update BotState s set s.stateValue = :value, s.updatedAt = :updatedAt where s.name = :name and s.stateValue < :value")
+    int raiseValue(@Param("name") String name, @Param("value") long value, @Param("updatedAt") Timestamp updatedAt);
+
+    /**
+     * Overwrites the value, e.g. a smaller one when the sequence is started anew.
+     * @return number of updated rows, 0 if there is no such state
+     */
+    @Transactional
+    @Modifying
+    @Query("update BotState s set s.stateValue = :value, s.updatedAt = :updatedAt where s.name = :name")
+    int setValue(@Param("name") String name, @Param("value") long value, @Param("updatedAt") Timestamp updatedAt);
+}
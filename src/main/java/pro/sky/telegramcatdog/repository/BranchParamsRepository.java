@@ -1,10 +1,33 @@
 package pro.sky.telegramcatdog.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import pro.sky.telegramcatdog.model.BranchParams;
 
+import java.util.Optional;
+
 @Repository
 public interface BranchParamsRepository extends JpaRepository<BranchParams, Integer> {
+    /**
+     * Writes the address, work hours, map and probation settings of the branch, guarded by its version.
+     * @param version expected current version or {@code null} for any version, it is incremented by the update
+     * @return number of updated rows, 0 if there is no such branch or its version has changed
+     */
+    @Modifying(clearAutomatically = true)
+    @Query("update BranchParams b set b.name = :#{#branchParams.name}, b.country = :#{#branchParams.country}, b.city = :#{#branchParams.city}, " +
+            "b.zip = :#{#branchParams.zip}, b.address = :#{#branchParams.address}, b.workHours = :#{#branchParams.workHours}, " +
+            "b.map = :#{#branchParams.map}, b.info = :#{#branchParams.info}, " +
+            "b.probPeriod = :#{#branchParams.probPeriod}, b.probExtend = :#{#branchParams.probExtend}, " +
+            "b.version = b.version + 1 " +
+            "where b.id = :#{#branchParams.id} and (:version is null or b.version = :version)")
+    int updateIfVersionMatches(@Param("branchParams") BranchParams branchParams, @Param("version") Integer version);
 
+    /**
+     * Version after an update made without the expected version.
+     */
+    @Query("select b.version from BranchParams b where b.id = :id")
+    Optional<Integer> findVersionById(@Param("id") int id);
 }
@@ -1,11 +1,30 @@
 package pro.sky.telegramcatdog.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import pro.sky.telegramcatdog.model.Breed;
 
+import java.util.Optional;
 
 @Repository
 public interface BreedRepository extends JpaRepository<Breed, Long> {
+    /**
+     * Renames the breed or moves it to another pet type, provided the breed is still at the expected version.
+     * @param version expected current version or {@code null} for any version, it is incremented by the update
+     * @return number of updated rows, 0 if there is no such breed or its version has changed
+     */
+    @Modifying(clearAutomatically = true)
+    @Query("update Breed b set b.petType = :#{#breed.petType}, b.name = :#{#breed.name}, " +
+            "b.version = b.version + 1 " +
+            "where b.id = :#{#breed.id} and (:version is null or b.version = :version)")
+    int updateIfVersionMatches(@Param("breed") Breed breed, @Param("version") Integer version);
 
-}
\ No newline at end of file
+    /**
+     * Version after an update made without the expected version.
+     */
+    @Query("select b.version from Breed b where b.id = :id")
+    Optional<Integer> findVersionById(@Param("id") long id);
+}
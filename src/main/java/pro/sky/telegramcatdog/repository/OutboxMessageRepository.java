@@ -0,0 +1,45 @@
+package pro.sky.telegramcatdog.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import pro.sky.telegramcatdog.model.OutboxMessage;
+
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface OutboxMessageRepository extends JpaRepository<OutboxMessage, Long> {
+    /**
+     * Locks the next messages due to be sent, oldest first.
+     * Rows locked by another relay instance are skipped, so the instances drain the outbox in parallel
+     * without sending a message twice (PostgreSQL only).
+     */
+    @Query(value = "SELECT * FROM notification_outbox WHERE next_attempt_at <= now() AND attempts < :maxAttempts " +
+            "ORDER BY next_attempt_at, id LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<OutboxMessage> lockNextBatch(@Param("limit") int limit, @Param("maxAttempts") int maxAttempts);
+
+    /**
+     * Gives claimed messages that were not sent back to the relay: they are due at {@code nextAttemptAt}
+     * and the claim is not counted.
+     */
+    @Transactional
+    @Modifying
+    @Query("update OutboxMessage m set m.attempts = m.attempts - 1, m.nextAttemptAt = :nextAttemptAt where m.id in :ids")
+    int release(@Param("ids") Collection<Long> ids, @Param("nextAttemptAt") Timestamp nextAttemptAt);
+
+    /**
+     * Deletes the messages whose last attempt was claimed and has not been confirmed within the retry delay,
+     * e.g. the relay stopped while sending them. They would never be claimed again.
+     */
+    @Transactional
+    @Modifying
+    @Query("delete from OutboxMessage m where m.attempts >= :maxAttempts and m.nextAttemptAt <= :now")
+    int deleteExhausted(@Param("maxAttempts") int maxAttempts, @Param("now") Timestamp now);
+
+    List<OutboxMessage> findAllByChatId(long chatId);
+}
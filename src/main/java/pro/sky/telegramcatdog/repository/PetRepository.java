@@ -1,10 +1,31 @@
 package pro.sky.telegramcatdog.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import pro.sky.telegramcatdog.model.Pet;
 
+import java.util.Optional;
+
 @Repository
 public interface PetRepository extends JpaRepository<Pet, Long> {
+    /**
+     * Writes every column of the pet as the client sent it, the picture and the adopter too, if the row still has the expected version.
+     * @param version expected current version or {@code null} for any version, it is incremented by the update
+     * @return number of updated rows, 0 if there is no such pet or its version has changed
+     */
+    @Modifying(clearAutomatically = true)
+    @Query("update Pet p set p.nickName = :#{#pet.nickName}, p.petType = :#{#pet.petType}, p.color = :#{#pet.color}, " +
+            "p.sex = :#{#pet.sex}, p.breedId = :#{#pet.breedId}, p.picture = :#{#pet.picture}, p.adopterId = :#{#pet.adopterId}, " +
+            "p.version = p.version + 1 " +
+            "where p.id = :#{#pet.id} and (:version is null or p.version = :version)")
+    int updateIfVersionMatches(@Param("pet") Pet pet, @Param("version") Integer version);
 
+    /**
+     * Version after an update made without the expected version.
+     */
+    @Query("select p.version from Pet p where p.id = :id")
+    Optional<Integer> findVersionById(@Param("id") long id);
 }
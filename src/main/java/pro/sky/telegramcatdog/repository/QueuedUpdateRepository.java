@@ -0,0 +1,64 @@
+package pro.sky.telegramcatdog.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import pro.sky.telegramcatdog.model.QueuedUpdate;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+@Repository
+public interface QueuedUpdateRepository extends JpaRepository<QueuedUpdate, Long> {
+    /**
+     * Queues an update, a redelivered one (the same update id) is ignored (PostgreSQL only).
+     * @return 1 if the update is queued, 0 if it has been queued before
+     */
+    @Modifying
+    @Query(value = "INSERT INTO update_queue (partition_no, lane, chat_id, update_id, payload, created_at) " +
+            "VALUES (:partitionNo, :lane, :chatId, :updateId, :payload, now()) ON CONFLICT (update_id) DO NOTHING", nativeQuery = true)
+    int enqueue(@Param("partitionNo") int partitionNo, @Param("lane") int lane, @Param("chatId") long chatId,
+                @Param("updateId") long updateId, @Param("payload") String payload);
+
+    /**
+     * Next updates of the partition after {@code afterId}, in the order of arrival; the dead-lettered ones are skipped.
+     */
+    @Query(value = "SELECT * FROM update_queue WHERE partition_no = :partitionNo AND id > :afterId AND processed_at IS NULL " +
+            "AND dead_lettered_at IS NULL ORDER BY id LIMIT :limit", nativeQuery = true)
+    List<QueuedUpdate> findPending(@Param("partitionNo") int partitionNo, @Param("afterId") long afterId,
+                                   @Param("limit") int limit);
+
+    long countByProcessedAtIsNullAndDeadLetteredAtIsNull();
+
+    @Transactional
+    @Modifying
+    @Query("update QueuedUpdate u set u.processedAt = :processedAt where u.id = :id")
+    int markProcessed(@Param("id") long id, @Param("processedAt") Timestamp processedAt);
+
+    /**
+     * Counts a failed attempt, the update is dead-lettered when it reaches {@code maxAttempts}.
+     */
+    @Transactional
+    @Modifying
+    @Query("update QueuedUpdate u set u.attempts = u.attempts + 1, " +
+            "u.deadLetteredAt = case when u.attempts + 1 >= :maxAttempts then :now else null end where u.id = :id")
+    int markFailed(@Param("id") long id, @Param("maxAttempts") int maxAttempts, @Param("now") Timestamp now);
+
+    /**
+     * Tells if the session {@code pid} holds the advisory lock ({@code key1}, {@code key2}) (PostgreSQL only).
+     */
+    @Query(value = "SELECT count(*) > 0 FROM pg_locks WHERE locktype = 'advisory' AND classid = :key1 AND objid = :key2 " +
+            "AND objsubid = 2 AND pid = :pid AND granted", nativeQuery = true)
+    boolean holdsAdvisoryLock(@Param("key1") int key1, @Param("key2") int key2, @Param("pid") int pid);
+
+    /**
+     * Processed updates are kept for a while: their update ids keep the redelivered updates out of the queue.
+     */
+    @Transactional
+    @Modifying
+    @Query("delete from QueuedUpdate u where u.processedAt < :before")
+    int deleteProcessedBefore(@Param("before") Timestamp before);
+}
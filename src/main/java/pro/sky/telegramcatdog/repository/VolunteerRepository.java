@@ -1,10 +1,31 @@
 package pro.sky.telegramcatdog.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import pro.sky.telegramcatdog.model.Volunteer;
 
+import java.util.Optional;
+
 @Repository
 public interface VolunteerRepository extends JpaRepository<Volunteer, Long> {
+    /**
+     * Overwrites the name, chat id, username and picture of the volunteer unless someone changed the volunteer after the expected version.
+     * @param version expected current version or {@code null} for any version, it is incremented by the update
+     * @return number of updated rows, 0 if there is no such volunteer or its version has changed
+     */
+    @Modifying(clearAutomatically = true)
+    @Query("update Volunteer v set v.name = :#{#volunteer.name}, v.chatId = :#{#volunteer.chatId}, " +
+            "v.username = :#{#volunteer.username}, v.picture = :#{#volunteer.picture}, " +
+            "v.version = v.version + 1 " +
+            "where v.id = :#{#volunteer.id} and (:version is null or v.version = :version)")
+    int updateIfVersionMatches(@Param("volunteer") Volunteer volunteer, @Param("version") Integer version);
 
+    /**
+     * Version after an update made without the expected version.
+     */
+    @Query("select v.version from Volunteer v where v.id = :id")
+    Optional<Integer> findVersionById(@Param("id") long id);
 }
@@ -0,0 +1,39 @@
+package pro.sky.telegramcatdog.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.webjars.NotFoundException;
+import pro.sky.telegramcatdog.constants.AdopterStatus;
+import pro.sky.telegramcatdog.event.AdopterStatusChangedEvent;
+import pro.sky.telegramcatdog.model.Adopter;
+import pro.sky.telegramcatdog.repository.AdopterRepository;
+
+@Service
+public class AdopterService {
+    private final Logger logger = LoggerFactory.getLogger(AdopterService.class);
+    private final AdopterRepository adopterRepository;
+    private final ApplicationEventPublisher eventPublisher;
+
+    public AdopterService(AdopterRepository adopterRepository, ApplicationEventPublisher eventPublisher) {
+        this.adopterRepository = adopterRepository;
+        this.eventPublisher = eventPublisher;
+    }
+
+    /**
+     * Changes the status of the adopter and notifies the adopter in Telegram (through the outbox).
+     * Nothing is sent if the status is the same.
+     */
+    @Transactional
+    public Adopter changeStatus(long id, AdopterStatus status) {
+        logger.debug("Calling method change status of Adopter (id = {}, status = {})", id, status);
+        Adopter adopter = adopterRepository.findById(id).orElseThrow(() -> new NotFoundException("id not found"));
+        if (adopter.getStatus() != status) {
+            adopter.setStatus(status);
+            eventPublisher.publishEvent(new AdopterStatusChangedEvent(id, adopter.getTelegram(), status));
+        }
+        return adopter;
+    }
+}
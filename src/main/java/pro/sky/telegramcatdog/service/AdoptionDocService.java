@@ -1,7 +1,10 @@
 package pro.sky.telegramcatdog.service;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import pro.sky.telegramcatdog.exception.AdoptionDocNotFoundException;
+import pro.sky.telegramcatdog.exception.VersionConflictException;
 import pro.sky.telegramcatdog.model.AdoptionDoc;
 
 import pro.sky.telegramcatdog.repository.AdoptionDocRepository;
@@ -10,8 +13,10 @@ import pro.sky.telegramcatdog.repository.AdoptionDocRepository;
 public class AdoptionDocService {
 
     private final AdoptionDocRepository adoptionDocRepository;
-    public AdoptionDocService(AdoptionDocRepository adoptionDocRepository) {
+    private final JsonMergePatcher jsonMergePatcher;
+    public AdoptionDocService(AdoptionDocRepository adoptionDocRepository, JsonMergePatcher jsonMergePatcher) {
         this.adoptionDocRepository = adoptionDocRepository;
+        this.jsonMergePatcher = jsonMergePatcher;
     }
 
     public AdoptionDoc createAdoptionDoc(AdoptionDoc adoptionDoc) {
@@ -26,12 +31,33 @@ public class AdoptionDocService {
         return adoptionDoc;
     }
 
-    public AdoptionDoc updateAdoptionDoc(AdoptionDoc adoptionDoc) {
-        if (adoptionDocRepository.findById(adoptionDoc.getId()).orElse(null) == null) {
-            return null;
+    /**
+     * Rewrites the texts of the document unless another editor got there first.
+     * @param version version of the document from {@code If-Match}, {@code null} for any version
+     * @return the document as written or {@code null} if there is no document with such id
+     * @throws VersionConflictException if the document has been modified by someone else
+     */
+    @Transactional
+    public AdoptionDoc updateAdoptionDoc(AdoptionDoc adoptionDoc, Integer version) {
+        if (adoptionDocRepository.updateIfVersionMatches(adoptionDoc, version) == 0) {
+            if (version == null || !adoptionDocRepository.existsById(adoptionDoc.getId())) {
+                return null;
+            }
+            throw new VersionConflictException(adoptionDoc.getId(), version);
         }
-        return adoptionDocRepository.save(adoptionDoc);
+        adoptionDoc.setVersion(version != null ? version + 1
+                : adoptionDocRepository.findVersionById(adoptionDoc.getId()).orElseThrow());
+        return adoptionDoc;
     }
 
-
+    /**
+     * Partial update of the document by JSON Merge Patch.
+     * Only the columns changed by the patch are written to the database.
+     * @param version expected version of the document ({@code If-Match}), {@code null} to take it from the patch
+     * @throws VersionConflictException if the document has been modified by someone else
+     */
+    @Transactional
+    public AdoptionDoc patchAdoptionDoc(long id, JsonNode patch, Integer version) {
+        return jsonMergePatcher.patch(id, readAdoptionDoc(id), patch, version, adoptionDocRepository);
+    }
 }
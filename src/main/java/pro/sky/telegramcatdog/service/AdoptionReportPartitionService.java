@@ -0,0 +1,137 @@
+package pro.sky.telegramcatdog.service;
+
+import org.postgresql.PGConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import pro.sky.telegramcatdog.configuration.NativeImageHints;
+import pro.sky.telegramcatdog.listener.PollingLeaderElection;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Maintains the monthly partitions of {@code adoption_reports} (PostgreSQL only, see changeset alexeym75:10).
+ * Creates the partitions ahead of time and moves the months older than the retention period
+ * to gzipped CSV files in the archive directory, then drops them.
+ * Every instance schedules it, only the bot polling leader ({@link PollingLeaderElection}) runs it:
+ * two instances would archive the same partition twice and race on its DETACH and DROP.
+ * Does nothing unless {@code adoption-reports.partitions.enabled=true}, checked on every run
+ * (see {@link NativeImageHints}).
+ */
+@Service
+@Lazy(false)
+public class AdoptionReportPartitionService {
+    private static final String PARTITION_PREFIX = "adoption_reports_";
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("yyyy_MM");
+    private static final int MONTHS_AHEAD = 2;
+
+    private final Logger logger = LoggerFactory.getLogger(AdoptionReportPartitionService.class);
+    private final JdbcTemplate jdbcTemplate;
+    private final PollingLeaderElection leaderElection;
+    private final boolean enabled;
+    private final int retentionMonths;
+    private final Path archiveDir;
+
+    public AdoptionReportPartitionService(JdbcTemplate jdbcTemplate, PollingLeaderElection leaderElection,
+                                          @Value("${adoption-reports.partitions.enabled:false}") boolean enabled,
+                                          @Value("${adoption-reports.partitions.retention-months}") int retentionMonths,
+                                          @Value("${adoption-reports.partitions.archive-dir}") String archiveDir) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.leaderElection = leaderElection;
+        this.enabled = enabled;
+        this.retentionMonths = retentionMonths;
+        this.archiveDir = Paths.get(archiveDir);
+    }
+
+    @Scheduled(cron = "${adoption-reports.partitions.cron}")
+    public void maintainPartitions() {
+        if (!enabled) {
+            return;
+        }
+        if (!leaderElection.isLeader()) {
+            logger.debug("Partitions are maintained by the leader instance");
+            return;
+        }
+        YearMonth current = YearMonth.now();
+        createPartitions(current);
+        archiveExpiredPartitions(current.minusMonths(retentionMonths));
+    }
+
+    private void createPartitions(YearMonth current) {
+        for (int i = 0; i <= MONTHS_AHEAD; i++) {
+            LocalDate monthStart = current.plusMonths(i).atDay(1);
+            jdbcTemplate.queryForObject("SELECT create_adoption_reports_partition(?)::text", String.class,
+                    Date.valueOf(monthStart));
+        }
+    }
+
+    /**
+     * Archives and drops the partitions of the months before {@code oldestKept}.
+     * A partition that failed to be archived is kept and retried on the next run.
+     */
+    private void archiveExpiredPartitions(YearMonth oldestKept) {
+        for (String partition : findMonthlyPartitions()) {
+            YearMonth month = YearMonth.parse(partition.substring(PARTITION_PREFIX.length()), PARTITION_SUFFIX);
+            if (!month.isBefore(oldestKept)) {
+                continue;
+            }
+            try {
+                Path file = archive(partition);
+                // DETACH + DROP takes an exclusive lock on the partition only, not on adoption_reports
+                jdbcTemplate.execute("ALTER TABLE adoption_reports DETACH PARTITION " + partition);
+                jdbcTemplate.execute("DROP TABLE " + partition);
+                logger.info("Partition {} is archived to {} and dropped", partition, file);
+            } catch (RuntimeException e) {
+                logger.error("Failed to archive partition {}", partition, e);
+            }
+        }
+    }
+
+    private List<String> findMonthlyPartitions() {
+        return jdbcTemplate.queryForList("""
+                SELECT c.relname FROM pg_inherits i
+                JOIN pg_class c ON c.oid = i.inhrelid
+                JOIN pg_class p ON p.oid = i.inhparent
+                WHERE p.relname = 'adoption_reports' AND c.relname ~ '^adoption_reports_\\d{4}_\\d{2}$'
+                ORDER BY c.relname""", String.class);
+    }
+
+    /**
+     * Copies the partition to {@code <archive-dir>/<partition>.csv.gz}.
+     * The file is written under a temporary name, so a crash never leaves a truncated archive behind.
+     */
+    private Path archive(String partition) {
+        Path file = archiveDir.resolve(partition + ".csv.gz");
+        Path tmp = archiveDir.resolve(partition + ".csv.gz.tmp");
+        return jdbcTemplate.execute((ConnectionCallback<Path>) connection -> {
+            try {
+                Files.createDirectories(archiveDir);
+                try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(tmp))) {
+                    long rows = connection.unwrap(PGConnection.class).getCopyAPI()
+                            .copyOut("COPY " + partition + " TO STDOUT WITH (FORMAT csv, HEADER)", out);
+                    logger.debug("{} rows of {} copied", rows, partition);
+                }
+                return Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+}
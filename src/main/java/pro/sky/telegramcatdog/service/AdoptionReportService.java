@@ -1,40 +1,277 @@
 package pro.sky.telegramcatdog.service;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.webjars.NotFoundException;
+import pro.sky.telegramcatdog.event.AdoptionReportCreatedEvent;
+import pro.sky.telegramcatdog.exception.ReviewNotClaimedException;
+import pro.sky.telegramcatdog.exception.VersionConflictException;
+import pro.sky.telegramcatdog.model.Adopter;
 import pro.sky.telegramcatdog.model.AdoptionReport;
+import pro.sky.telegramcatdog.repository.AdopterRepository;
 import pro.sky.telegramcatdog.repository.AdoptionReportRepository;
 
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
 @Service
 public class AdoptionReportService {
+    private static final int CLAIM_CANDIDATES = 10;
+    /**
+     * The by-id statements look for the report within this time around its report date, see {@link #periodOf}.
+     */
+    private static final long REPORT_DATE_MARGIN_MILLIS = Duration.ofDays(1).toMillis();
+
     private final AdoptionReportRepository adoptionReportRepository;
+    private final JsonMergePatcher jsonMergePatcher;
+    private final ImageProcessingService imageProcessingService;
+    private final AdopterRepository adopterRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration claimTimeout;
 
-    public AdoptionReportService(AdoptionReportRepository adoptionReportRepository) {
+    public AdoptionReportService(AdoptionReportRepository adoptionReportRepository, JsonMergePatcher jsonMergePatcher,
+                                 ImageProcessingService imageProcessingService, AdopterRepository adopterRepository,
+                                 ApplicationEventPublisher eventPublisher, TransactionTemplate transactionTemplate,
+                                 @Value("${adoption-reports.review.claim-timeout:PT30M}") Duration claimTimeout) {
         this.adoptionReportRepository = adoptionReportRepository;
+        this.jsonMergePatcher = jsonMergePatcher;
+        this.imageProcessingService = imageProcessingService;
+        this.adopterRepository = adopterRepository;
+        this.eventPublisher = eventPublisher;
+        this.transactionTemplate = transactionTemplate;
+        this.claimTimeout = claimTimeout;
     }
     private final Logger logger = LoggerFactory.getLogger(AdoptionReportService.class);
 
     public AdoptionReport createAdoptionReport(AdoptionReport adoptionReport) {
-        return adoptionReportRepository.save(adoptionReport);
+        // report_date is the partition key of adoption_reports, it can't be empty
+        if (adoptionReport.getReportDate() == null) {
+            adoptionReport.setReportDate(new Timestamp(System.currentTimeMillis()));
+        }
+        processPicture(adoptionReport);
+        // The notifications are written to the outbox in the same transaction (NotificationOutboxService),
+        // the picture is processed before it so that no connection is held meanwhile
+        return transactionTemplate.execute(status -> {
+            adoptionReport.setVolunteerId(volunteerOf(adoptionReport));
+            AdoptionReport savedReport = adoptionReportRepository.save(adoptionReport);
+            publishCreated(savedReport);
+            return savedReport;
+        });
     }
 
-    public AdoptionReport readAdoptionReport(long id) {
+    /**
+     * @param reportDate report date of the report if the client knows it, {@code null} otherwise, see {@link #periodOf}
+     */
+    public AdoptionReport readAdoptionReport(long id, Timestamp reportDate) {
         logger.debug("Calling method read AdoptionReport (id = {})", id);
-        return adoptionReportRepository.findById(id).orElseThrow(() -> new NotFoundException("id not found"));
-    }
-
-    public AdoptionReport updateAdoptionReport(long id, AdoptionReport adoptionReport) {
-        logger.debug("Calling method update AdoptionReport (id = {})", adoptionReport.getId());
-        AdoptionReport oldVoAdoptionReport = readAdoptionReport(id);
-        oldVoAdoptionReport.setAdopterId(adoptionReport.getAdopterId());
-       // oldVoAdoptionReport.setReportDate(adoptionReport.getReportDate());
-        oldVoAdoptionReport.setPetId(adoptionReport.getPetId());
-        oldVoAdoptionReport.setPicture(adoptionReport.getPicture());
-        oldVoAdoptionReport.setDiet(adoptionReport.getDiet());
-        oldVoAdoptionReport.setWellBeing(adoptionReport.getWellBeing());
-        oldVoAdoptionReport.setBehaviorChange(adoptionReport.getBehaviorChange());
-        return adoptionReportRepository.save(oldVoAdoptionReport);
+        return periodOf(id, reportDate)
+                .flatMap(period -> adoptionReportRepository.findByIdInPeriod(id, period.from(), period.to()))
+                .orElseThrow(() -> new NotFoundException("id not found"));
+    }
+
+    /**
+     * @return the picture of the report, empty if there is no such report or it has no picture
+     */
+    public Optional<byte[]> readPicture(long id, Timestamp reportDate) {
+        return periodOf(id, reportDate)
+                .flatMap(period -> adoptionReportRepository.findPictureById(id, period.from(), period.to()));
+    }
+
+    /**
+     * @return the thumbnail of the report picture, empty if there is no such report or no thumbnail
+     */
+    public Optional<byte[]> readThumbnail(long id, Timestamp reportDate) {
+        return periodOf(id, reportDate)
+                .flatMap(period -> adoptionReportRepository.findThumbnailById(id, period.from(), period.to()));
+    }
+
+    /**
+     * Reports of the last {@code days} days, newest first.
+     * @param adopterId reports of this adopter only, {@code null} for all adopters
+     */
+    public List<AdoptionReport> readRecentAdoptionReports(int days, Long adopterId) {
+        logger.debug("Calling method read recent AdoptionReports (days = {}, adopterId = {})", days, adopterId);
+        Timestamp from = new Timestamp(System.currentTimeMillis() - Duration.ofDays(days).toMillis());
+        if (adopterId == null) {
+            return adoptionReportRepository.findAllByReportDateGreaterThanEqualOrderByReportDateDesc(from);
+        }
+        return adoptionReportRepository.findAllByAdopterId_IdAndReportDateGreaterThanEqualOrderByReportDateDesc(adopterId, from);
+    }
+
+    /**
+     * Replaces the report with one update statement, conditional on the version when it is given. Report date is not changed.
+     * The picture is kept if the new report has none (the picture is not sent to the clients with the report).
+     * The report date of the new report, if any, is used to find the stored one, see {@link #periodOf}.
+     * @param version version of the report from {@code If-Match}, {@code null} for any version
+     * @throws VersionConflictException if the report has been modified by someone else
+     */
+    public AdoptionReport updateAdoptionReport(long id, AdoptionReport adoptionReport, Integer version) {
+        logger.debug("Calling method update AdoptionReport (id = {})", id);
+        boolean withPicture = adoptionReport.getPicture() != null;
+        if (withPicture) {
+            // Before the transaction, as in createAdoptionReport
+            processPicture(adoptionReport);
+        }
+        return transactionTemplate.execute(status -> {
+            ReportPeriod period = periodOf(id, adoptionReport.getReportDate())
+                    .orElseThrow(() -> new NotFoundException("id not found"));
+            adoptionReport.setId(id);
+            int updated = withPicture
+                    ? adoptionReportRepository.updateIfVersionMatches(adoptionReport, version, period.from(), period.to())
+                    : adoptionReportRepository.updateWithoutPictureIfVersionMatches(adoptionReport, version,
+                    period.from(), period.to());
+            if (updated == 0) {
+                if (version == null || adoptionReportRepository.findVersionById(id, period.from(), period.to()).isEmpty()) {
+                    throw new NotFoundException("id not found");
+                }
+                throw new VersionConflictException(id, version);
+            }
+            adoptionReport.setVersion(version != null ? version + 1
+                    : adoptionReportRepository.findVersionById(id, period.from(), period.to()).orElseThrow());
+            return adoptionReport;
+        });
+    }
+
+    /**
+     * Partial update of the report by JSON Merge Patch.
+     * Only the columns changed by the patch are written to the database.
+     * A new picture is processed before the transaction, as in {@link #createAdoptionReport}.
+     * @param version expected version of the report ({@code If-Match}), {@code null} to take it from the patch
+     * @param reportDate report date of the report if the client knows it, {@code null} otherwise
+     * @throws VersionConflictException if the report has been modified by someone else
+     */
+    public AdoptionReport patchAdoptionReport(long id, JsonNode patch, Integer version, Timestamp reportDate) {
+        AdoptionReport uploaded = null;
+        if (patch != null && patch.has("picture")) {
+            uploaded = jsonMergePatcher.apply(new AdoptionReport(), patch);
+            processPicture(uploaded);
+        }
+        AdoptionReport renditions = uploaded;
+        return transactionTemplate.execute(status -> {
+            AdoptionReport adoptionReport = readAdoptionReport(id, reportDate);
+            return jsonMergePatcher.patch(id, adoptionReport, patch, version, adoptionReportRepository, patched -> {
+                if (renditions != null) {
+                    patched.setPicture(renditions.getPicture());
+                    patched.setThumbnail(renditions.getThumbnail());
+                }
+            });
+        });
+    }
+
+    /**
+     * Page of the review queue of the volunteer, see {@link AdoptionReportRepository#findReviewQueue}.
+     * @param afterDate report date of the last report of the previous page, {@code null} for the first page
+     * @param afterId   id of the last report of the previous page
+     */
+    public List<AdoptionReport> readReviewQueue(int volunteerId, Timestamp afterDate, long afterId, int limit) {
+        logger.debug("Calling method read review queue (volunteerId = {}, after = {}/{})", volunteerId, afterDate, afterId);
+        Timestamp from = afterDate == null ? new Timestamp(0) : afterDate;
+        return adoptionReportRepository.findReviewQueue(volunteerId, claimExpiredBefore(), from, afterId,
+                PageRequest.ofSize(limit));
+    }
+
+    /**
+     * Claims the oldest unreviewed report of the volunteer's adopters.
+     * The claim expires after {@code adoption-reports.review.claim-timeout}, then the report returns to the queue.
+     * @return the claimed report, {@code null} if the queue is empty
+     */
+    @Transactional
+    public AdoptionReport claimNextReport(int volunteerId) {
+        logger.debug("Calling method claim next report (volunteerId = {})", volunteerId);
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        Timestamp claimExpiredBefore = claimExpiredBefore();
+        Timestamp afterDate = new Timestamp(0);
+        long afterId = 0;
+        // A candidate can be taken by a concurrent claim between the select and the update, then try the next one;
+        // when the whole page is taken, the next page
+        while (true) {
+            List<AdoptionReportRepository.ReportKey> candidates = adoptionReportRepository.findClaimCandidates(
+                    volunteerId, claimExpiredBefore, afterDate, afterId, PageRequest.ofSize(CLAIM_CANDIDATES));
+            if (candidates.isEmpty()) {
+                return null;
+            }
+            for (AdoptionReportRepository.ReportKey key : candidates) {
+                if (adoptionReportRepository.claim(key.getId(), key.getReportDate(), volunteerId, now, claimExpiredBefore) == 1) {
+                    return readAdoptionReport(key.getId(), key.getReportDate());
+                }
+            }
+            AdoptionReportRepository.ReportKey last = candidates.get(candidates.size() - 1);
+            afterDate = last.getReportDate();
+            afterId = last.getId();
+        }
+    }
+
+    /**
+     * Marks the report claimed by the volunteer as reviewed.
+     * @param reportDate report date of the report if the client knows it, {@code null} otherwise
+     * @throws ReviewNotClaimedException if the report is not claimed by this volunteer
+     */
+    @Transactional
+    public AdoptionReport completeReview(long id, int volunteerId, Timestamp reportDate) {
+        logger.debug("Calling method complete review (id = {}, volunteerId = {})", id, volunteerId);
+        ReportPeriod period = periodOf(id, reportDate).orElseThrow(() -> new NotFoundException("id not found"));
+        if (adoptionReportRepository.completeReview(id, period.from(), period.to(), volunteerId,
+                new Timestamp(System.currentTimeMillis())) == 0) {
+            if (adoptionReportRepository.findByIdInPeriod(id, period.from(), period.to()).isEmpty()) {
+                throw new NotFoundException("id not found");
+            }
+            throw new ReviewNotClaimedException(id, volunteerId);
+        }
+        return adoptionReportRepository.findByIdInPeriod(id, period.from(), period.to()).orElseThrow();
+    }
+
+    /**
+     * adoption_reports is partitioned by report_date, a statement by id alone probes every partition.
+     * The by-id statements also limit the report date to a period around the one the client has got with the report:
+     * a day each way, so the rounding of the date in JSON and the time zone of the client don't matter.
+     * Without the date from the client it is looked up once.
+     * @return empty if the client has not sent the date and there is no such report
+     */
+    private Optional<ReportPeriod> periodOf(long id, Timestamp reportDate) {
+        Optional<Timestamp> date = reportDate != null ? Optional.of(reportDate)
+                : adoptionReportRepository.findReportDateById(id);
+        return date.map(known -> new ReportPeriod(new Timestamp(known.getTime() - REPORT_DATE_MARGIN_MILLIS),
+                new Timestamp(known.getTime() + REPORT_DATE_MARGIN_MILLIS)));
+    }
+
+    private record ReportPeriod(Timestamp from, Timestamp to) {
+    }
+
+    private Timestamp claimExpiredBefore() {
+        return new Timestamp(System.currentTimeMillis() - claimTimeout.toMillis());
+    }
+
+    /**
+     * Volunteer of the report's adopter. The adopter is read again: the one in the request may have only the id.
+     */
+    private Integer volunteerOf(AdoptionReport adoptionReport) {
+        Long adopterId = adoptionReport.getAdopterId() == null ? null : adoptionReport.getAdopterId().getId();
+        return adopterId == null ? null
+                : adopterRepository.findById(adopterId).map(Adopter::getVolunteerId).orElse(null);
+    }
+
+    /**
+     * Notifies the volunteer dashboards, see {@link VolunteerFeedService}.
+     */
+    private void publishCreated(AdoptionReport adoptionReport) {
+        Long adopterId = adoptionReport.getAdopterId() == null ? null : adoptionReport.getAdopterId().getId();
+        eventPublisher.publishEvent(new AdoptionReportCreatedEvent(
+                adoptionReport.getId(), adopterId, adoptionReport.getVolunteerId(), adoptionReport.getReportDate()));
+    }
+
+    private void processPicture(AdoptionReport adoptionReport) {
+        ImageProcessingService.Renditions renditions = imageProcessingService.process(adoptionReport.getPicture());
+        adoptionReport.setPicture(renditions.picture());
+        adoptionReport.setThumbnail(renditions.thumbnail());
     }
 }
@@ -0,0 +1,186 @@
+package pro.sky.telegramcatdog.service;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import pro.sky.telegramcatdog.model.BlockedChat;
+import pro.sky.telegramcatdog.repository.BlockedChatRepository;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Chats that Telegram answers with 403 (the user has blocked the bot), so that nothing more is sent to them.
+ * A chat is added on the first 403 and removed when the user sends /start again.
+ * <p>
+ * The ids are held in a sorted {@code long[]}: 8 bytes per chat, and the check before every send is a binary search
+ * without locks or boxing. Chats are blocked rarely, so a change copies the array and publishes the copy.
+ * The chats are persisted in {@code blocked_chats} and reloaded periodically to pick up the changes of the other instances.
+ * A reload keeps the local blocks and unblocks that its query may have missed: written after it started, or still being written.
+ */
+@Service
+public class BlockedChatRegistry {
+    static final int FORBIDDEN = 403;
+
+    private final Logger logger = LoggerFactory.getLogger(BlockedChatRegistry.class);
+    private final BlockedChatRepository blockedChatRepository;
+    private volatile long[] chatIds = new long[0];
+    // Local changes a reload may not see yet, by chat; guarded by this
+    private final Map<Long, Change> changes = new HashMap<>();
+    private long sequence;
+
+    public BlockedChatRegistry(BlockedChatRepository blockedChatRepository) {
+        this.blockedChatRepository = blockedChatRepository;
+    }
+
+    @PostConstruct
+    @Scheduled(initialDelayString = "${telegram.bot.blocked-chats.reload-interval:PT5M}",
+            fixedDelayString = "${telegram.bot.blocked-chats.reload-interval:PT5M}")
+    public void load() {
+        long loadStartedAt;
+        synchronized (this) {
+            loadStartedAt = ++sequence;
+        }
+        List<Long> ids;
+        try {
+            ids = blockedChatRepository.findAllChatIds();
+        } catch (RuntimeException e) {
+            logger.warn("Failed to load blocked chats, {} known are kept", chatIds.length, e);
+            return;
+        }
+        long[] loaded = ids.stream().mapToLong(Long::longValue).sorted().toArray();
+        synchronized (this) {
+            // The changes written before the query started are in the result, the others are applied over it
+            Iterator<Map.Entry<Long, Change>> iterator = changes.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<Long, Change> change = iterator.next();
+                if (change.getValue().writtenAt() < loadStartedAt) {
+                    iterator.remove();
+                } else {
+                    loaded = change.getValue().blocked() ? with(loaded, change.getKey()) : without(loaded, change.getKey());
+                }
+            }
+            chatIds = loaded;
+        }
+        logger.debug("{} blocked chats loaded", loaded.length);
+    }
+
+    public boolean isBlocked(long chatId) {
+        return Arrays.binarySearch(chatIds, chatId) >= 0;
+    }
+
+    /**
+     * Blocks the chat if Telegram has answered it with 403.
+     * @return {@code true} if the chat is blocked by this call
+     */
+    public boolean blockIfForbidden(long chatId, int errorCode) {
+        return errorCode == FORBIDDEN && block(chatId);
+    }
+
+    /**
+     * @return {@code true} if the chat was not blocked before
+     */
+    public boolean block(long chatId) {
+        synchronized (this) {
+            long[] ids = chatIds;
+            long[] changed = with(ids, chatId);
+            if (changed == ids) {
+                return false;
+            }
+            chatIds = changed;
+            changes.put(chatId, new Change(true, Long.MAX_VALUE));
+        }
+        try {
+            blockedChatRepository.save(new BlockedChat(chatId));
+            written(chatId, true);
+        } catch (RuntimeException e) {
+            // another instance has blocked it at the same time, or the chat stays blocked until the restart
+            logger.warn("Failed to persist blocked chat {}", chatId, e);
+        }
+        logger.info("Chat {} has blocked the bot, messages to it are skipped", chatId);
+        return true;
+    }
+
+    /**
+     * @return {@code true} if the chat was blocked
+     */
+    public boolean unblock(long chatId) {
+        if (!isBlocked(chatId)) {
+            return false;
+        }
+        synchronized (this) {
+            long[] ids = chatIds;
+            long[] changed = without(ids, chatId);
+            if (changed == ids) {
+                return false;
+            }
+            chatIds = changed;
+            changes.put(chatId, new Change(false, Long.MAX_VALUE));
+        }
+        try {
+            blockedChatRepository.unblock(chatId);
+            written(chatId, false);
+        } catch (RuntimeException e) {
+            // the chat is blocked again by the next reload, and unblocked by the next /start
+            synchronized (this) {
+                changes.remove(chatId);
+            }
+            logger.warn("Failed to persist unblocked chat {}", chatId, e);
+        }
+        logger.info("Chat {} is back, messages to it are sent again", chatId);
+        return true;
+    }
+
+    private synchronized void written(long chatId, boolean blocked) {
+        Change change = changes.get(chatId);
+        // not replaced by a later change meanwhile
+        if (change != null && change.blocked() == blocked) {
+            changes.put(chatId, new Change(blocked, sequence));
+        }
+    }
+
+    /**
+     * @return a copy of the sorted ids with the chat, the same array if it is there already
+     */
+    private static long[] with(long[] ids, long chatId) {
+        int index = Arrays.binarySearch(ids, chatId);
+        if (index >= 0) {
+            return ids;
+        }
+        int insertAt = -index - 1;
+        long[] changed = new long[ids.length + 1];
+        System.arraycopy(ids, 0, changed, 0, insertAt);
+        changed[insertAt] = chatId;
+        System.arraycopy(ids, insertAt, changed, insertAt + 1, ids.length - insertAt);
+        return changed;
+    }
+
+    /**
+     * @return a copy of the sorted ids without the chat, the same array if it is not there
+     */
+    private static long[] without(long[] ids, long chatId) {
+        int index = Arrays.binarySearch(ids, chatId);
+        if (index < 0) {
+            return ids;
+        }
+        long[] changed = new long[ids.length - 1];
+        System.arraycopy(ids, 0, changed, 0, index);
+        System.arraycopy(ids, index + 1, changed, index, ids.length - index - 1);
+        return changed;
+    }
+
+    public int size() {
+        return chatIds.length;
+    }
+
+    /**
+     * A local block or unblock, {@code writtenAt} is the {@code sequence} when it was written to the database.
+     */
+    private record Change(boolean blocked, long writtenAt) {
+    }
+}
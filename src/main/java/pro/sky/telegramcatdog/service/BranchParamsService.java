@@ -1,16 +1,21 @@
 package pro.sky.telegramcatdog.service;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import pro.sky.telegramcatdog.exception.BranchNotFoundException;
+import pro.sky.telegramcatdog.exception.VersionConflictException;
 import pro.sky.telegramcatdog.model.BranchParams;
 import pro.sky.telegramcatdog.repository.BranchParamsRepository;
 
 @Service
 public class BranchParamsService {
     private final BranchParamsRepository branchParamsRepository;
+    private final JsonMergePatcher jsonMergePatcher;
 
-    public BranchParamsService(BranchParamsRepository shelterParamsRepository) {
+    public BranchParamsService(BranchParamsRepository shelterParamsRepository, JsonMergePatcher jsonMergePatcher) {
         this.branchParamsRepository = shelterParamsRepository;
+        this.jsonMergePatcher = jsonMergePatcher;
     }
 
     public BranchParams getBranchById(int id) {
@@ -25,10 +30,33 @@ public class BranchParamsService {
         return branchParamsRepository.save(branchParams);
     }
 
-    public BranchParams editBranch(BranchParams branchParams) {
-        if (branchParamsRepository.findById(branchParams.getId()).orElse(null) == null) {
-            return null;
+    /**
+     * Replaces the address, schedule and probation settings of the branch in one guarded update.
+     * @param version version of the branch from {@code If-Match}, {@code null} for any version
+     * @return the branch as written or {@code null} if there is no branch with such id
+     * @throws VersionConflictException if the branch has been modified by someone else
+     */
+    @Transactional
+    public BranchParams editBranch(BranchParams branchParams, Integer version) {
+        if (branchParamsRepository.updateIfVersionMatches(branchParams, version) == 0) {
+            if (version == null || !branchParamsRepository.existsById(branchParams.getId())) {
+                return null;
+            }
+            throw new VersionConflictException(branchParams.getId(), version);
         }
-        return branchParamsRepository.save(branchParams);
+        branchParams.setVersion(version != null ? version + 1
+                : branchParamsRepository.findVersionById(branchParams.getId()).orElseThrow());
+        return branchParams;
+    }
+
+    /**
+     * Partial update of the branch by JSON Merge Patch.
+     * Only the columns changed by the patch are written to the database.
+     * @param version expected version of the branch ({@code If-Match}), {@code null} to take it from the patch
+     * @throws VersionConflictException if the branch has been modified by someone else
+     */
+    @Transactional
+    public BranchParams patchBranch(int id, JsonNode patch, Integer version) {
+        return jsonMergePatcher.patch(id, getBranchById(id), patch, version, branchParamsRepository);
     }
 }
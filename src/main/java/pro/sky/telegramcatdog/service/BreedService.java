@@ -1,7 +1,10 @@
 package pro.sky.telegramcatdog.service;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import pro.sky.telegramcatdog.exception.BreedNotFoundException;
+import pro.sky.telegramcatdog.exception.VersionConflictException;
 import pro.sky.telegramcatdog.model.Breed;
 import pro.sky.telegramcatdog.repository.BreedRepository;
 
@@ -9,10 +12,12 @@ import pro.sky.telegramcatdog.repository.BreedRepository;
 public class BreedService {
 
     private final BreedRepository breedRepository;
+    private final JsonMergePatcher jsonMergePatcher;
 
 
-    public BreedService(BreedRepository breedRepository) {
+    public BreedService(BreedRepository breedRepository, JsonMergePatcher jsonMergePatcher) {
         this.breedRepository = breedRepository;
+        this.jsonMergePatcher = jsonMergePatcher;
     }
 
     public Breed readBreed(long id) {
@@ -27,12 +32,33 @@ public class BreedService {
         return breedRepository.save(breed);
     }
 
-    public Breed editBreed(Breed breed) {
-        if (breedRepository.findById(breed.getId()).orElse(null) == null) {
-            return null;
+    /**
+     * Changes the name and the pet type of the breed if nobody else has changed it since the client read it.
+     * @param version version of the breed from {@code If-Match}, {@code null} for any version
+     * @return the breed as written or {@code null} if there is no breed with such id
+     * @throws VersionConflictException if the breed has been modified by someone else
+     */
+    @Transactional
+    public Breed editBreed(Breed breed, Integer version) {
+        if (breedRepository.updateIfVersionMatches(breed, version) == 0) {
+            if (version == null || !breedRepository.existsById(breed.getId())) {
+                return null;
+            }
+            throw new VersionConflictException(breed.getId(), version);
         }
-        return breedRepository.save(breed);
+        breed.setVersion(version != null ? version + 1
+                : breedRepository.findVersionById(breed.getId()).orElseThrow());
+        return breed;
     }
 
-
+    /**
+     * Partial update of the breed by JSON Merge Patch.
+     * Only the columns changed by the patch are written to the database.
+     * @param version expected version of the breed ({@code If-Match}), {@code null} to take it from the patch
+     * @throws VersionConflictException if the breed has been modified by someone else
+     */
+    @Transactional
+    public Breed patchBreed(long id, JsonNode patch, Integer version) {
+        return jsonMergePatcher.patch(id, readBreed(id), patch, version, breedRepository);
+    }
 }
@@ -0,0 +1,206 @@
+package pro.sky.telegramcatdog.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import pro.sky.telegramcatdog.exception.ImageProcessingBusyException;
+import pro.sky.telegramcatdog.exception.ImageTooLargeException;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Downscales the photos of adoption reports and makes their thumbnails.
+ * Decoding and encoding is CPU heavy, so it runs on its own fixed pool with a bounded queue:
+ * a burst of uploads waits in the queue (or is rejected with 503) instead of taking all the request threads' CPU.
+ * <p>
+ * The size is read from the image header before decoding: a picture over {@code max-pixels} is rejected with 413,
+ * a small file can declare a huge image. A large picture is decoded with subsampling, to twice {@code max-size} at most.
+ */
+@Service
+public class ImageProcessingService {
+    private final Logger logger = LoggerFactory.getLogger(ImageProcessingService.class);
+    private final int maxSize;
+    private final int thumbnailSize;
+    private final float jpegQuality;
+    private final long maxPixels;
+    private final ThreadPoolExecutor executor;
+
+    public ImageProcessingService(@Value("${adoption-reports.images.max-size:1280}") int maxSize,
+                                  @Value("${adoption-reports.images.thumbnail-size:240}") int thumbnailSize,
+                                  @Value("${adoption-reports.images.jpeg-quality:0.8}") float jpegQuality,
+                                  @Value("${adoption-reports.images.max-pixels:50000000}") long maxPixels,
+                                  @Value("${adoption-reports.images.threads:0}") int threads,
+                                  @Value("${adoption-reports.images.queue-capacity:64}") int queueCapacity) {
+        this.maxSize = maxSize;
+        this.thumbnailSize = thumbnailSize;
+        this.jpegQuality = jpegQuality;
+        this.maxPixels = maxPixels;
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "image-processing-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Renditions of an uploaded picture.
+     * @param picture   JPEG not larger than {@code max-size} on its longest side,
+     *                  or the original bytes if it is already small enough or is not a readable image
+     * @param thumbnail JPEG not larger than {@code thumbnail-size}, {@code null} if the picture is not a readable image
+     */
+    public record Renditions(byte[] picture, byte[] thumbnail) {
+    }
+
+    /**
+     * Makes the renditions on the image processing pool and waits for them.
+     * A picture the decoder fails on is stored as is, see {@link Renditions}.
+     * @throws ImageProcessingBusyException if the queue of the pool is full
+     * @throws ImageTooLargeException if the picture has more than {@code max-pixels} pixels
+     */
+    public Renditions process(byte[] picture) {
+        if (picture == null) {
+            return new Renditions(null, null);
+        }
+        Future<Renditions> result;
+        try {
+            result = executor.submit(() -> render(picture));
+        } catch (RejectedExecutionException e) {
+            throw new ImageProcessingBusyException();
+        }
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            result.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while processing image", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof ImageTooLargeException tooLarge) {
+                throw tooLarge;
+            }
+            throw new IllegalStateException("Image processing failed", e.getCause());
+        }
+    }
+
+    private Renditions render(byte[] picture) throws IOException {
+        BufferedImage image;
+        int width;
+        int height;
+        try (ImageInputStream stream = ImageIO.createImageInputStream(new ByteArrayInputStream(picture))) {
+            Iterator<ImageReader> readers = stream == null ? null : ImageIO.getImageReaders(stream);
+            if (readers == null || !readers.hasNext()) {
+                logger.debug("Picture of {} bytes is not a readable image, stored as is", picture.length);
+                return new Renditions(picture, null);
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(stream, true, true);
+                width = reader.getWidth(0);
+                height = reader.getHeight(0);
+                if ((long) width * height > maxPixels) {
+                    throw new ImageTooLargeException(width, height);
+                }
+                ImageReadParam param = reader.getDefaultReadParam();
+                // Every n-th pixel is decoded, the halving steps of scale() still get twice the target size
+                int subsampling = Math.max(1, Math.max(width, height) / (2 * maxSize));
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                image = reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        } catch (ImageTooLargeException e) {
+            throw e;
+        } catch (IOException | RuntimeException e) {
+            // Plugins fail on corrupt files with any exception, not only IOException: it is the upload, not a fault
+            logger.debug("Picture of {} bytes is not a readable image, stored as is", picture.length, e);
+            return new Renditions(picture, null);
+        }
+        byte[] thumbnail = toJpeg(scale(image, thumbnailSize));
+        if (Math.max(width, height) <= maxSize) {
+            // Small enough already, re-encoding would only lose quality
+            return new Renditions(picture, thumbnail);
+        }
+        byte[] downscaled = toJpeg(scale(image, maxSize));
+        logger.debug("Picture {}x{} of {} bytes downscaled to {} bytes, thumbnail {} bytes",
+                width, height, picture.length, downscaled.length, thumbnail.length);
+        return new Renditions(downscaled, thumbnail);
+    }
+
+    /**
+     * Fits the image into {@code size x size} keeping the aspect ratio.
+     * Large reductions are done by halving steps, a single bilinear step would skip most of the source pixels.
+     */
+    private static BufferedImage scale(BufferedImage image, int size) {
+        double ratio = Math.min(1.0, (double) size / Math.max(image.getWidth(), image.getHeight()));
+        int targetWidth = Math.max(1, (int) Math.round(image.getWidth() * ratio));
+        int targetHeight = Math.max(1, (int) Math.round(image.getHeight() * ratio));
+        BufferedImage current = image;
+        do {
+            int width = Math.max(targetWidth, current.getWidth() / 2);
+            int height = Math.max(targetHeight, current.getHeight() / 2);
+            current = draw(current, width, height);
+        } while (current.getWidth() != targetWidth || current.getHeight() != targetHeight);
+        return current;
+    }
+
+    private static BufferedImage draw(BufferedImage source, int width, int height) {
+        // JPEG has no alpha channel, transparent pixels become white
+        BufferedImage target = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = target.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(source, 0, 0, width, height, Color.WHITE, null);
+        } finally {
+            graphics.dispose();
+        }
+        return target;
+    }
+
+    private byte[] toJpeg(BufferedImage image) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream stream = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(stream);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(jpegQuality);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,94 @@
+package pro.sky.telegramcatdog.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import pro.sky.telegramcatdog.exception.InvalidPatchException;
+import pro.sky.telegramcatdog.exception.VersionConflictException;
+import pro.sky.telegramcatdog.model.Versioned;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Applies JSON Merge Patch (RFC 7386) documents to the entities.
+ * Fields present in the patch are set (null clears the field), absent fields are left as they are.
+ * Together with {@code @DynamicUpdate} on the entity only the changed columns get into the UPDATE statement.
+ */
+@Component
+public class JsonMergePatcher {
+    /** Managed by JPA, a patch can't change them. */
+    private static final List<String> READ_ONLY_FIELDS = List.of("id", "version");
+
+    private final ObjectMapper objectMapper;
+
+    public JsonMergePatcher(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * PATCH of an entity read in the current transaction: checks the version, applies the patch and flushes it.
+     * The flush makes a concurrent change fail here as {@link VersionConflictException} and not at the commit.
+     *
+     * @param version version from {@code If-Match} header, may be {@code null}
+     * @return the saved entity
+     */
+    public <T extends Versioned> T patch(long id, T entity, JsonNode patch, Integer version, JpaRepository<T, ?> repository) {
+        return patch(id, entity, patch, version, repository, patched -> {
+        });
+    }
+
+    /**
+     * Same as {@link #patch(long, Versioned, JsonNode, Integer, JpaRepository)}.
+     *
+     * @param beforeSave updates the fields derived from the patched ones
+     */
+    public <T extends Versioned> T patch(long id, T entity, JsonNode patch, Integer version, JpaRepository<T, ?> repository,
+                                         Consumer<? super T> beforeSave) {
+        checkVersion(id, entity.getVersion(), patch, version);
+        apply(entity, patch);
+        beforeSave.accept(entity);
+        try {
+            return repository.saveAndFlush(entity);
+        } catch (ObjectOptimisticLockingFailureException e) {
+            throw new VersionConflictException(id, entity.getVersion());
+        }
+    }
+
+    /**
+     * Compares the current version of the entity with the expected one: from {@code If-Match} header,
+     * otherwise from the "version" field of the patch. Nothing is checked if neither is given.
+     *
+     * @param version version from {@code If-Match} header, may be {@code null}
+     * @throws VersionConflictException if the versions differ
+     */
+    public void checkVersion(long id, int currentVersion, JsonNode patch, Integer version) {
+        Integer expectedVersion = version;
+        if (expectedVersion == null && patch != null && patch.has("version") && patch.get("version").canConvertToInt()) {
+            expectedVersion = patch.get("version").intValue();
+        }
+        if (expectedVersion != null && expectedVersion != currentVersion) {
+            throw new VersionConflictException(id, expectedVersion);
+        }
+    }
+
+    /**
+     * Applies the patch to the (managed) entity in place.
+     */
+    public <T> T apply(T target, JsonNode patch) {
+        if (patch == null || !patch.isObject()) {
+            throw new InvalidPatchException("Merge patch must be a JSON object");
+        }
+        ObjectNode fields = ((ObjectNode) patch).deepCopy();
+        fields.remove(READ_ONLY_FIELDS);
+        try {
+            return objectMapper.readerForUpdating(target).readValue(fields);
+        } catch (IOException e) {
+            throw new InvalidPatchException("Merge patch can't be applied: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package pro.sky.telegramcatdog.service;
+
+import com.pengrad.telegrambot.TelegramBot;
+import com.pengrad.telegrambot.request.SendMessage;
+import com.pengrad.telegrambot.response.SendResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import pro.sky.telegramcatdog.configuration.Bulkhead;
+import pro.sky.telegramcatdog.configuration.NativeImageHints;
+import pro.sky.telegramcatdog.model.OutboxMessage;
+import pro.sky.telegramcatdog.repository.OutboxMessageRepository;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sends the messages of the notification outbox to Telegram, at least once.
+ * <p>
+ * A batch is claimed in a short transaction: its rows are locked with {@code SKIP LOCKED} and their next attempt
+ * is moved {@code retry-delay} ahead. The messages are sent outside of the transaction and the delivered ones are deleted.
+ * If the relay fails or the application stops in between, the claimed messages are sent again after the delay.
+ * <p>
+ * A batch is sent for half of {@code retry-delay} at most: the claim must not expire while its messages are still being
+ * sent, or another instance would send them too. The messages not tried in time are released to the next batch.
+ * A message that failed {@code max-attempts} times is deleted with an error in the log, so is a message whose last
+ * claim expired unconfirmed.
+ * <p>
+ * A message to a chat that has blocked the bot is postponed by {@code blocked-chat-delay} without counting the attempt:
+ * it is sent if the user comes back with /start.
+ * <p>
+ * {@code notifications.outbox.relay.enabled=false} stops the relay, checked on every run (see {@link NativeImageHints}).
+ */
+@Service
+@Lazy(false)
+public class NotificationOutboxRelay {
+    private final Logger logger = LoggerFactory.getLogger(NotificationOutboxRelay.class);
+    private final OutboxMessageRepository outboxMessageRepository;
+    private final TelegramBot telegramBot;
+    private final TransactionTemplate transactionTemplate;
+    private final BlockedChatRegistry blockedChatRegistry;
+    private final boolean enabled;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final Duration retryDelay;
+    private final Duration blockedChatDelay;
+    private final long sendNanos;
+
+    public NotificationOutboxRelay(OutboxMessageRepository outboxMessageRepository, TelegramBot telegramBot,
+                                   TransactionTemplate transactionTemplate, BlockedChatRegistry blockedChatRegistry,
+                                   @Value("${notifications.outbox.relay.enabled:true}") boolean enabled,
+                                   @Value("${notifications.outbox.relay.batch-size:50}") int batchSize,
+                                   @Value("${notifications.outbox.relay.max-attempts:10}") int maxAttempts,
+                                   @Value("${notifications.outbox.relay.retry-delay:PT1M}") Duration retryDelay,
+                                   @Value("${notifications.outbox.relay.blocked-chat-delay:PT1H}") Duration blockedChatDelay) {
+        this.outboxMessageRepository = outboxMessageRepository;
+        this.telegramBot = telegramBot;
+        this.transactionTemplate = transactionTemplate;
+        this.blockedChatRegistry = blockedChatRegistry;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.retryDelay = retryDelay;
+        this.blockedChatDelay = blockedChatDelay;
+        this.sendNanos = retryDelay.dividedBy(2).toNanos();
+    }
+
+    @Scheduled(fixedDelayString = "${notifications.outbox.relay.interval:PT1S}")
+    public void relay() {
+        if (!enabled) {
+            return;
+        }
+        List<OutboxMessage> batch;
+        // Bot traffic: uses the connection pool of the bot
+        try (Bulkhead.Scope scope = Bulkhead.BOT.enter()) {
+            purgeExhausted();
+            boolean inTime;
+            do {
+                batch = claimBatch();
+                long deadline = System.nanoTime() + sendNanos;
+                List<Long> done = new ArrayList<>(batch.size());
+                List<Long> notTried = new ArrayList<>();
+                List<Long> postponed = new ArrayList<>();
+                for (OutboxMessage message : batch) {
+                    if (System.nanoTime() - deadline > 0) {
+                        notTried.add(message.getId());
+                    } else if (blockedChatRegistry.isBlocked(message.getChatId())) {
+                        // stored before the chat has blocked the bot
+                        postponed.add(message.getId());
+                    } else if (send(message)) {
+                        done.add(message.getId());
+                    }
+                }
+                if (!done.isEmpty()) {
+                    outboxMessageRepository.deleteAllByIdInBatch(done);
+                }
+                if (!postponed.isEmpty()) {
+                    logger.debug("{} outbox messages to blocked chats are postponed", postponed.size());
+                    outboxMessageRepository.release(postponed,
+                            new Timestamp(System.currentTimeMillis() + blockedChatDelay.toMillis()));
+                }
+                inTime = notTried.isEmpty();
+                if (!inTime) {
+                    logger.warn("Outbox batch is not sent within {} ms, {} messages are released",
+                            sendNanos / 1_000_000, notTried.size());
+                    outboxMessageRepository.release(notTried, new Timestamp(System.currentTimeMillis()));
+                }
+            } while (inTime && batch.size() == batchSize);
+        }
+    }
+
+    private void purgeExhausted() {
+        int purged = outboxMessageRepository.deleteExhausted(maxAttempts, new Timestamp(System.currentTimeMillis()));
+        if (purged > 0) {
+            logger.error("{} outbox messages are dropped, their last attempt was not confirmed", purged);
+        }
+    }
+
+    private List<OutboxMessage> claimBatch() {
+        return transactionTemplate.execute(status -> {
+            List<OutboxMessage> batch = outboxMessageRepository.lockNextBatch(batchSize, maxAttempts);
+            Timestamp retryAt = new Timestamp(System.currentTimeMillis() + retryDelay.toMillis());
+            for (OutboxMessage message : batch) {
+                message.setAttempts(message.getAttempts() + 1);
+                message.setNextAttemptAt(retryAt);
+            }
+            return batch;
+        });
+    }
+
+    /**
+     * @return {@code true} if the message doesn't need to be sent again: it is delivered or Telegram rejected it for good
+     */
+    private boolean send(OutboxMessage message) {
+        SendResponse response;
+        try {
+            response = telegramBot.execute(new SendMessage(message.getChatId(), message.getText()));
+        } catch (RuntimeException e) {
+            if (message.getAttempts() >= maxAttempts) {
+                logger.error("Outbox message id {} to chat {} is dropped after {} attempts",
+                        message.getId(), message.getChatId(), message.getAttempts(), e);
+                return true;
+            }
+            logger.warn("Outbox message id {} is not sent, attempt {}: {}", message.getId(), message.getAttempts(), e.toString());
+            return false;
+        }
+        if (response.isOk()) {
+            return true;
+        }
+        // 429 and server errors are temporary, other errors (chat not found, bot blocked) won't go away
+        boolean temporary = response.errorCode() == 429 || response.errorCode() >= 500;
+        if (temporary && message.getAttempts() >= maxAttempts) {
+            logger.error("Outbox message id {} to chat {} is dropped after {} attempts: {} {}",
+                    message.getId(), message.getChatId(), message.getAttempts(), response.errorCode(), response.description());
+            return true;
+        }
+        if (temporary) {
+            logger.warn("Outbox message id {} is not sent, attempt {}: {} {}",
+                    message.getId(), message.getAttempts(), response.errorCode(), response.description());
+            return false;
+        }
+        logger.error("Outbox message id {} to chat {} is dropped: {} {}",
+                message.getId(), message.getChatId(), response.errorCode(), response.description());
+        blockedChatRegistry.blockIfForbidden(message.getChatId(), response.errorCode());
+        return true;
+    }
+}
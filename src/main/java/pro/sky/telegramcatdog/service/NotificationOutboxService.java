@@ -0,0 +1,83 @@
+package pro.sky.telegramcatdog.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import pro.sky.telegramcatdog.event.AdopterStatusChangedEvent;
+import pro.sky.telegramcatdog.event.AdoptionReportCreatedEvent;
+import pro.sky.telegramcatdog.model.OutboxMessage;
+import pro.sky.telegramcatdog.repository.OutboxMessageRepository;
+import pro.sky.telegramcatdog.repository.VolunteerRepository;
+
+import static pro.sky.telegramcatdog.constants.Constants.*;
+
+/**
+ * Turns the changes of the data into Telegram notifications.
+ * The listeners run synchronously in the transaction of the change, so the notification is stored
+ * together with the change or not at all. Sending is done later by {@link NotificationOutboxRelay}.
+ */
+@Service
+public class NotificationOutboxService {
+    private final Logger logger = LoggerFactory.getLogger(NotificationOutboxService.class);
+    private final OutboxMessageRepository outboxMessageRepository;
+    private final VolunteerRepository volunteerRepository;
+    private final BlockedChatRegistry blockedChatRegistry;
+
+    public NotificationOutboxService(OutboxMessageRepository outboxMessageRepository, VolunteerRepository volunteerRepository,
+                                     BlockedChatRegistry blockedChatRegistry) {
+        this.outboxMessageRepository = outboxMessageRepository;
+        this.volunteerRepository = volunteerRepository;
+        this.blockedChatRegistry = blockedChatRegistry;
+    }
+
+    /**
+     * Tells the volunteer of the adopter about the new report.
+     */
+    @EventListener
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void onAdoptionReportCreated(AdoptionReportCreatedEvent event) {
+        if (event.volunteerId() == null) {
+            return;
+        }
+        volunteerRepository.findById(event.volunteerId().longValue()).ifPresent(volunteer ->
+                enqueue(volunteer.getChatId(), String.format(NEW_ADOPTION_REPORT_TEXT, event.adopterId(), event.reportId())));
+    }
+
+    /**
+     * Tells the adopter about the decision of the volunteer.
+     */
+    @EventListener
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void onAdopterStatusChanged(AdopterStatusChangedEvent event) {
+        long chatId;
+        try {
+            chatId = Long.parseLong(event.telegram());
+        } catch (NumberFormatException e) {
+            logger.warn("Adopter id {} has no valid telegram id '{}', status change is not notified",
+                    event.adopterId(), event.telegram());
+            return;
+        }
+        String text = switch (event.status()) {
+            case ON_PROBATION -> ADOPTER_ON_PROBATION_TEXT;
+            case APPROVED -> ADOPTER_APPROVED_TEXT;
+            case REJECTED -> ADOPTER_REJECTED_TEXT;
+        };
+        enqueue(chatId, text);
+    }
+
+    /**
+     * Stores the message in the outbox of the current transaction.
+     * Nothing is stored for a chat that has blocked the bot, Telegram would refuse it anyway.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void enqueue(long chatId, String text) {
+        if (blockedChatRegistry.isBlocked(chatId)) {
+            logger.debug("Chat {} has blocked the bot, notification is not stored", chatId);
+            return;
+        }
+        outboxMessageRepository.save(new OutboxMessage(chatId, text));
+    }
+}
@@ -1,7 +1,10 @@
 package pro.sky.telegramcatdog.service;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import pro.sky.telegramcatdog.exception.PetNotFoundException;
+import pro.sky.telegramcatdog.exception.VersionConflictException;
 import pro.sky.telegramcatdog.model.Pet;
 import pro.sky.telegramcatdog.repository.PetRepository;
 
@@ -9,9 +12,11 @@ import pro.sky.telegramcatdog.repository.PetRepository;
 public class PetService {
 
     private final PetRepository petRepository;
+    private final JsonMergePatcher jsonMergePatcher;
 
-    public PetService(PetRepository petRepository) {
+    public PetService(PetRepository petRepository, JsonMergePatcher jsonMergePatcher) {
         this.petRepository = petRepository;
+        this.jsonMergePatcher = jsonMergePatcher;
     }
 
     public Pet findPet(long id) {
@@ -26,10 +31,33 @@ public class PetService {
         return petRepository.save(pet);
     }
 
-    public Pet editPet(Pet pet) {
-        if (petRepository.findById(pet.getId()).orElse(null) == null) {
-            return null;
+    /**
+     * Replaces the pet with one update statement, conditional on the version when it is given.
+     * @param version version of the pet from {@code If-Match}, {@code null} for any version
+     * @return the pet as written or {@code null} if there is no pet with such id
+     * @throws VersionConflictException if the pet has been modified by someone else
+     */
+    @Transactional
+    public Pet editPet(Pet pet, Integer version) {
+        if (petRepository.updateIfVersionMatches(pet, version) == 0) {
+            if (version == null || !petRepository.existsById(pet.getId())) {
+                return null;
+            }
+            throw new VersionConflictException(pet.getId(), version);
         }
-        return petRepository.save(pet);
+        pet.setVersion(version != null ? version + 1
+                : petRepository.findVersionById(pet.getId()).orElseThrow());
+        return pet;
+    }
+
+    /**
+     * Partial update of the pet by JSON Merge Patch.
+     * Only the columns changed by the patch are written to the database.
+     * @param version expected version of the pet ({@code If-Match}), {@code null} to take it from the patch
+     * @throws VersionConflictException if the pet has been modified by someone else
+     */
+    @Transactional
+    public Pet patchPet(long id, JsonNode patch, Integer version) {
+        return jsonMergePatcher.patch(id, findPet(id), patch, version, petRepository);
     }
 }
@@ -0,0 +1,210 @@
+package pro.sky.telegramcatdog.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import pro.sky.telegramcatdog.event.VolunteerEvent;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Server-Sent Events feed of the volunteer dashboards: new adoption reports and help requests.
+ * <p>
+ * Events come from the application event bus and are fanned out to the subscribers.
+ * Each subscriber has its own bounded buffer drained by the sender pool, so a slow dashboard only delays itself.
+ * When its buffer is full the oldest events are dropped and the dashboard gets an {@code overflow} event
+ * telling it to reload the data by REST. The last events are kept to be replayed after a reconnect ({@code Last-Event-ID}).
+ */
+@Service
+@Lazy(false)
+public class VolunteerFeedService {
+    private static final String OVERFLOW_EVENT = "overflow";
+
+    private final Logger logger = LoggerFactory.getLogger(VolunteerFeedService.class);
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final AtomicLong lastEventId = new AtomicLong();
+    private final Deque<Entry> history = new ArrayDeque<>();
+    private final int bufferSize;
+    private final int historySize;
+    private final long timeoutMillis;
+    private final ExecutorService sender;
+
+    public VolunteerFeedService(@Value("${volunteer-feed.buffer-size:100}") int bufferSize,
+                                @Value("${volunteer-feed.history-size:100}") int historySize,
+                                @Value("${volunteer-feed.timeout:PT30M}") Duration timeout,
+                                @Value("${volunteer-feed.sender-threads:2}") int senderThreads) {
+        this.bufferSize = bufferSize;
+        this.historySize = historySize;
+        this.timeoutMillis = timeout.toMillis();
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.sender = Executors.newFixedThreadPool(senderThreads, runnable -> {
+            Thread thread = new Thread(runnable, "volunteer-feed-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @param volunteerId only the events of this volunteer, {@code null} for all events
+     * @param lastEventId id of the last event received before a reconnect, the later ones are sent again
+     */
+    public SseEmitter subscribe(Integer volunteerId, Long lastEventId) {
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        Subscriber subscriber = new Subscriber(emitter, volunteerId);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> subscribers.remove(subscriber));
+        emitter.onError(e -> subscribers.remove(subscriber));
+        // Under the history lock no event is missed between the replay and the subscription
+        synchronized (history) {
+            if (lastEventId != null) {
+                history.stream()
+                        .filter(entry -> entry.id() > lastEventId)
+                        .forEach(subscriber::offer);
+            }
+            subscribers.add(subscriber);
+        }
+        logger.debug("Volunteer feed subscribed (volunteerId = {}), {} subscribers", volunteerId, subscribers.size());
+        return emitter;
+    }
+
+    /**
+     * Events published in a transaction are sent after its commit, the others at once.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onEvent(VolunteerEvent event) {
+        Entry entry = new Entry(lastEventId.incrementAndGet(), event);
+        synchronized (history) {
+            if (history.size() == historySize) {
+                history.removeFirst();
+            }
+            history.addLast(entry);
+            subscribers.forEach(subscriber -> subscriber.offer(entry));
+        }
+    }
+
+    /**
+     * Keeps idle connections open through proxies and detects the closed ones.
+     */
+    @Scheduled(fixedDelayString = "${volunteer-feed.heartbeat:PT15S}")
+    public void heartbeat() {
+        subscribers.forEach(Subscriber::ping);
+    }
+
+    public int getSubscribersCount() {
+        return subscribers.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        subscribers.forEach(subscriber -> subscriber.emitter.complete());
+        sender.shutdownNow();
+    }
+
+    private record Entry(long id, VolunteerEvent event) {
+    }
+
+    private class Subscriber {
+        private final SseEmitter emitter;
+        private final Integer volunteerId;
+        private final Deque<Entry> buffer = new ArrayDeque<>();
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private int dropped;
+        private boolean ping;
+
+        Subscriber(SseEmitter emitter, Integer volunteerId) {
+            this.emitter = emitter;
+            this.volunteerId = volunteerId;
+        }
+
+        void offer(Entry entry) {
+            Integer addressee = entry.event().volunteerIdOrNull();
+            if (volunteerId != null && addressee != null && !volunteerId.equals(addressee)) {
+                return;
+            }
+            synchronized (buffer) {
+                if (buffer.size() == bufferSize) {
+                    buffer.removeFirst();
+                    dropped++;
+                }
+                buffer.addLast(entry);
+            }
+            scheduleDrain();
+        }
+
+        void ping() {
+            synchronized (buffer) {
+                ping = true;
+            }
+            scheduleDrain();
+        }
+
+        private void scheduleDrain() {
+            if (draining.compareAndSet(false, true)) {
+                sender.execute(this::drain);
+            }
+        }
+
+        /**
+         * Sends the buffered events, at most one drain of a subscriber runs at a time.
+         */
+        private void drain() {
+            while (true) {
+                Entry entry;
+                int droppedNow;
+                boolean pingNow;
+                synchronized (buffer) {
+                    entry = buffer.pollFirst();
+                    droppedNow = dropped;
+                    dropped = 0;
+                    pingNow = ping && entry == null;
+                    ping = false;
+                }
+                if (entry == null && droppedNow == 0 && !pingNow) {
+                    draining.set(false);
+                    // An event could be offered after the buffer was found empty but before the flag was reset
+                    synchronized (buffer) {
+                        if ((buffer.isEmpty() && !ping) || !draining.compareAndSet(false, true)) {
+                            return;
+                        }
+                    }
+                    continue;
+                }
+                try {
+                    if (droppedNow > 0) {
+                        emitter.send(SseEmitter.event().name(OVERFLOW_EVENT).data(droppedNow));
+                    }
+                    if (entry != null) {
+                        emitter.send(SseEmitter.event()
+                                .id(Long.toString(entry.id()))
+                                .name(entry.event().name())
+                                .data(entry.event(), MediaType.APPLICATION_JSON));
+                    } else if (pingNow) {
+                        emitter.send(SseEmitter.event().comment("ping"));
+                    }
+                } catch (IOException | IllegalStateException e) {
+                    // The dashboard has gone away
+                    subscribers.remove(this);
+                    emitter.completeWithError(e);
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -1,20 +1,25 @@
 package pro.sky.telegramcatdog.service;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.webjars.NotFoundException;
+import pro.sky.telegramcatdog.exception.VersionConflictException;
 import pro.sky.telegramcatdog.model.Volunteer;
 import pro.sky.telegramcatdog.repository.VolunteerRepository;
 
 @Service
 public class VolunteerService {
     private final VolunteerRepository volunteerRepository;
+    private final JsonMergePatcher jsonMergePatcher;
 
     private final Logger logger = LoggerFactory.getLogger(VolunteerService.class);
 
-    public VolunteerService(VolunteerRepository volunteerRepository) {
+    public VolunteerService(VolunteerRepository volunteerRepository, JsonMergePatcher jsonMergePatcher) {
         this.volunteerRepository = volunteerRepository;
+        this.jsonMergePatcher = jsonMergePatcher;
     }
 
     public Volunteer createVolunteer(Volunteer volunteer) {
@@ -26,15 +31,34 @@ public class VolunteerService {
         return volunteerRepository.findById(id).orElseThrow(() -> new NotFoundException("id not found"));
     }
 
-    public Volunteer updateVolunteer(long id, Volunteer volunteer) {
-        logger.debug("Calling method update Volunteer (Id = {})", volunteer.getId());
-        Volunteer oldVolunteer = read(id);
-        oldVolunteer.setName(volunteer.getName());
-        oldVolunteer.setChatId(volunteer.getChatId());
-        oldVolunteer.setUsername(volunteer.getUsername());
-        oldVolunteer.setPicture(volunteer.getPicture());
-        return volunteerRepository.save(oldVolunteer);
+    /**
+     * Replaces the volunteer's contacts and picture with one update statement, conditional on the version when it is given.
+     * @param version version of the volunteer from {@code If-Match}, {@code null} for any version
+     * @throws VersionConflictException if the volunteer has been modified by someone else
+     */
+    @Transactional
+    public Volunteer updateVolunteer(long id, Volunteer volunteer, Integer version) {
+        logger.debug("Calling method update Volunteer (Id = {})", id);
+        volunteer.setId(id);
+        if (volunteerRepository.updateIfVersionMatches(volunteer, version) == 0) {
+            if (version == null || !volunteerRepository.existsById(id)) {
+                throw new NotFoundException("id not found");
+            }
+            throw new VersionConflictException(id, version);
+        }
+        volunteer.setVersion(version != null ? version + 1
+                : volunteerRepository.findVersionById(id).orElseThrow());
+        return volunteer;
     }
 
-
+    /**
+     * Partial update of the volunteer by JSON Merge Patch.
+     * Only the columns changed by the patch are written to the database.
+     * @param version expected version of the volunteer ({@code If-Match}), {@code null} to take it from the patch
+     * @throws VersionConflictException if the volunteer has been modified by someone else
+     */
+    @Transactional
+    public Volunteer patchVolunteer(long id, JsonNode patch, Integer version) {
+        return jsonMergePatcher.patch(id, read(id), patch, version, volunteerRepository);
+    }
 }
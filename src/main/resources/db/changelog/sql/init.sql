@@ -112,4 +112,188 @@ CREATE TABLE IF NOT EXISTS adoption_docs
     id           SERIAL PRIMARY KEY,
     short_desc   VARCHAR,
     description  VARCHAR
-)
\ No newline at end of file
+)
+
+-- changeset alexeym75:8
+-- version columns for optimistic locking (@Version)
+ALTER TABLE pets ADD COLUMN IF NOT EXISTS version INT NOT NULL DEFAULT 0;
+ALTER TABLE volunteers ADD COLUMN IF NOT EXISTS version INT NOT NULL DEFAULT 0;
+ALTER TABLE adoption_reports ADD COLUMN IF NOT EXISTS version INT NOT NULL DEFAULT 0;
+ALTER TABLE branch_params ADD COLUMN IF NOT EXISTS version INT NOT NULL DEFAULT 0;
+ALTER TABLE breeds ADD COLUMN IF NOT EXISTS version INT NOT NULL DEFAULT 0;
+ALTER TABLE adoption_docs ADD COLUMN IF NOT EXISTS version INT NOT NULL DEFAULT 0;
+
+-- changeset alexeym75:9
+-- guests.chat_id is the bot's lookup key (findByChatId expects one row): keep the oldest guest of each chat
+DELETE FROM guests g USING guests d WHERE g.chat_id = d.chat_id AND g.id > d.id;
+CREATE UNIQUE INDEX IF NOT EXISTS guests_chat_id_uidx ON guests (chat_id) INCLUDE (id, username, last_visit, last_menu);
+-- probation monitor: latest reports of an adopter / a pet, reports of a period
+CREATE INDEX IF NOT EXISTS adoption_reports_adopter_id_report_date_idx ON adoption_reports (adopter_id, report_date DESC);
+CREATE INDEX IF NOT EXISTS adoption_reports_pet_id_report_date_idx ON adoption_reports (pet_id, report_date DESC);
+CREATE INDEX IF NOT EXISTS adoption_reports_report_date_idx ON adoption_reports (report_date);
+-- lookups by foreign keys
+CREATE INDEX IF NOT EXISTS pets_adopter_id_idx ON pets (adopter_id);
+CREATE INDEX IF NOT EXISTS pets_breed_id_idx ON pets (breed_id);
+CREATE INDEX IF NOT EXISTS adopters_volunteer_id_status_idx ON adopters (volunteer_id, status);
+
+-- changeset alexeym75:10 dbms:postgresql splitStatements:false
+-- adoption_reports is partitioned by month of report_date (see AdoptionReportPartitionService)
+UPDATE adoption_reports SET report_date = now() WHERE report_date IS NULL;
+ALTER TABLE adoption_reports RENAME TO adoption_reports_old;
+ALTER SEQUENCE adoption_reports_id_seq OWNED BY NONE;
+DROP INDEX IF EXISTS adoption_reports_adopter_id_report_date_idx;
+DROP INDEX IF EXISTS adoption_reports_pet_id_report_date_idx;
+DROP INDEX IF EXISTS adoption_reports_report_date_idx;
+
+CREATE TABLE adoption_reports
+(
+    id              BIGINT    NOT NULL DEFAULT nextval('adoption_reports_id_seq'),
+    adopter_id      BIGINT,
+    report_date     TIMESTAMP NOT NULL DEFAULT now(),
+    pet_id          INT,
+    picture         BYTEA,
+    diet            VARCHAR,
+    wellbeing       VARCHAR,
+    behavior_change VARCHAR,
+    version         INT       NOT NULL DEFAULT 0,
+    PRIMARY KEY (id, report_date) -- the partition key must be part of the primary key
+) PARTITION BY RANGE (report_date);
+ALTER SEQUENCE adoption_reports_id_seq OWNED BY adoption_reports.id;
+-- rows outside of the monthly partitions, normally empty
+CREATE TABLE IF NOT EXISTS adoption_reports_default PARTITION OF adoption_reports DEFAULT;
+
+CREATE OR REPLACE FUNCTION create_adoption_reports_partition(month_start DATE) RETURNS VOID AS $$
+BEGIN
+    EXECUTE format('CREATE TABLE IF NOT EXISTS %I PARTITION OF adoption_reports FOR VALUES FROM (%L) TO (%L)',
+                   'adoption_reports_' || to_char(month_start, 'YYYY_MM'),
+                   date_trunc('month', month_start),
+                   date_trunc('month', month_start) + INTERVAL '1 month');
+END;
+$$ LANGUAGE plpgsql;
+
+DO $$
+DECLARE
+    month_start DATE := date_trunc('month', COALESCE((SELECT min(report_date) FROM adoption_reports_old), now()));
+BEGIN
+    WHILE month_start <= date_trunc('month', now() + INTERVAL '2 months') LOOP
+        PERFORM create_adoption_reports_partition(month_start);
+        month_start := month_start + INTERVAL '1 month';
+    END LOOP;
+END $$;
+
+INSERT INTO adoption_reports (id, adopter_id, report_date, pet_id, picture, diet, wellbeing, behavior_change, version)
+SELECT id, adopter_id, report_date, pet_id, picture, diet, wellbeing, behavior_change, version
+FROM adoption_reports_old;
+DROP TABLE adoption_reports_old;
+
+CREATE INDEX IF NOT EXISTS adoption_reports_adopter_id_report_date_idx ON adoption_reports (adopter_id, report_date DESC);
+CREATE INDEX IF NOT EXISTS adoption_reports_pet_id_report_date_idx ON adoption_reports (pet_id, report_date DESC);
+CREATE INDEX IF NOT EXISTS adoption_reports_report_date_idx ON adoption_reports (report_date);
+
+-- changeset alexeym75:11
+ALTER TABLE adoption_reports ADD COLUMN IF NOT EXISTS thumbnail BYTEA;
+
+-- changeset alexeym75:12
+ALTER TABLE adoption_reports ADD COLUMN IF NOT EXISTS claimed_by BIGINT;
+ALTER TABLE adoption_reports ADD COLUMN IF NOT EXISTS claimed_at TIMESTAMP;
+ALTER TABLE adoption_reports ADD COLUMN IF NOT EXISTS reviewed_by BIGINT;
+ALTER TABLE adoption_reports ADD COLUMN IF NOT EXISTS reviewed_at TIMESTAMP;
+-- review queue: only unreviewed reports are indexed, in the keyset order (report_date, id)
+CREATE INDEX IF NOT EXISTS adoption_reports_review_queue_idx ON adoption_reports (report_date, id) WHERE reviewed_at IS NULL;
+
+-- changeset alexeym75:13
+CREATE TABLE IF NOT EXISTS notification_outbox
+(
+    id              BIGSERIAL PRIMARY KEY,
+    chat_id         BIGINT    NOT NULL,
+    text            VARCHAR   NOT NULL,
+    created_at      TIMESTAMP NOT NULL DEFAULT now(),
+    attempts        INT       NOT NULL DEFAULT 0,
+    next_attempt_at TIMESTAMP NOT NULL DEFAULT now()
+);
+CREATE INDEX IF NOT EXISTS notification_outbox_next_attempt_at_idx ON notification_outbox (next_attempt_at, id);
+
+-- changeset alexeym75:14
+CREATE TABLE IF NOT EXISTS bot_state
+(
+    name        VARCHAR PRIMARY KEY,
+    state_value BIGINT NOT NULL,
+    updated_at  TIMESTAMP
+);
+
+-- changeset alexeym75:15
+-- updates handed from the polling leader to the workers, see UpdateQueueWorker
+CREATE TABLE IF NOT EXISTS update_queue
+(
+    id           BIGSERIAL PRIMARY KEY,
+    partition_no INT       NOT NULL,
+    chat_id      BIGINT    NOT NULL,
+    update_id    BIGINT    NOT NULL UNIQUE,
+    payload      VARCHAR   NOT NULL,
+    created_at   TIMESTAMP NOT NULL DEFAULT now(),
+    processed_at TIMESTAMP
+);
+-- pending updates of a partition in the order of arrival
+CREATE INDEX IF NOT EXISTS update_queue_partition_no_idx ON update_queue (partition_no, id) WHERE processed_at IS NULL;
+CREATE INDEX IF NOT EXISTS update_queue_processed_at_idx ON update_queue (processed_at);
+
+-- changeset alexeym75:16
+-- chats that returned 403 to the bot, cleared by /start, see BlockedChatRegistry
+CREATE TABLE IF NOT EXISTS blocked_chats
+(
+    chat_id    BIGINT PRIMARY KEY,
+    blocked_at TIMESTAMP NOT NULL DEFAULT now()
+);
+
+-- changeset alexeym75:17
+-- review queue of a volunteer: the unreviewed reports of each of the volunteer's adopters in the keyset order,
+-- the index on (report_date, id) had to walk the unreviewed reports of all the volunteers
+DROP INDEX IF EXISTS adoption_reports_review_queue_idx;
+CREATE INDEX IF NOT EXISTS adoption_reports_review_queue_idx ON adoption_reports (adopter_id, report_date, id) WHERE reviewed_at IS NULL;
+
+-- changeset alexeym75:18
+-- a queued update whose handler throws is retried, after max-attempts it is dead-lettered and kept for inspection
+ALTER TABLE update_queue ADD COLUMN IF NOT EXISTS attempts INT NOT NULL DEFAULT 0;
+ALTER TABLE update_queue ADD COLUMN IF NOT EXISTS dead_lettered_at TIMESTAMP;
+DROP INDEX IF EXISTS update_queue_partition_no_idx;
+CREATE INDEX IF NOT EXISTS update_queue_partition_no_idx ON update_queue (partition_no, id) WHERE processed_at IS NULL AND dead_lettered_at IS NULL;
+
+-- changeset alexeym75:19
+-- priority lane of a queued update (UpdateLane ordinal, the urgent first), a partition is drained lane by lane
+ALTER TABLE update_queue ADD COLUMN IF NOT EXISTS lane INT NOT NULL DEFAULT 2;
+DROP INDEX IF EXISTS update_queue_partition_no_idx;
+CREATE INDEX IF NOT EXISTS update_queue_partition_no_idx ON update_queue (partition_no, lane, id) WHERE processed_at IS NULL AND dead_lettered_at IS NULL;
+
+-- changeset alexeym75:20 dbms:postgresql splitStatements:false
+-- review queue and claims of a volunteer: the volunteer of the adopter is copied to the report, so that one index range
+-- in the keyset order serves them; with the index on (adopter_id, ...) the reports of all the adopters had to be sorted
+ALTER TABLE adoption_reports ADD COLUMN IF NOT EXISTS volunteer_id INT;
+UPDATE adoption_reports r SET volunteer_id = a.volunteer_id FROM adopters a WHERE a.id = r.adopter_id;
+DROP INDEX IF EXISTS adoption_reports_review_queue_idx;
+CREATE INDEX IF NOT EXISTS adoption_reports_review_queue_idx ON adoption_reports (volunteer_id, report_date, id) WHERE reviewed_at IS NULL;
+
+CREATE OR REPLACE FUNCTION adoption_reports_set_volunteer() RETURNS TRIGGER AS $$
+BEGIN
+    NEW.volunteer_id := (SELECT volunteer_id FROM adopters WHERE id = NEW.adopter_id);
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER adoption_reports_volunteer_trg BEFORE INSERT OR UPDATE OF adopter_id ON adoption_reports
+    FOR EACH ROW EXECUTE FUNCTION adoption_reports_set_volunteer();
+
+-- an adopter given to another volunteer takes the unreviewed reports along
+CREATE OR REPLACE FUNCTION adopters_move_reports() RETURNS TRIGGER AS $$
+BEGIN
+    UPDATE adoption_reports SET volunteer_id = NEW.volunteer_id WHERE adopter_id = NEW.id AND reviewed_at IS NULL;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER adopters_volunteer_trg AFTER UPDATE OF volunteer_id ON adopters
+    FOR EACH ROW WHEN (OLD.volunteer_id IS DISTINCT FROM NEW.volunteer_id) EXECUTE FUNCTION adopters_move_reports();
+
+-- changeset alexeym75:21
+-- a partition is drained in the order of arrival again, so that the updates of a chat are not reordered by their lanes
+DROP INDEX IF EXISTS update_queue_partition_no_idx;
+CREATE INDEX IF NOT EXISTS update_queue_partition_no_idx ON update_queue (partition_no, id) WHERE processed_at IS NULL AND dead_lettered_at IS NULL;
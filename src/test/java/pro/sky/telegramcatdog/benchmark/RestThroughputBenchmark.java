@@ -0,0 +1,272 @@
+package pro.sky.telegramcatdog.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.pengrad.telegrambot.TelegramBot;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.ActiveProfiles;
+import pro.sky.telegramcatdog.constants.Color;
+import pro.sky.telegramcatdog.constants.PetType;
+import pro.sky.telegramcatdog.constants.Sex;
+import pro.sky.telegramcatdog.model.AdoptionReport;
+import pro.sky.telegramcatdog.model.Pet;
+import pro.sky.telegramcatdog.repository.AdoptionReportRepository;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static pro.sky.telegramcatdog.constants.Constants.*;
+
+/**
+ * Throughput and latency of the /pet-shelter endpoints against the embedded H2 database.
+ * Excluded from {@code ./gradlew test}, run it with {@code ./gradlew restBenchmark}.
+ * Results are written to {@code build/reports/rest-benchmark/results.json}.
+ * Settings (system properties): {@code benchmark.threads} (8), {@code benchmark.requests} per scenario (2000),
+ * {@code benchmark.imageWidth} x {@code benchmark.imageHeight} pixels of the report picture (2592 x 1944, a 5 MP photo).
+ * The reports created by a scenario are deleted as it goes, at most {@code MAX_CREATED_REPORTS} are kept in the database.
+ */
+@Tag("benchmark")
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+class RestThroughputBenchmark {
+    private static final int PETS = 100;
+    private static final int MAX_CREATED_REPORTS = 50;
+
+    private final int threads = Integer.getInteger("benchmark.threads", 8);
+    private final int requests = Integer.getInteger("benchmark.requests", 2000);
+    private final int imageWidth = Integer.getInteger("benchmark.imageWidth", 2592);
+    private final int imageHeight = Integer.getInteger("benchmark.imageHeight", 1944);
+    private final List<Map<String, Object>> results = new ArrayList<>();
+    private final List<Long> petIds = new ArrayList<>();
+    private final List<Long> reportIds = new ArrayList<>();
+    private final Queue<Long> createdReportIds = new ConcurrentLinkedQueue<>();
+
+    @LocalServerPort
+    private int port;
+
+    @MockBean
+    private TelegramBot telegramBot;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private AdoptionReportRepository adoptionReportRepository;
+
+    @BeforeAll
+    void createData() {
+        for (int i = 0; i < PETS; i++) {
+            Pet pet = restTemplate.postForObject(url(PET_URL),
+                    new Pet(0, "Pet " + i, PetType.DOG, Color.BLACK, Sex.MALE), Pet.class);
+            petIds.add(pet.getId());
+            AdoptionReport report = restTemplate.postForObject(url(ADOPTION_REPORT_URL),
+                    new AdoptionReport(0L, null, "diet " + i, "wellbeing", "none"), AdoptionReport.class);
+            reportIds.add(report.getId());
+        }
+    }
+
+    @AfterEach
+    void deleteCreatedReports() {
+        deleteCreatedReports(0);
+    }
+
+    @AfterAll
+    void writeResults() throws IOException {
+        File file = new File("build/reports/rest-benchmark/results.json");
+        file.getParentFile().mkdirs();
+        Map<String, Object> document = new LinkedHashMap<>();
+        document.put("version", System.getProperty("benchmark.version", "dev"));
+        document.put("timestamp", Instant.now().toString());
+        document.put("threads", threads);
+        document.put("scenarios", results);
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(file, document);
+    }
+
+    @Test
+    void concurrentReads() throws Exception {
+        run("concurrent-reads", () -> restTemplate.getForEntity(url(PET_URL) + '/' + randomId(petIds), Pet.class)
+                .getStatusCode());
+    }
+
+    @Test
+    void largeImageReports() throws Exception {
+        byte[] picture = photo(imageWidth, imageHeight);
+        run("large-image-reports", () -> createReport(picture));
+    }
+
+    /** 80% reads of pets and reports, 20% new reports. */
+    @Test
+    void mixedReadWrite() throws Exception {
+        run("mixed-read-write", () -> {
+            int dice = ThreadLocalRandom.current().nextInt(10);
+            if (dice < 4) {
+                return restTemplate.getForEntity(url(PET_URL) + '/' + randomId(petIds), Pet.class).getStatusCode();
+            } else if (dice < 8) {
+                return restTemplate.getForEntity(url(ADOPTION_REPORT_URL) + '/' + randomId(reportIds),
+                        AdoptionReport.class).getStatusCode();
+            }
+            return createReport(null);
+        });
+    }
+
+    private HttpStatusCode createReport(byte[] picture) {
+        ResponseEntity<AdoptionReport> response = restTemplate.postForEntity(url(ADOPTION_REPORT_URL),
+                new AdoptionReport(0L, picture, "diet", "wellbeing", "none"), AdoptionReport.class);
+        if (response.getBody() != null) {
+            createdReportIds.add(response.getBody().getId());
+        }
+        return response.getStatusCode();
+    }
+
+    /**
+     * Deletes the oldest created reports until at most {@code keep} are left.
+     */
+    private void deleteCreatedReports(int keep) {
+        List<Long> ids = new ArrayList<>();
+        while (createdReportIds.size() > keep) {
+            Long id = createdReportIds.poll();
+            if (id == null) {
+                break;
+            }
+            ids.add(id);
+        }
+        if (!ids.isEmpty()) {
+            adoptionReportRepository.deleteAllByIdInBatch(ids);
+        }
+    }
+
+    /**
+     * A JPEG photo-like picture: smooth gradients with sensor noise, so it is compressed like a camera shot.
+     */
+    private static byte[] photo(int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int noise = random.nextInt(-12, 13);
+                int r = clamp(255 * x / width + noise);
+                int g = clamp(255 * y / height + noise);
+                int b = clamp(128 + noise);
+                image.setRGB(x, y, r << 16 | g << 8 | b);
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpeg", out);
+        return out.toByteArray();
+    }
+
+    private static int clamp(int value) {
+        return Math.max(0, Math.min(255, value));
+    }
+
+    private void run(String scenario, Supplier<HttpStatusCode> call) throws Exception {
+        // Warm up the JIT and the connection pool, the numbers are not recorded
+        execute(call, Math.max(threads, requests / 10));
+
+        AtomicInteger errors = new AtomicInteger();
+        long startedAt = System.nanoTime();
+        long[] latencies = execute(() -> {
+            HttpStatusCode status = call.get();
+            if (!status.is2xxSuccessful()) {
+                errors.incrementAndGet();
+            }
+            return status;
+        }, requests);
+        double elapsedSeconds = (System.nanoTime() - startedAt) / 1e9;
+
+        Arrays.sort(latencies);
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("scenario", scenario);
+        result.put("requests", requests);
+        result.put("errors", errors.get());
+        result.put("throughputPerSecond", round(requests / elapsedSeconds));
+        result.put("p50Millis", percentile(latencies, 50));
+        result.put("p95Millis", percentile(latencies, 95));
+        result.put("p99Millis", percentile(latencies, 99));
+        result.put("maxMillis", percentile(latencies, 100));
+        results.add(result);
+
+        Assertions.assertThat(errors.get()).isZero();
+    }
+
+    /**
+     * Runs the call {@code count} times on {@code threads} threads.
+     *
+     * @return latency of each call in nanoseconds
+     */
+    private long[] execute(Supplier<HttpStatusCode> call, int count) throws Exception {
+        long[] latencies = new long[count];
+        AtomicInteger next = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                workers.add(executor.submit(() -> {
+                    for (int i = next.getAndIncrement(); i < count; i = next.getAndIncrement()) {
+                        long startedAt = System.nanoTime();
+                        call.get();
+                        latencies[i] = System.nanoTime() - startedAt;
+                        // the rows of the bounded window are deleted outside the measured call
+                        if (createdReportIds.size() > MAX_CREATED_REPORTS) {
+                            deleteCreatedReports(MAX_CREATED_REPORTS);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        return latencies;
+    }
+
+    private static double percentile(long[] sorted, double percentile) {
+        int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+        return round(sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1_000_000.0);
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+
+    private static long randomId(List<Long> ids) {
+        return ids.get(ThreadLocalRandom.current().nextInt(ids.size()));
+    }
+
+    private String url(String path) {
+        return LOCALHOST_URL + port + path;
+    }
+}
@@ -0,0 +1,170 @@
+package pro.sky.telegramcatdog.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Time from the JVM start to the started application, the way it runs in production: the application jar,
+ * PostgreSQL (Testcontainers) with the schema updated by Liquibase, the real Telegram client pointed to a closed port.
+ * Scenarios: default settings, the fast-startup profile, the fast-startup profile with the AOT-processed context,
+ * and the same with an AppCDS archive trained by the first run.
+ * Each run is a new JVM, so the numbers include class loading; the first run of a scenario is not recorded,
+ * it warms up the disk cache (and applies the changelog to the new database).
+ * <p>
+ * Excluded from {@code ./gradlew test}, run it with {@code ./gradlew restBenchmark}; skipped when Docker is not available.
+ * Results are written to {@code build/reports/startup-benchmark/results.json}.
+ * Settings (system properties): {@code benchmark.startupRuns} per scenario (5),
+ * {@code benchmark.startupJvmArgs} extra JVM options separated by spaces,
+ * {@code benchmark.appClasspath} the jars of the application and of its AOT classes, set by the Gradle task;
+ * without it the test class path is used and the AOT and CDS scenarios are skipped.
+ */
+@Tag("benchmark")
+@Testcontainers(disabledWithoutDocker = true)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class StartupTimeBenchmark {
+    private static final String FAST_STARTUP = "fast-startup";
+    // Spring Boot's "Started TelegramcatdogApplication in 2.1 seconds (process running for 2.6)"
+    private static final Pattern STARTED = Pattern.compile("process running for (\\d+[.,]\\d+)");
+    private static final Path CDS_ARCHIVE = Path.of("build/startup-benchmark/app.jsa");
+
+    @Container
+    private static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:15-alpine");
+
+    private final int runs = Integer.getInteger("benchmark.startupRuns", 5);
+    private final String jvmArgs = System.getProperty("benchmark.startupJvmArgs", "");
+    private final String appClasspath = System.getProperty("benchmark.appClasspath");
+    private final List<Map<String, Object>> results = new ArrayList<>();
+
+    @AfterAll
+    void writeResults() throws IOException {
+        File file = new File("build/reports/startup-benchmark/results.json");
+        file.getParentFile().mkdirs();
+        Map<String, Object> document = new LinkedHashMap<>();
+        document.put("version", System.getProperty("benchmark.version", "dev"));
+        document.put("timestamp", Instant.now().toString());
+        document.put("jvmArgs", jvmArgs);
+        document.put("scenarios", results);
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(file, document);
+    }
+
+    @Test
+    void defaultStartup() throws Exception {
+        run("default", "default", List.of(), List.of());
+    }
+
+    @Test
+    void fastStartup() throws Exception {
+        run("fast-startup", FAST_STARTUP, List.of(), List.of());
+    }
+
+    @Test
+    void aotStartup() throws Exception {
+        assumeApplicationJars();
+        // The AOT classes are generated with the fast-startup profile, see processAot
+        run("aot", FAST_STARTUP, List.of("-Dspring.aot.enabled=true"), List.of("-Dspring.aot.enabled=true"));
+    }
+
+    @Test
+    void aotCdsStartup() throws Exception {
+        assumeApplicationJars();
+        Files.createDirectories(CDS_ARCHIVE.getParent());
+        Files.deleteIfExists(CDS_ARCHIVE);
+        // The warm-up run dumps the loaded classes, the measured runs map them
+        run("aot-cds", FAST_STARTUP,
+                List.of("-Dspring.aot.enabled=true", "-XX:ArchiveClassesAtExit=" + CDS_ARCHIVE),
+                List.of("-Dspring.aot.enabled=true", "-XX:SharedArchiveFile=" + CDS_ARCHIVE, "-Xshare:auto"));
+    }
+
+    private void assumeApplicationJars() {
+        // CDS accepts only jars on the class path, the AOT classes are not on the test class path
+        Assumptions.assumeTrue(appClasspath != null, "benchmark.appClasspath is not set");
+    }
+
+    private void run(String scenario, String profiles, List<String> warmUpJvmArgs, List<String> scenarioJvmArgs)
+            throws Exception {
+        startApplication(profiles, warmUpJvmArgs);
+
+        long[] millis = new long[runs];
+        for (int i = 0; i < runs; i++) {
+            millis[i] = startApplication(profiles, scenarioJvmArgs);
+        }
+        Arrays.sort(millis);
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("scenario", scenario);
+        result.put("profiles", profiles);
+        result.put("jvmArgs", String.join(" ", scenarioJvmArgs));
+        result.put("runs", runs);
+        result.put("minMillis", millis[0]);
+        result.put("medianMillis", millis[runs / 2]);
+        result.put("maxMillis", millis[runs - 1]);
+        results.add(result);
+    }
+
+    /**
+     * Starts the application, which exits when it is ready ({@code startup.exit-on-ready}).
+     *
+     * @return milliseconds from the JVM start to the started application, as logged by Spring Boot
+     */
+    private long startApplication(String profiles, List<String> scenarioJvmArgs) throws Exception {
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(scenarioJvmArgs);
+        if (!jvmArgs.isBlank()) {
+            command.addAll(Arrays.asList(jvmArgs.trim().split("\\s+")));
+        }
+        command.add("-cp");
+        command.add(appClasspath != null ? appClasspath : System.getProperty("java.class.path"));
+        command.add("pro.sky.telegramcatdog.TelegramcatdogApplication");
+        command.add("--spring.profiles.active=" + profiles);
+        command.add("--spring.datasource.url=" + POSTGRES.getJdbcUrl());
+        command.add("--spring.datasource.username=" + POSTGRES.getUsername());
+        command.add("--spring.datasource.password=" + POSTGRES.getPassword());
+        command.add("--server.port=0");
+        command.add("--startup.exit-on-ready=true");
+        // The client is created as in production, its calls fail at once
+        command.add("--telegram.bot.token=0:startup-benchmark");
+        command.add("--telegram.bot.api-url=http://127.0.0.1:9/bot");
+        command.add("--telegram.bot.outbound-spool.path=build/startup-benchmark/outbound-spool.jsonl");
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+
+        Long startupMillis = null;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Matcher matcher = STARTED.matcher(line);
+                if (matcher.find()) {
+                    startupMillis = Math.round(Double.parseDouble(matcher.group(1).replace(',', '.')) * 1000);
+                }
+            }
+        }
+        Assertions.assertThat(process.waitFor(2, TimeUnit.MINUTES)).isTrue();
+        Assertions.assertThat(startupMillis).as("startup time of %s %s", profiles, scenarioJvmArgs).isNotNull();
+        return startupMillis;
+    }
+}
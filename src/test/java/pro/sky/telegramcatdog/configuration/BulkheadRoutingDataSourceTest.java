@@ -0,0 +1,57 @@
+package pro.sky.telegramcatdog.configuration;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import static org.mockito.Mockito.lenient;
+
+@ExtendWith(MockitoExtension.class)
+public class BulkheadRoutingDataSourceTest {
+
+    @Mock
+    private DataSource botDataSource;
+
+    @Mock
+    private DataSource restDataSource;
+
+    @Mock
+    private Connection botConnection;
+
+    @Mock
+    private Connection restConnection;
+
+    private BulkheadRoutingDataSource dataSource;
+
+    @BeforeEach
+    public void setUp() throws SQLException {
+        lenient().when(botDataSource.getConnection()).thenReturn(botConnection);
+        lenient().when(restDataSource.getConnection()).thenReturn(restConnection);
+        dataSource = new BulkheadRoutingDataSource(botDataSource, restDataSource);
+    }
+
+    @Test
+    public void unmarkedThreadUsesRestPoolTest() throws SQLException {
+        Assertions.assertThat(dataSource.getConnection()).isSameAs(restConnection);
+    }
+
+    @Test
+    public void botScopeUsesBotPoolTest() throws SQLException {
+        try (Bulkhead.Scope scope = Bulkhead.BOT.enter()) {
+            Assertions.assertThat(dataSource.getConnection()).isSameAs(botConnection);
+            try (Bulkhead.Scope inner = Bulkhead.REST.enter()) {
+                Assertions.assertThat(dataSource.getConnection()).isSameAs(restConnection);
+            }
+            Assertions.assertThat(dataSource.getConnection()).isSameAs(botConnection);
+        }
+        Assertions.assertThat(dataSource.getConnection()).isSameAs(restConnection);
+        Assertions.assertThat(Bulkhead.current()).isEqualTo(Bulkhead.REST);
+    }
+}
@@ -0,0 +1,66 @@
+package pro.sky.telegramcatdog.controller;
+
+import com.pengrad.telegrambot.TelegramBot;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.ActiveProfiles;
+import pro.sky.telegramcatdog.constants.AdopterStatus;
+import pro.sky.telegramcatdog.model.Adopter;
+import pro.sky.telegramcatdog.model.OutboxMessage;
+import pro.sky.telegramcatdog.repository.AdopterRepository;
+import pro.sky.telegramcatdog.repository.OutboxMessageRepository;
+
+import static pro.sky.telegramcatdog.constants.Constants.*;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+class AdopterControllerTest {
+
+    @LocalServerPort
+    private int port;
+
+    @MockBean
+    private TelegramBot telegramBot;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private AdopterRepository adopterRepository;
+
+    @Autowired
+    private OutboxMessageRepository outboxMessageRepository;
+
+    @Test
+    void changeStatusNotifiesAdopter() {
+        long adopterChatId = 555000111L;
+        Adopter adopter = adopterRepository.save(
+                new Adopter("Anna", "Ivanova", "5678", 25, "1", "2", Long.toString(adopterChatId), 1));
+
+        ResponseEntity<Adopter> response = changeStatus(adopter.getId(), AdopterStatus.APPROVED);
+        Assertions.assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        Assertions.assertThat(response.getBody().getStatus()).isEqualTo(AdopterStatus.APPROVED);
+
+        // The same status again is not notified
+        changeStatus(adopter.getId(), AdopterStatus.APPROVED);
+
+        Assertions.assertThat(outboxMessageRepository.findAllByChatId(adopterChatId))
+                .extracting(OutboxMessage::getText)
+                .containsExactly(ADOPTER_APPROVED_TEXT);
+    }
+
+    private ResponseEntity<Adopter> changeStatus(long id, AdopterStatus status) {
+        return restTemplate.exchange(
+                LOCALHOST_URL + port + ADOPTER_URL + '/' + id + "/status?status=" + status,
+                HttpMethod.PUT, HttpEntity.EMPTY, Adopter.class);
+    }
+}
@@ -2,6 +2,7 @@ package pro.sky.telegramcatdog.controller;
 
 import com.pengrad.telegrambot.TelegramBot;
 import org.assertj.core.api.Assertions;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
@@ -9,20 +10,57 @@ import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.boot.test.web.client.TestRestTemplate;
 import org.springframework.boot.test.web.server.LocalServerPort;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.test.context.ActiveProfiles;
+import pro.sky.telegramcatdog.model.Adopter;
 import pro.sky.telegramcatdog.model.AdoptionReport;
+import pro.sky.telegramcatdog.model.OutboxMessage;
 import pro.sky.telegramcatdog.model.Volunteer;
+import pro.sky.telegramcatdog.repository.AdopterRepository;
+import pro.sky.telegramcatdog.repository.OutboxMessageRepository;
+import pro.sky.telegramcatdog.repository.VolunteerRepository;
 
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.zip.CRC32;
 
 import static pro.sky.telegramcatdog.constants.Constants.*;
 
-@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties =
+        "spring.jpa.properties.hibernate.session_factory.statement_inspector=" +
+                "pro.sky.telegramcatdog.controller.AdoptionReportControllerTest$UpdateStatements")
 @ActiveProfiles("test")
 public class AdoptionReportControllerTest {
 
+    /**
+     * Records the UPDATE statements of adoption_reports sent by Hibernate.
+     */
+    public static class UpdateStatements implements StatementInspector {
+        static final List<String> STATEMENTS = new CopyOnWriteArrayList<>();
+
+        @Override
+        public String inspect(String sql) {
+            if (sql.toLowerCase().startsWith("update adoption_reports")) {
+                STATEMENTS.add(sql.toLowerCase());
+            }
+            return sql;
+        }
+    }
+
     @LocalServerPort
     private int port;
 
@@ -32,6 +70,15 @@ public class AdoptionReportControllerTest {
     @Autowired
     private TestRestTemplate restTemplate;
 
+    @Autowired
+    private AdopterRepository adopterRepository;
+
+    @Autowired
+    private VolunteerRepository volunteerRepository;
+
+    @Autowired
+    private OutboxMessageRepository outboxMessageRepository;
+
     @Test
     void createAdoptionReportTest() {
         AdoptionReport adoptionReport = new AdoptionReport(1l, null, "1", "1", "1");
@@ -79,6 +126,44 @@ public class AdoptionReportControllerTest {
         Assertions.assertThat(response.getBody().getBehaviorChange()).isEqualTo(newBehaviorChange);
     }
 
+    @Test
+    void patchAdoptionReportTest() throws IOException, InterruptedException {
+        BufferedImage image = new BufferedImage(640, 480, BufferedImage.TYPE_INT_RGB);
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", png);
+        AdoptionReport adoptionReport = new AdoptionReport(1l, png.toByteArray(), "1", "1", "1");
+        ResponseEntity<AdoptionReport> responseCreated = getCreateAdoptionReportResponse(adoptionReport);
+        assertCreatedAdoptionReport(adoptionReport, responseCreated);
+        AdoptionReport createdAdoptionReport = responseCreated.getBody();
+        String url = LOCALHOST_URL + port + ADOPTION_REPORT_URL + '/' + createdAdoptionReport.getId();
+        byte[] picture = restTemplate.getForEntity(url + "/picture", byte[].class).getBody();
+        UpdateStatements.STATEMENTS.clear();
+
+        // Change the diet only (RestTemplate's default request factory does not support PATCH)
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                .header("Content-Type", MERGE_PATCH_JSON_VALUE)
+                .header("If-Match", "\"" + createdAdoptionReport.getVersion() + "\"")
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"diet\": \"2\"}"))
+                .build();
+        HttpResponse<String> patchResponse = HttpClient.newHttpClient().send(request, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertThat(patchResponse.statusCode()).isEqualTo(HttpStatus.OK.value());
+
+        // @DynamicUpdate: only the changed column and the version are written, the picture is not sent again
+        Assertions.assertThat(UpdateStatements.STATEMENTS).singleElement().satisfies(sql -> Assertions.assertThat(sql)
+                .contains("diet", "version")
+                .doesNotContain("picture", "thumbnail", "wellbeing", "report_date"));
+
+        // The other fields and the picture are kept
+        ResponseEntity<AdoptionReport> response = restTemplate.getForEntity(url, AdoptionReport.class);
+        Assertions.assertThat(response.getBody()).isNotNull();
+        Assertions.assertThat(response.getBody().getDiet()).isEqualTo("2");
+        Assertions.assertThat(response.getBody().getWellBeing()).isEqualTo("1");
+        Assertions.assertThat(response.getBody().getVersion()).isEqualTo(createdAdoptionReport.getVersion() + 1);
+        Assertions.assertThat(restTemplate.getForEntity(url + "/picture", byte[].class).getBody()).isEqualTo(picture);
+        Assertions.assertThat(restTemplate.getForEntity(url + "/thumbnail", byte[].class).getStatusCode())
+                .isEqualTo(HttpStatus.OK);
+    }
+
     @Test
     void findAdoptionReportTest() {
         // Create new AdoptionReport and check that it was created OK
@@ -95,10 +180,147 @@ public class AdoptionReportControllerTest {
         // Check that the created and selected by id AdoptionReports are the same
         Assertions.assertThat(response.getBody()).isEqualTo(createdAdoptionReport);
         Assertions.assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+
+        // With the report date the report is looked for only in the partitions around it
+        ResponseEntity<AdoptionReport> byDate = restTemplate.getForEntity(
+                LOCALHOST_URL + port + ADOPTION_REPORT_URL + '/' + createdAdoptionReport.getId() + "?reportDate={reportDate}",
+                AdoptionReport.class, createdAdoptionReport.getReportDate().toInstant());
+        Assertions.assertThat(byDate.getStatusCode()).isEqualTo(HttpStatus.OK);
+        Assertions.assertThat(byDate.getBody()).isEqualTo(createdAdoptionReport);
     }
 
 
 
+    @Test
+    void pictureIsDownscaledAndThumbnailIsCreated() throws IOException {
+        BufferedImage image = new BufferedImage(3000, 2000, BufferedImage.TYPE_INT_RGB);
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", png);
+
+        AdoptionReport adoptionReport = new AdoptionReport(1l, png.toByteArray(), "1", "1", "1");
+        ResponseEntity<AdoptionReport> responseCreated = getCreateAdoptionReportResponse(adoptionReport);
+        assertCreatedAdoptionReport(adoptionReport, responseCreated);
+        // The full picture is not sent back with the report
+        Assertions.assertThat(responseCreated.getBody().getPicture()).isNull();
+
+        String url = LOCALHOST_URL + port + ADOPTION_REPORT_URL + '/' + responseCreated.getBody().getId();
+        ResponseEntity<byte[]> picture = restTemplate.getForEntity(url + "/picture", byte[].class);
+        Assertions.assertThat(picture.getStatusCode()).isEqualTo(HttpStatus.OK);
+        Assertions.assertThat(picture.getHeaders().getContentType()).isEqualTo(MediaType.IMAGE_JPEG);
+        BufferedImage downscaled = ImageIO.read(new ByteArrayInputStream(picture.getBody()));
+        Assertions.assertThat(downscaled.getWidth()).isEqualTo(1280);
+        Assertions.assertThat(downscaled.getHeight()).isEqualTo(853);
+
+        ResponseEntity<byte[]> thumbnail = restTemplate.getForEntity(url + "/thumbnail", byte[].class);
+        Assertions.assertThat(thumbnail.getStatusCode()).isEqualTo(HttpStatus.OK);
+        BufferedImage preview = ImageIO.read(new ByteArrayInputStream(thumbnail.getBody()));
+        Assertions.assertThat(preview.getWidth()).isEqualTo(240);
+        Assertions.assertThat(preview.getHeight()).isEqualTo(160);
+    }
+
+    @Test
+    void pictureWithTooManyPixelsIsRejected() throws IOException {
+        // A few bytes declaring a 100000x100000 image, decoding it would need 40 GB
+        AdoptionReport adoptionReport = new AdoptionReport(1l, pngHeader(100_000, 100_000), "1", "1", "1");
+        ResponseEntity<String> response = restTemplate.postForEntity(
+                LOCALHOST_URL + port + ADOPTION_REPORT_URL, adoptionReport, String.class);
+        Assertions.assertThat(response.getStatusCode()).isEqualTo(HttpStatus.PAYLOAD_TOO_LARGE);
+    }
+
+    @Test
+    void reviewQueueGivesEachReportToOneVolunteer() {
+        int volunteerId = 9001;
+        Adopter adopter = adopterRepository.save(new Adopter("Ivan", "Ivanov", "1234", 30, "1", "2", "@ivan", volunteerId));
+        AdoptionReport first = new AdoptionReport(null, null, "1", "1", "1");
+        first.setAdopterId(adopter);
+        AdoptionReport firstCreated = getCreateAdoptionReportResponse(first).getBody();
+        long firstId = firstCreated.getId();
+        AdoptionReport second = new AdoptionReport(null, null, "2", "2", "2");
+        second.setAdopterId(adopter);
+        long secondId = getCreateAdoptionReportResponse(second).getBody().getId();
+
+        String reviewUrl = LOCALHOST_URL + port + ADOPTION_REPORT_URL + "/review";
+        ResponseEntity<AdoptionReport[]> queue = restTemplate.getForEntity(
+                reviewUrl + "?volunteerId=" + volunteerId, AdoptionReport[].class);
+        Assertions.assertThat(queue.getBody()).extracting(AdoptionReport::getId).containsExactly(firstId, secondId);
+
+        // Keyset paging: the next page starts after the (report date, id) of the last report of the previous page
+        queue = restTemplate.getForEntity(reviewUrl + "?volunteerId=" + volunteerId + "&limit=1", AdoptionReport[].class);
+        Assertions.assertThat(queue.getBody()).extracting(AdoptionReport::getId).containsExactly(firstId);
+        queue = restTemplate.getForEntity(reviewUrl + "?volunteerId=" + volunteerId + "&limit=1"
+                + "&afterDate=" + firstCreated.getReportDate().toInstant() + "&afterId=" + firstId, AdoptionReport[].class);
+        Assertions.assertThat(queue.getBody()).extracting(AdoptionReport::getId).containsExactly(secondId);
+        queue = restTemplate.getForEntity(reviewUrl + "?volunteerId=" + volunteerId + "&limit=1"
+                + "&afterDate=" + queue.getBody()[0].getReportDate().toInstant() + "&afterId=" + secondId, AdoptionReport[].class);
+        Assertions.assertThat(queue.getBody()).isEmpty();
+
+        // The claimed report is not given out again
+        ResponseEntity<AdoptionReport> claimed = restTemplate.postForEntity(
+                reviewUrl + "/next?volunteerId=" + volunteerId, null, AdoptionReport.class);
+        Assertions.assertThat(claimed.getStatusCode()).isEqualTo(HttpStatus.OK);
+        Assertions.assertThat(claimed.getBody().getId()).isEqualTo(firstId);
+        claimed = restTemplate.postForEntity(reviewUrl + "/next?volunteerId=" + volunteerId, null, AdoptionReport.class);
+        Assertions.assertThat(claimed.getBody().getId()).isEqualTo(secondId);
+        claimed = restTemplate.postForEntity(reviewUrl + "/next?volunteerId=" + volunteerId, null, AdoptionReport.class);
+        Assertions.assertThat(claimed.getStatusCode()).isEqualTo(HttpStatus.NO_CONTENT);
+
+        // Only the volunteer holding the claim completes the review
+        ResponseEntity<AdoptionReport> completed = restTemplate.postForEntity(
+                reviewUrl + '/' + firstId + "?volunteerId=" + (volunteerId + 1), null, AdoptionReport.class);
+        Assertions.assertThat(completed.getStatusCode()).isEqualTo(HttpStatus.CONFLICT);
+        completed = restTemplate.postForEntity(
+                reviewUrl + '/' + firstId + "?volunteerId=" + volunteerId, null, AdoptionReport.class);
+        Assertions.assertThat(completed.getStatusCode()).isEqualTo(HttpStatus.OK);
+
+        // The reviewed report leaves the queue
+        queue = restTemplate.getForEntity(reviewUrl + "?volunteerId=" + volunteerId, AdoptionReport[].class);
+        Assertions.assertThat(queue.getBody()).extracting(AdoptionReport::getId).containsExactly(secondId);
+    }
+
+    @Test
+    void volunteerNotificationIsWrittenToOutbox() {
+        long volunteerChatId = 777000111L;
+        Volunteer volunteer = volunteerRepository.save(new Volunteer(0, "Olga", volunteerChatId, "olga", null));
+        Adopter adopter = adopterRepository.save(
+                new Adopter("Petr", "Petrov", "4321", 40, "1", "2", "123", (int) volunteer.getId()));
+        AdoptionReport adoptionReport = new AdoptionReport(null, null, "1", "1", "1");
+        adoptionReport.setAdopterId(adopter);
+        long reportId = getCreateAdoptionReportResponse(adoptionReport).getBody().getId();
+
+        Assertions.assertThat(outboxMessageRepository.findAllByChatId(volunteerChatId))
+                .extracting(OutboxMessage::getText)
+                .containsExactly(String.format(NEW_ADOPTION_REPORT_TEXT, adopter.getId(), reportId));
+    }
+
+    /**
+     * PNG signature, IHDR chunk with the given size and IEND chunk, without any pixel data.
+     */
+    private static byte[] pngHeader(int width, int height) throws IOException {
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(png);
+        out.write(new byte[]{(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'});
+        ByteArrayOutputStream ihdr = new ByteArrayOutputStream();
+        DataOutputStream ihdrOut = new DataOutputStream(ihdr);
+        ihdrOut.writeInt(width);
+        ihdrOut.writeInt(height);
+        // 8 bit RGB, deflate, no filter, no interlace
+        ihdrOut.write(new byte[]{8, 2, 0, 0, 0});
+        writeChunk(out, "IHDR", ihdr.toByteArray());
+        writeChunk(out, "IEND", new byte[0]);
+        return png.toByteArray();
+    }
+
+    private static void writeChunk(DataOutputStream out, String type, byte[] data) throws IOException {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data);
+        out.writeInt(data.length);
+        out.write(typeBytes);
+        out.write(data);
+        out.writeInt((int) crc.getValue());
+    }
+
     private ResponseEntity<AdoptionReport> getCreateAdoptionReportResponse(AdoptionReport adoptionReport) {
         return restTemplate.postForEntity(
                 LOCALHOST_URL + port + ADOPTION_REPORT_URL,
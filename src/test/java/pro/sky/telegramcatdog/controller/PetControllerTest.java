@@ -8,6 +8,9 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.boot.test.web.client.TestRestTemplate;
 import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.test.context.ActiveProfiles;
@@ -16,8 +19,13 @@ import pro.sky.telegramcatdog.constants.PetType;
 import pro.sky.telegramcatdog.constants.Sex;
 import pro.sky.telegramcatdog.model.Pet;
 
-import static pro.sky.telegramcatdog.constants.Constants.LOCALHOST_URL;
-import static pro.sky.telegramcatdog.constants.Constants.PET_URL;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import static pro.sky.telegramcatdog.constants.Constants.*;
 
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
 @ActiveProfiles("test")
@@ -75,9 +83,11 @@ class PetControllerTest {
         createdPet.setColor(newColor);
 
         // Update the modified pet in db
+        HttpHeaders headers = new HttpHeaders();
+        headers.setIfMatch("\"" + createdPet.getVersion() + "\"");
         restTemplate.put(
                 LOCALHOST_URL + port + PET_URL,
-                createdPet);
+                new HttpEntity<>(createdPet, headers));
 
         // Try to get the updated pet by its id.
         ResponseEntity<Pet> response = restTemplate.getForEntity(
@@ -91,6 +101,72 @@ class PetControllerTest {
         Assertions.assertThat(response.getBody().getColor()).isEqualTo(newColor);
     }
 
+    @Test
+    void editPetIfMatch() {
+        Pet pet = new Pet(1, "Bim", PetType.DOG, Color.BLACK, Sex.MALE);
+        ResponseEntity<Pet> responseCreated = getCreatePetResponse(pet);
+        assertCreatedPet(pet, responseCreated);
+        Pet createdPet = responseCreated.getBody();
+        int readVersion = createdPet.getVersion();
+        createdPet.setNickName("Sharik");
+        String url = LOCALHOST_URL + port + PET_URL;
+
+        // Without If-Match the pet is replaced whatever its version, the version in the body is ignored
+        createdPet.setVersion(100);
+        ResponseEntity<Pet> withoutIfMatch = restTemplate.exchange(
+                url, HttpMethod.PUT, new HttpEntity<>(createdPet), Pet.class);
+        Assertions.assertThat(withoutIfMatch.getStatusCode()).isEqualTo(HttpStatus.OK);
+        Assertions.assertThat(withoutIfMatch.getBody()).isNotNull();
+        Assertions.assertThat(withoutIfMatch.getBody().getVersion()).isEqualTo(readVersion + 1);
+
+        // The version read before that change is stale now
+        HttpHeaders staleHeaders = new HttpHeaders();
+        staleHeaders.setIfMatch("\"" + readVersion + "\"");
+        ResponseEntity<String> stale = restTemplate.exchange(
+                url, HttpMethod.PUT, new HttpEntity<>(createdPet, staleHeaders), String.class);
+        Assertions.assertThat(stale.getStatusCode()).isEqualTo(HttpStatus.PRECONDITION_FAILED);
+
+        // If-Match: * matches any version
+        HttpHeaders anyHeaders = new HttpHeaders();
+        anyHeaders.setIfMatch("*");
+        createdPet.setNickName("Tuzik");
+        ResponseEntity<Pet> response = restTemplate.exchange(
+                url, HttpMethod.PUT, new HttpEntity<>(createdPet, anyHeaders), Pet.class);
+        Assertions.assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        Assertions.assertThat(response.getBody()).isNotNull();
+        Assertions.assertThat(response.getBody().getNickName()).isEqualTo("Tuzik");
+        Assertions.assertThat(response.getBody().getVersion()).isEqualTo(readVersion + 2);
+        Assertions.assertThat(response.getHeaders().getETag()).isEqualTo("\"" + (readVersion + 2) + "\"");
+        Assertions.assertThat(response.getBody())
+                .isEqualTo(restTemplate.getForObject(url + '/' + createdPet.getId(), Pet.class));
+    }
+
+    @Test
+    void patchPet() throws IOException, InterruptedException {
+        // Create new pet first and check that it was created OK
+        Pet pet = new Pet(1, "Bim", PetType.DOG, Color.BLACK, Sex.MALE);
+        ResponseEntity<Pet> responseCreated = getCreatePetResponse(pet);
+        assertCreatedPet(pet, responseCreated);
+        Pet createdPet = responseCreated.getBody();
+
+        // Change the nick name only (RestTemplate's default request factory does not support PATCH)
+        HttpRequest request = HttpRequest.newBuilder(URI.create(LOCALHOST_URL + port + PET_URL + '/' + createdPet.getId()))
+                .header("Content-Type", MERGE_PATCH_JSON_VALUE)
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"nickName\": \"Sharik\"}"))
+                .build();
+        HttpResponse<String> patchResponse = HttpClient.newHttpClient().send(request, HttpResponse.BodyHandlers.ofString());
+        Assertions.assertThat(patchResponse.statusCode()).isEqualTo(HttpStatus.OK.value());
+
+        // Check that the nick name is changed and the other fields are kept
+        ResponseEntity<Pet> response = restTemplate.getForEntity(
+                LOCALHOST_URL + port + PET_URL + '/' + createdPet.getId(),
+                Pet.class);
+        Assertions.assertThat(response.getBody()).isNotNull();
+        Assertions.assertThat(response.getBody().getNickName()).isEqualTo("Sharik");
+        Assertions.assertThat(response.getBody().getColor()).isEqualTo(Color.BLACK);
+        Assertions.assertThat(response.getBody().getVersion()).isEqualTo(createdPet.getVersion() + 1);
+    }
+
     private ResponseEntity<Pet> getCreatePetResponse(Pet pet) {
         return restTemplate.postForEntity(
                 LOCALHOST_URL + port + PET_URL,
@@ -8,14 +8,27 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.boot.test.web.client.TestRestTemplate;
 import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.test.context.ActiveProfiles;
+import pro.sky.telegramcatdog.model.AdoptionReport;
 import pro.sky.telegramcatdog.model.Volunteer;
+import pro.sky.telegramcatdog.service.VolunteerFeedService;
 
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
+import static pro.sky.telegramcatdog.constants.Constants.ADOPTION_REPORT_URL;
 import static pro.sky.telegramcatdog.constants.Constants.LOCALHOST_URL;
 import static pro.sky.telegramcatdog.constants.Constants.VOLUNTEER_URL;
 
@@ -32,6 +45,9 @@ class VolunteerControllerTest {
     @Autowired
     private TestRestTemplate restTemplate;
 
+    @Autowired
+    private VolunteerFeedService volunteerFeedService;
+
     @Test
     void getVolunteer() {
         // Create new volunteer and check that it was created OK
@@ -93,6 +109,35 @@ class VolunteerControllerTest {
         Assertions.assertThat(response.getBody().getChatId()).isEqualTo(newChatId);
     }
 
+    @Test
+    void editVolunteerWithOutdatedVersion() {
+        // Create new volunteer first and check that it was created OK
+        Volunteer volunteer = new Volunteer(1, "Vasya", 1234567809, "https://t.me/vasyapupkin", null);
+        ResponseEntity<Volunteer> responseCreated = getCreateVolunteerResponse(volunteer);
+        assertCreatedVolunteer(volunteer, responseCreated);
+        Volunteer createdVolunteer = responseCreated.getBody();
+        String url = LOCALHOST_URL + port + VOLUNTEER_URL + '/' + createdVolunteer.getId();
+
+        // The first editor reads the volunteer and updates it, the version is incremented
+        String eTag = restTemplate.getForEntity(url, Volunteer.class).getHeaders().getETag();
+        HttpHeaders headers = new HttpHeaders();
+        headers.setIfMatch(eTag);
+        createdVolunteer.setName("Vasya Pupkin");
+        ResponseEntity<Volunteer> firstResponse = restTemplate.exchange(
+                url, HttpMethod.PUT, new HttpEntity<>(createdVolunteer, headers), Volunteer.class);
+        Assertions.assertThat(firstResponse.getStatusCode()).isEqualTo(HttpStatus.OK);
+        Assertions.assertThat(firstResponse.getHeaders().getETag()).isNotEqualTo(eTag);
+
+        // The second editor still has the old ETag and must not overwrite the first update
+        createdVolunteer.setName("Petya");
+        ResponseEntity<String> secondResponse = restTemplate.exchange(
+                url, HttpMethod.PUT, new HttpEntity<>(createdVolunteer, headers), String.class);
+        Assertions.assertThat(secondResponse.getStatusCode()).isEqualTo(HttpStatus.PRECONDITION_FAILED);
+
+        ResponseEntity<Volunteer> response = restTemplate.getForEntity(url, Volunteer.class);
+        Assertions.assertThat(response.getBody().getName()).isEqualTo("Vasya Pupkin");
+    }
+
     private ResponseEntity<Volunteer> getCreateVolunteerResponse(Volunteer volunteer) {
         return restTemplate.postForEntity(
                 LOCALHOST_URL + port + VOLUNTEER_URL,
@@ -106,4 +151,27 @@ class VolunteerControllerTest {
         Assertions.assertThat(response.getBody().getId()).isNotNull();
         Assertions.assertThat(response.getBody().getId()).isEqualTo(volunteer.getId());
     }
-}
\ No newline at end of file
+
+    @Test
+    void feedSendsNewAdoptionReports() throws Exception {
+        int subscribers = volunteerFeedService.getSubscribersCount();
+        HttpResponse<Stream<String>> feed = HttpClient.newHttpClient().send(
+                HttpRequest.newBuilder(URI.create(LOCALHOST_URL + port + VOLUNTEER_URL + "/feed")).build(),
+                HttpResponse.BodyHandlers.ofLines());
+        try (Stream<String> lines = feed.body()) {
+            Assertions.assertThat(feed.statusCode()).isEqualTo(200);
+            Assertions.assertThat(volunteerFeedService.getSubscribersCount()).isEqualTo(subscribers + 1);
+
+            AdoptionReport report = restTemplate.postForObject(LOCALHOST_URL + port + ADOPTION_REPORT_URL,
+                    new AdoptionReport(null, null, "1", "1", "1"), AdoptionReport.class);
+
+            // data line follows the event line
+            String data = CompletableFuture.supplyAsync(() -> lines
+                            .dropWhile(line -> !line.equals("event:adoption-report"))
+                            .filter(line -> line.startsWith("data:"))
+                            .findFirst().orElseThrow())
+                    .get(10, TimeUnit.SECONDS);
+            Assertions.assertThat(data).contains("\"reportId\":" + report.getId());
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package pro.sky.telegramcatdog.listener;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class CircuitBreakerTest {
+
+    private final AtomicInteger calls = new AtomicInteger();
+
+    private String fail() {
+        calls.incrementAndGet();
+        throw new IllegalStateException("down");
+    }
+
+    private String succeed() {
+        calls.incrementAndGet();
+        return "called";
+    }
+
+    @Test
+    public void breakerOpensAfterFailuresInARowTest() {
+        CircuitBreaker breaker = new CircuitBreaker("test", 3, Duration.ofMinutes(1), Duration.ofSeconds(5),
+                new SimpleMeterRegistry());
+
+        for (int i = 0; i < 5; i++) {
+            Assertions.assertThat(breaker.call(this::fail, () -> "fallback")).isEqualTo("fallback");
+        }
+
+        Assertions.assertThat(calls.get()).isEqualTo(3);
+        Assertions.assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        Assertions.assertThat(breaker.call(this::succeed, () -> "fallback")).isEqualTo("fallback");
+    }
+
+    @Test
+    public void successResetsFailuresTest() {
+        CircuitBreaker breaker = new CircuitBreaker("test", 2, Duration.ofMinutes(1), Duration.ofSeconds(5),
+                new SimpleMeterRegistry());
+
+        breaker.call(this::fail, () -> "fallback");
+        breaker.call(this::succeed, () -> "fallback");
+        breaker.call(this::fail, () -> "fallback");
+
+        Assertions.assertThat(breaker.isClosed()).isTrue();
+    }
+
+    @Test
+    public void trialCallClosesBreakerTest() {
+        CircuitBreaker breaker = new CircuitBreaker("test", 1, Duration.ZERO, Duration.ofSeconds(5),
+                new SimpleMeterRegistry());
+
+        breaker.call(this::fail, () -> "fallback");
+        Assertions.assertThat(breaker.isClosed()).isFalse();
+        // The open duration is over, the next call is the trial
+        Assertions.assertThat(breaker.call(this::succeed, () -> "fallback")).isEqualTo("called");
+
+        Assertions.assertThat(breaker.isClosed()).isTrue();
+    }
+
+    @Test
+    public void failedResultAndSlowCallAreFailuresTest() {
+        CircuitBreaker breaker = new CircuitBreaker("test", 2, Duration.ofMinutes(1), Duration.ZERO,
+                new SimpleMeterRegistry());
+
+        Assertions.assertThat(breaker.call(this::succeed, "called"::equals, () -> "fallback")).isEqualTo("fallback");
+        // Slower than zero: the result is used, but the breaker opens
+        Assertions.assertThat(breaker.call(() -> {
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "slow";
+        }, () -> "fallback")).isEqualTo("slow");
+
+        Assertions.assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+    }
+}
@@ -0,0 +1,102 @@
+package pro.sky.telegramcatdog.listener;
+
+import com.pengrad.telegrambot.BotUtils;
+import com.pengrad.telegrambot.TelegramBot;
+import com.pengrad.telegrambot.model.request.InlineKeyboardButton;
+import com.pengrad.telegrambot.model.request.InlineKeyboardMarkup;
+import com.pengrad.telegrambot.request.SendMessage;
+import com.pengrad.telegrambot.response.SendResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import pro.sky.telegramcatdog.service.BlockedChatRegistry;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class OutboundMessageSpoolTest {
+    private static final SendResponse OK = BotUtils.fromJson("{\"ok\":true}", SendResponse.class);
+    private static final SendResponse UNAVAILABLE =
+            BotUtils.fromJson("{\"ok\":false,\"error_code\":502,\"description\":\"Bad Gateway\"}", SendResponse.class);
+
+    @TempDir
+    private Path tempDir;
+
+    @Mock
+    private TelegramBot telegramBot;
+
+    @Mock
+    private BlockedChatRegistry blockedChatRegistry;
+
+    @Test
+    public void parkedMessagesSurviveTheRestartAndAreReplayedInOrderTest() throws IOException {
+        OutboundMessageSpool spool = spool();
+        spool.park(new SendMessage(1L, "first").replyMarkup(new InlineKeyboardMarkup()
+                .addRow(new InlineKeyboardButton("Cats").callbackData("cats"))));
+        spool.park(new SendMessage(2L, "second"));
+
+        Assertions.assertThat(spool.hasParked(1)).isTrue();
+        Assertions.assertThat(spool.hasParked(3)).isFalse();
+
+        // Read back from the file
+        OutboundMessageSpool restarted = spool();
+        Assertions.assertThat(restarted.size()).isEqualTo(2);
+        Assertions.assertThat(restarted.hasParked(2)).isTrue();
+        when(telegramBot.execute(any(SendMessage.class))).thenReturn(OK);
+
+        restarted.replay();
+
+        ArgumentCaptor<SendMessage> sent = ArgumentCaptor.forClass(SendMessage.class);
+        Mockito.verify(telegramBot, Mockito.times(2)).execute(sent.capture());
+        Assertions.assertThat(sent.getAllValues().stream().map(message -> message.getParameters().get("text")).toList())
+                .containsExactly("first", "second");
+        Assertions.assertThat(sent.getAllValues().get(0).getParameters().get("reply_markup")).isNotNull();
+        Assertions.assertThat(restarted.size()).isZero();
+        Assertions.assertThat(restarted.hasParked(1)).isFalse();
+        Assertions.assertThat(Files.readAllLines(tempDir.resolve("spool.jsonl"), StandardCharsets.UTF_8)).isEmpty();
+    }
+
+    @Test
+    public void replayStopsAtTheFirstUnsentMessageTest() throws IOException {
+        OutboundMessageSpool spool = spool();
+        spool.park(new SendMessage(1L, "first"));
+        spool.park(new SendMessage(2L, "second"));
+        spool.park(new SendMessage(3L, "third"));
+        when(telegramBot.execute(any(SendMessage.class))).thenReturn(OK, UNAVAILABLE);
+
+        spool.replay();
+
+        // The sent line is removed by the rewrite, the others keep their order
+        List<String> left = Files.readAllLines(tempDir.resolve("spool.jsonl"), StandardCharsets.UTF_8);
+        Assertions.assertThat(left).hasSize(2);
+        Assertions.assertThat(left.get(0)).contains("second");
+        Assertions.assertThat(left.get(1)).contains("third");
+        Assertions.assertThat(spool.size()).isEqualTo(2);
+        Assertions.assertThat(spool.hasParked(1)).isFalse();
+        Assertions.assertThat(spool.hasParked(2)).isTrue();
+        Mockito.verify(telegramBot, Mockito.times(2)).execute(any(SendMessage.class));
+    }
+
+    private OutboundMessageSpool spool() throws IOException {
+        BotCircuitBreakers circuitBreakers = new BotCircuitBreakers(new SimpleMeterRegistry(),
+                5, Duration.ofMinutes(1), Duration.ofSeconds(5), Duration.ofSeconds(2));
+        OutboundMessageSpool spool = new OutboundMessageSpool(telegramBot, circuitBreakers, blockedChatRegistry,
+                new SimpleMeterRegistry(), tempDir.resolve("spool.jsonl"), 100);
+        spool.open();
+        return spool;
+    }
+}
@@ -0,0 +1,64 @@
+package pro.sky.telegramcatdog.listener;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class PollingBackpressureTest {
+
+    @Mock
+    private UpdateDispatcher updateDispatcher;
+
+    @Mock
+    private UpdateQueue updateQueue;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private PollingBackpressure backpressure;
+
+    @BeforeEach
+    public void setUp() {
+        backpressure = new PollingBackpressure(updateDispatcher, updateQueue, meterRegistry, 100, 20, Duration.ofMillis(1));
+    }
+
+    @Test
+    public void pollingIsNotPausedBelowHighWaterMarkTest() {
+        when(updateDispatcher.getQueueDepth()).thenReturn(99);
+
+        backpressure.awaitCapacity(() -> false);
+
+        Mockito.verify(updateDispatcher, Mockito.times(1)).getQueueDepth();
+        Assertions.assertThat(meterRegistry.get("bot.polling.pauses").counter().count()).isZero();
+    }
+
+    @Test
+    public void pollingResumesAtLowWaterMarkTest() {
+        when(updateDispatcher.getQueueDepth()).thenReturn(100, 80, 50, 21, 20, 0);
+
+        backpressure.awaitCapacity(() -> false);
+
+        // Not resumed between the marks
+        Mockito.verify(updateDispatcher, Mockito.times(5)).getQueueDepth();
+        Assertions.assertThat(backpressure.isPaused()).isFalse();
+        Assertions.assertThat(meterRegistry.get("bot.polling.pauses").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    public void pauseEndsWhenPollingStopsTest() {
+        when(updateDispatcher.getQueueDepth()).thenReturn(500);
+
+        backpressure.awaitCapacity(() -> true);
+
+        Assertions.assertThat(backpressure.isPaused()).isFalse();
+    }
+}
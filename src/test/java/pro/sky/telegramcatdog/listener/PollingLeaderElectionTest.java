@@ -0,0 +1,112 @@
+package pro.sky.telegramcatdog.listener;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class PollingLeaderElectionTest {
+    private static final Duration CHECK_INTERVAL = Duration.ofMillis(10);
+
+    @Mock
+    private DataSource dataSource;
+
+    @Mock
+    private Connection connection;
+
+    @Mock
+    private PreparedStatement statement;
+
+    @Mock
+    private ResultSet resultSet;
+
+    private final CountDownLatch elected = new CountDownLatch(1);
+    private final CountDownLatch revoked = new CountDownLatch(1);
+    private PollingLeaderElection election;
+
+    @AfterEach
+    public void tearDown() {
+        if (election != null) {
+            election.leave();
+        }
+    }
+
+    @Test
+    public void disabledElectionAlwaysLeadsTest() {
+        election = new PollingLeaderElection(dataSource, false, 1, CHECK_INTERVAL);
+        election.join(elected::countDown, revoked::countDown);
+
+        Assertions.assertThat(elected.getCount()).isZero();
+        Assertions.assertThat(election.isLeader()).isTrue();
+        Mockito.verifyNoInteractions(dataSource);
+    }
+
+    @Test
+    public void instanceTakingTheLockLeadsUntilReleaseTest() throws Exception {
+        lockGranted(true);
+        // checked while leading, the test may leave before the first check
+        Mockito.lenient().when(connection.isValid(anyInt())).thenReturn(true);
+        election = new PollingLeaderElection(dataSource, true, 1, CHECK_INTERVAL);
+        election.join(elected::countDown, revoked::countDown);
+
+        Assertions.assertThat(elected.await(5, TimeUnit.SECONDS)).isTrue();
+        Assertions.assertThat(election.isLeader()).isTrue();
+
+        election.leave();
+        election.release();
+        Assertions.assertThat(election.isLeader()).isFalse();
+        Mockito.verify(connection).prepareStatement("SELECT pg_advisory_unlock(?)");
+        Mockito.verify(connection).close();
+        // leaving is not losing the leadership
+        Assertions.assertThat(revoked.getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void followerKeepsTryingTest() throws Exception {
+        lockGranted(false);
+        election = new PollingLeaderElection(dataSource, true, 1, CHECK_INTERVAL);
+        election.join(elected::countDown, revoked::countDown);
+
+        Mockito.verify(statement, Mockito.timeout(5000).atLeast(3)).executeQuery();
+        Assertions.assertThat(election.isLeader()).isFalse();
+        Assertions.assertThat(elected.getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void leadershipIsLostWithTheConnectionTest() throws Exception {
+        // Granted once, then another instance takes it
+        lockGranted(true, false);
+        when(connection.isValid(anyInt())).thenReturn(false);
+        election = new PollingLeaderElection(dataSource, true, 1, CHECK_INTERVAL);
+        election.join(elected::countDown, revoked::countDown);
+
+        Assertions.assertThat(revoked.await(5, TimeUnit.SECONDS)).isTrue();
+        Assertions.assertThat(election.isLeader()).isFalse();
+        Mockito.verify(connection, Mockito.atLeastOnce()).close();
+    }
+
+    private void lockGranted(Boolean granted, Boolean... next) throws SQLException {
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(statement);
+        when(statement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true);
+        when(resultSet.getBoolean(1)).thenReturn(granted, next);
+    }
+}
@@ -0,0 +1,139 @@
+package pro.sky.telegramcatdog.listener;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import pro.sky.telegramcatdog.model.BotState;
+import pro.sky.telegramcatdog.repository.BotStateRepository;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.Optional;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+import static pro.sky.telegramcatdog.listener.ProcessedUpdateRegistry.LAST_UPDATE_ID;
+
+@ExtendWith(MockitoExtension.class)
+public class ProcessedUpdateRegistryTest {
+
+    @Mock
+    private BotStateRepository botStateRepository;
+
+    private ProcessedUpdateRegistry registry;
+
+    @BeforeEach
+    public void setUp() {
+        when(botStateRepository.findById(LAST_UPDATE_ID)).thenReturn(Optional.of(new BotState(LAST_UPDATE_ID, 100)));
+        registry = registry();
+    }
+
+    @Test
+    public void redeliveredUpdateIsSeenTest() {
+        Assertions.assertThat(registry.seenBefore(101)).isFalse();
+        Assertions.assertThat(registry.seenBefore(102)).isFalse();
+        Assertions.assertThat(registry.seenBefore(101)).isTrue();
+        Assertions.assertThat(registry.seenBefore(102)).isTrue();
+    }
+
+    @Test
+    public void updatesProcessedBeforeRestartAreSeenTest() {
+        Assertions.assertThat(registry.seenBefore(100)).isTrue();
+        Assertions.assertThat(registry.seenBefore(1)).isTrue();
+    }
+
+    @Test
+    public void updateOlderThanWindowIsSeenTest() {
+        Assertions.assertThat(registry.seenBefore(101)).isFalse();
+        // 109 takes the slot of 101 in the window of 8
+        Assertions.assertThat(registry.seenBefore(109)).isFalse();
+        Assertions.assertThat(registry.seenBefore(101)).isTrue();
+    }
+
+    @Test
+    public void highWaterMarkIsPersistedOnceTest() {
+        registry.seenBefore(105);
+        registry.seenBefore(103);
+        registry.handled(105);
+        registry.handled(103);
+        registry.persistHighWaterMark();
+        registry.persistHighWaterMark();
+
+        Mockito.verify(botStateRepository).raiseValue(eq(LAST_UPDATE_ID), eq(105L), any());
+        Assertions.assertThat(registry.seenBefore(104)).isTrue();
+        Mockito.verify(botStateRepository, Mockito.times(1)).raiseValue(any(), anyLong(), any());
+    }
+
+    @Test
+    public void markStopsBeforeUpdateInFlightTest() {
+        registry.seenBefore(101);
+        registry.seenBefore(102);
+        registry.handled(102);
+        Assertions.assertThat(registry.confirmableMark()).isEqualTo(100);
+        registry.persistHighWaterMark();
+        Mockito.verify(botStateRepository, Mockito.never()).raiseValue(any(), anyLong(), any());
+
+        registry.handled(101);
+        Assertions.assertThat(registry.confirmableMark()).isEqualTo(102);
+    }
+
+    @Test
+    public void failedUpdateIsHandledAgainTest() {
+        Assertions.assertThat(registry.seenBefore(101)).isFalse();
+        Assertions.assertThat(registry.failed(101)).isTrue();
+        Assertions.assertThat(registry.confirmableMark()).isEqualTo(100);
+
+        // redelivered after the failure
+        Assertions.assertThat(registry.seenBefore(101)).isFalse();
+        Assertions.assertThat(registry.failed(101)).isTrue();
+        Assertions.assertThat(registry.seenBefore(101)).isFalse();
+        // the third failure gives it up
+        Assertions.assertThat(registry.failed(101)).isFalse();
+        Assertions.assertThat(registry.confirmableMark()).isEqualTo(101);
+        Assertions.assertThat(registry.seenBefore(101)).isTrue();
+    }
+
+    @Test
+    public void oldMarkIsIgnoredTest() {
+        BotState state = new BotState(LAST_UPDATE_ID, 100);
+        ReflectionTestUtils.setField(state, "updatedAt",
+                new Timestamp(System.currentTimeMillis() - Duration.ofDays(8).toMillis()));
+        when(botStateRepository.findById(LAST_UPDATE_ID)).thenReturn(Optional.of(state));
+        registry = registry();
+
+        // Telegram has started the ids anew below the mark
+        Assertions.assertThat(registry.seenBefore(50)).isFalse();
+        registry.handled(50);
+        registry.persistHighWaterMark();
+        Mockito.verify(botStateRepository).setValue(eq(LAST_UPDATE_ID), eq(50L), any());
+    }
+
+    @Test
+    public void idsStartedAnewAreNotSeenTest() {
+        Assertions.assertThat(registry.seenBefore(101)).isFalse();
+        registry.handled(101);
+        // far below the mark: not a redelivery
+        Assertions.assertThat(registry.seenBefore(5)).isFalse();
+        Assertions.assertThat(registry.seenBefore(5)).isTrue();
+    }
+
+    @Test
+    public void idsAfterLongIdleAreNotSeenTest() {
+        ReflectionTestUtils.setField(registry, "lastSeenAt", System.currentTimeMillis() - Duration.ofDays(8).toMillis());
+
+        Assertions.assertThat(registry.seenBefore(99)).isFalse();
+    }
+
+    private ProcessedUpdateRegistry registry() {
+        ProcessedUpdateRegistry registry = new ProcessedUpdateRegistry(botStateRepository, 8, Duration.ofDays(7), 3);
+        registry.loadHighWaterMark();
+        return registry;
+    }
+}
@@ -2,8 +2,15 @@ package pro.sky.telegramcatdog.listener;
 
 import com.pengrad.telegrambot.BotUtils;
 import com.pengrad.telegrambot.TelegramBot;
+import com.pengrad.telegrambot.UpdatesListener;
 import com.pengrad.telegrambot.model.Update;
+import com.pengrad.telegrambot.request.AnswerCallbackQuery;
+import com.pengrad.telegrambot.request.BaseRequest;
+import com.pengrad.telegrambot.request.EditMessageText;
 import com.pengrad.telegrambot.request.SendMessage;
+import com.pengrad.telegrambot.response.BaseResponse;
+import com.pengrad.telegrambot.response.SendResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -11,15 +18,22 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.util.ReflectionTestUtils;
 import pro.sky.telegramcatdog.model.Volunteer;
+import pro.sky.telegramcatdog.repository.GuestRepository;
 import pro.sky.telegramcatdog.repository.VolunteerRepository;
+import pro.sky.telegramcatdog.service.BlockedChatRegistry;
 
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
 
 import static org.mockito.ArgumentMatchers.any;
@@ -38,6 +52,43 @@ class TelegramBotUpdatesListenerTest {
     @Mock
     private VolunteerRepository volunteerRepository;
 
+    @Mock
+    private GuestRepository guestRepository;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private ProcessedUpdateRegistry processedUpdateRegistry;
+
+    @Mock
+    private PollingLeaderElection leaderElection;
+
+    @Mock
+    private UpdateQueue updateQueue;
+
+    @Spy
+    private ClickDebouncer clickDebouncer = new ClickDebouncer(Duration.ofSeconds(1));
+
+    @Mock
+    private UpdateDispatcher updateDispatcher;
+
+    @Mock
+    private PollingBackpressure backpressure;
+
+    @Mock
+    private BlockedChatRegistry blockedChatRegistry;
+
+    @Spy
+    private BotCircuitBreakers circuitBreakers = new BotCircuitBreakers(new SimpleMeterRegistry(),
+            2, Duration.ofMinutes(1), Duration.ofSeconds(5), Duration.ofSeconds(2));
+
+    @Mock
+    private OutboundMessageSpool outboundSpool;
+
+    @Spy
+    private MenuFallbackCache fallbackCache = new MenuFallbackCache(100);
+
     @Test
     public void handleStartTest() throws URISyntaxException, IOException {
         String json = Files.readString(
@@ -53,6 +104,50 @@ class TelegramBotUpdatesListenerTest {
         Assertions.assertThat(actual.getParameters().get("text")).isEqualTo(SHELTER_TYPE_SELECT_MSG_TEXT);
     }
 
+    @Test
+    public void skipRedeliveredUpdateTest() throws URISyntaxException, IOException {
+        String json = Files.readString(
+                Paths.get(TelegramBotUpdatesListenerTest.class.getResource("data_update.json").toURI()));
+        Update update = getUpdateMessage(json, BUTTON_CAT_SHELTER_CALLBACK_TEXT);
+        when(processedUpdateRegistry.seenBefore(update.updateId())).thenReturn(true);
+
+        telegramBotUpdatesListener.process(Collections.singletonList(update));
+
+        Mockito.verify(telegramBot, Mockito.never()).execute(any());
+    }
+
+    @Test
+    public void updatesAfterShutdownDeadlineAreNotConfirmedTest() throws URISyntaxException, IOException {
+        String json = Files.readString(
+                Paths.get(TelegramBotUpdatesListenerTest.class.getResource("data_update.json").toURI()));
+        Update update = getUpdateMessage(json, BUTTON_CAT_SHELTER_CALLBACK_TEXT);
+        ReflectionTestUtils.setField(telegramBotUpdatesListener, "shutdownTimeout", Duration.ZERO);
+
+        telegramBotUpdatesListener.stop();
+        int confirmed = telegramBotUpdatesListener.process(Collections.singletonList(update));
+
+        Assertions.assertThat(confirmed).isEqualTo(UpdatesListener.CONFIRMED_UPDATES_NONE);
+        Mockito.verify(telegramBot).removeGetUpdatesListener();
+        Mockito.verify(telegramBot, Mockito.never()).execute(any());
+        Mockito.verify(processedUpdateRegistry).persistHighWaterMark();
+    }
+
+    @Test
+    public void updatesAreHandledInlineWhenTheQueueIsDownTest() throws URISyntaxException, IOException {
+        String json = Files.readString(
+                Paths.get(TelegramBotUpdatesListenerTest.class.getResource("text_update.json").toURI()));
+        Update update = getUpdateMessage(json, "/start");
+        when(updateQueue.isEnabled()).thenReturn(true);
+        Mockito.doThrow(new IllegalStateException("database is down")).when(updateQueue).enqueue(any());
+
+        int confirmed = telegramBotUpdatesListener.process(Collections.singletonList(update));
+
+        // Answered from here and confirmed, not polled again in a loop
+        Assertions.assertThat(confirmed).isEqualTo(UpdatesListener.CONFIRMED_UPDATES_ALL);
+        Mockito.verify(telegramBot).execute(any(SendMessage.class));
+        Mockito.verify(processedUpdateRegistry).handled(update.updateId());
+    }
+
     @Test
     public void handleCatShelterSelectTest() throws URISyntaxException, IOException {
         String json = Files.readString(
@@ -60,11 +155,14 @@ class TelegramBotUpdatesListenerTest {
         Update update = getUpdateMessage(json, BUTTON_CAT_SHELTER_CALLBACK_TEXT);
         telegramBotUpdatesListener.process(Collections.singletonList(update));
 
-        ArgumentCaptor<SendMessage> argumentCaptor = ArgumentCaptor.forClass(SendMessage.class);
+        ArgumentCaptor<BaseRequest> argumentCaptor = ArgumentCaptor.forClass(BaseRequest.class);
         Mockito.verify(telegramBot, Mockito.times(2)).execute(argumentCaptor.capture());
-        SendMessage actual = argumentCaptor.getValue();
+        BaseRequest actual = argumentCaptor.getValue();
 
+        // The menu replaces the message with the clicked keyboard
+        Assertions.assertThat(actual).isInstanceOf(EditMessageText.class);
         Assertions.assertThat(actual.getParameters().get("chat_id")).isEqualTo(1234567809L);
+        Assertions.assertThat(actual.getParameters().get("message_id")).isEqualTo(42);
         Assertions.assertThat(actual.getParameters().get("text")).isEqualTo(CAT_SHELTER_WELCOME_MSG_TEXT);
     }
 
@@ -75,14 +173,140 @@ class TelegramBotUpdatesListenerTest {
         Update update = getUpdateMessage(json, BUTTON_DOG_SHELTER_CALLBACK_TEXT);
         telegramBotUpdatesListener.process(Collections.singletonList(update));
 
-        ArgumentCaptor<SendMessage> argumentCaptor = ArgumentCaptor.forClass(SendMessage.class);
+        ArgumentCaptor<BaseRequest> argumentCaptor = ArgumentCaptor.forClass(BaseRequest.class);
         Mockito.verify(telegramBot, Mockito.times(2)).execute(argumentCaptor.capture());
-        SendMessage actual = argumentCaptor.getValue();
+        BaseRequest actual = argumentCaptor.getValue();
+
+        // The menu replaces the message with the clicked keyboard
+        Assertions.assertThat(actual).isInstanceOf(EditMessageText.class);
+        Assertions.assertThat(actual.getParameters().get("chat_id")).isEqualTo(1234567809L);
+        Assertions.assertThat(actual.getParameters().get("message_id")).isEqualTo(42);
+        Assertions.assertThat(actual.getParameters().get("text")).isEqualTo(DOG_SHELTER_WELCOME_MSG_TEXT);
+    }
+
+    @Test
+    public void buttonClickIsAnsweredWithoutEchoMessageTest() throws URISyntaxException, IOException {
+        String json = Files.readString(
+                Paths.get(TelegramBotUpdatesListenerTest.class.getResource("data_update.json").toURI()));
+        Update update = getUpdateMessage(json, BUTTON_CAT_SHELTER_CALLBACK_TEXT);
+        telegramBotUpdatesListener.process(Collections.singletonList(update));
+
+        ArgumentCaptor<BaseRequest> argumentCaptor = ArgumentCaptor.forClass(BaseRequest.class);
+        Mockito.verify(telegramBot, Mockito.times(2)).execute(argumentCaptor.capture());
+        List<BaseRequest> requests = argumentCaptor.getAllValues();
+
+        Assertions.assertThat(requests.get(0)).isInstanceOf(AnswerCallbackQuery.class);
+        Assertions.assertThat(requests.get(0).getParameters().get("callback_query_id")).isEqualTo("4382bfdwdsb323b2d9");
+        Assertions.assertThat(requests.get(1)).isInstanceOf(EditMessageText.class);
+        Assertions.assertThat(requests.get(1).getParameters().get("text")).isEqualTo(CAT_SHELTER_WELCOME_MSG_TEXT);
+    }
+
+    @Test
+    public void repeatedClickIsDroppedTest() throws URISyntaxException, IOException {
+        String json = Files.readString(
+                Paths.get(TelegramBotUpdatesListenerTest.class.getResource("data_update.json").toURI()));
+        Update click = getUpdateMessage(json, BUTTON_CAT_SHELTER_CALLBACK_TEXT);
+        Update otherClick = getUpdateMessage(json, BUTTON_DOG_SHELTER_CALLBACK_TEXT);
+        telegramBotUpdatesListener.process(List.of(click, click, click, otherClick));
+
+        ArgumentCaptor<BaseRequest> argumentCaptor = ArgumentCaptor.forClass(BaseRequest.class);
+        Mockito.verify(telegramBot, Mockito.times(6)).execute(argumentCaptor.capture());
+
+        // Every click is answered, the repeated ones are not handled
+        Assertions.assertThat(argumentCaptor.getAllValues())
+                .filteredOn(request -> request instanceof EditMessageText)
+                .extracting(request -> request.getParameters().get("text"))
+                .containsExactly(CAT_SHELTER_WELCOME_MSG_TEXT, DOG_SHELTER_WELCOME_MSG_TEXT);
+    }
+
+    @Test
+    public void menuIsSentWhenMessageCannotBeEditedTest() throws URISyntaxException, IOException {
+        BaseResponse refused = Mockito.mock(BaseResponse.class);
+        when(refused.isOk()).thenReturn(false);
+        when(refused.description()).thenReturn("Bad Request: message can't be edited");
+        Mockito.lenient().when(telegramBot.execute(any(EditMessageText.class))).thenReturn(refused);
 
+        String json = Files.readString(
+                Paths.get(TelegramBotUpdatesListenerTest.class.getResource("data_update.json").toURI()));
+        Update update = getUpdateMessage(json, BUTTON_DOG_SHELTER_CALLBACK_TEXT);
+        telegramBotUpdatesListener.process(Collections.singletonList(update));
+
+        ArgumentCaptor<BaseRequest> argumentCaptor = ArgumentCaptor.forClass(BaseRequest.class);
+        Mockito.verify(telegramBot, Mockito.times(3)).execute(argumentCaptor.capture());
+        BaseRequest actual = argumentCaptor.getValue();
+
+        Assertions.assertThat(actual).isInstanceOf(SendMessage.class);
         Assertions.assertThat(actual.getParameters().get("chat_id")).isEqualTo(1234567809L);
         Assertions.assertThat(actual.getParameters().get("text")).isEqualTo(DOG_SHELTER_WELCOME_MSG_TEXT);
     }
 
+    @Test
+    public void messageToBlockedChatIsNotSentTest() throws URISyntaxException, IOException {
+        String json = Files.readString(
+                Paths.get(TelegramBotUpdatesListenerTest.class.getResource("data_update.json").toURI()));
+        Update update = getUpdateMessage(json, BUTTON_CALL_VOLUNTEER_CALLBACK_TEXT);
+        when(blockedChatRegistry.isBlocked(1122334455L)).thenReturn(true);
+
+        telegramBotUpdatesListener.process(Collections.singletonList(update));
+
+        // Only the click is answered
+        Mockito.verify(telegramBot).execute(any(AnswerCallbackQuery.class));
+        Mockito.verify(telegramBot, Mockito.never()).execute(any(SendMessage.class));
+    }
+
+    @Test
+    public void forbiddenChatIsBlockedTest() throws URISyntaxException, IOException {
+        SendResponse forbidden = Mockito.mock(SendResponse.class);
+        when(forbidden.isOk()).thenReturn(false);
+        when(forbidden.errorCode()).thenReturn(403);
+        when(telegramBot.execute(any(SendMessage.class))).thenReturn(forbidden);
+
+        String json = Files.readString(
+                Paths.get(TelegramBotUpdatesListenerTest.class.getResource("text_update.json").toURI()));
+        Update update = getUpdateMessage(json, "/start");
+        telegramBotUpdatesListener.process(Collections.singletonList(update));
+
+        // /start unblocks the chat before the reply, the refused reply blocks it again
+        Mockito.verify(blockedChatRegistry).unblock(1234567809L);
+        Mockito.verify(blockedChatRegistry).blockIfForbidden(1234567809L, 403);
+    }
+
+    @Test
+    public void messageIsParkedWhenTelegramIsDownTest() throws URISyntaxException, IOException {
+        when(telegramBot.execute(any(SendMessage.class))).thenThrow(new RuntimeException("connect timed out"));
+
+        String json = Files.readString(
+                Paths.get(TelegramBotUpdatesListenerTest.class.getResource("text_update.json").toURI()));
+        Update update = getUpdateMessage(json, "/start");
+        telegramBotUpdatesListener.process(List.of(update, update, update));
+
+        // Two failures open the breaker, the third message is parked without a call
+        Mockito.verify(telegramBot, Mockito.times(2)).execute(any(SendMessage.class));
+        Mockito.verify(outboundSpool, Mockito.times(3)).park(any(SendMessage.class));
+    }
+
+    @Test
+    public void menuIsAnsweredWhenDatabaseIsDownTest() throws URISyntaxException, IOException {
+        when(guestRepository.findByChatId(1234567809L)).thenThrow(new RuntimeException("connection is not available"));
+
+        String json = Files.readString(
+                Paths.get(TelegramBotUpdatesListenerTest.class.getResource("data_update.json").toURI()));
+        Update update = getUpdateMessage(json, BUTTON_DOG_SHELTER_CALLBACK_TEXT);
+        telegramBotUpdatesListener.process(Collections.singletonList(update));
+
+        String startJson = Files.readString(
+                Paths.get(TelegramBotUpdatesListenerTest.class.getResource("text_update.json").toURI()));
+        telegramBotUpdatesListener.process(Collections.singletonList(getUpdateMessage(startJson, "/start")));
+
+        ArgumentCaptor<BaseRequest> argumentCaptor = ArgumentCaptor.forClass(BaseRequest.class);
+        Mockito.verify(telegramBot, Mockito.times(3)).execute(argumentCaptor.capture());
+        // The menu is shown, /start finds the last menu of the guest in the cache
+        Assertions.assertThat(argumentCaptor.getAllValues())
+                .extracting(request -> request.getParameters().get("text"))
+                .containsExactly(null, DOG_SHELTER_WELCOME_MSG_TEXT, DOG_SHELTER_WELCOME_MSG_TEXT);
+        Mockito.verify(guestRepository, Mockito.never()).save(any());
+    }
+
     /* Testing Call Volunteer method when guest has no @username defined (his chatId is used in this case). */
     @Test
     public void handleCallVolunteerChatIdTest() throws URISyntaxException, IOException {
@@ -0,0 +1,158 @@
+package pro.sky.telegramcatdog.listener;
+
+import com.pengrad.telegrambot.BotUtils;
+import com.pengrad.telegrambot.model.Update;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static pro.sky.telegramcatdog.constants.Constants.*;
+
+public class UpdateDispatcherTest {
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final UpdateDispatcher dispatcher = new UpdateDispatcher(meterRegistry, 1, new int[]{6, 3, 1}, Duration.ofSeconds(5));
+
+    @AfterEach
+    public void tearDown() {
+        dispatcher.stopWorkers();
+    }
+
+    @Test
+    public void scheduleFollowsWeightsTest() {
+        Assertions.assertThat(UpdateDispatcher.schedule(new int[]{2, 1, 1}))
+                .containsExactly(UpdateLane.URGENT, UpdateLane.MENU, UpdateLane.URGENT, UpdateLane.MESSAGES);
+    }
+
+    @Test
+    public void helpRequestOvertakesMenuClicksTest() throws InterruptedException {
+        dispatcher.startWorkers();
+        CountDownLatch busy = new CountDownLatch(1);
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(6);
+        List<Long> handled = new CopyOnWriteArrayList<>();
+
+        // The only worker is busy while the backlog builds up
+        dispatcher.submit(message(1, "/start"), update -> {
+            busy.countDown();
+            awaitQuietly(blocked);
+        });
+        Assertions.assertThat(busy.await(5, TimeUnit.SECONDS)).isTrue();
+        for (long chatId = 10; chatId < 15; chatId++) {
+            dispatcher.submit(click(chatId, BUTTON_STAGE1_CALLBACK_TEXT), update -> record(update, handled, done));
+        }
+        dispatcher.submit(click(99, BUTTON_CALL_VOLUNTEER_CALLBACK_TEXT), update -> record(update, handled, done));
+        Assertions.assertThat(meterRegistry.get("bot.updates.queue.depth").tag("lane", "menu").gauge().value()).isEqualTo(5);
+
+        blocked.countDown();
+        Assertions.assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+
+        // Without the lanes the help request would be the last one
+        Assertions.assertThat(handled.indexOf(99L)).isLessThan(2);
+        Assertions.assertThat(dispatcher.getQueueDepth()).isZero();
+        Assertions.assertThat(meterRegistry.get("bot.updates.latency").tag("lane", "urgent").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    public void busyChatDoesNotHoldUpOtherChatsTest() throws InterruptedException {
+        UpdateDispatcher twoWorkers = new UpdateDispatcher(new SimpleMeterRegistry(), 2, new int[]{6, 3, 1}, Duration.ofSeconds(5));
+        twoWorkers.startWorkers();
+        try {
+            CountDownLatch busy = new CountDownLatch(1);
+            CountDownLatch blocked = new CountDownLatch(1);
+            CountDownLatch otherChatDone = new CountDownLatch(1);
+            CountDownLatch done = new CountDownLatch(2);
+            List<String> handled = new CopyOnWriteArrayList<>();
+
+            twoWorkers.submit(message(1, "first"), update -> {
+                busy.countDown();
+                awaitQuietly(blocked);
+                handled.add(update.message().text());
+                done.countDown();
+            });
+            Assertions.assertThat(busy.await(5, TimeUnit.SECONDS)).isTrue();
+            twoWorkers.submit(message(1, "second"), update -> {
+                handled.add(update.message().text());
+                done.countDown();
+            });
+            // The second update waits in the queue of chat 1, the free worker handles the other chat
+            twoWorkers.submit(message(65, "other"), update -> otherChatDone.countDown());
+
+            Assertions.assertThat(otherChatDone.await(5, TimeUnit.SECONDS)).isTrue();
+            Assertions.assertThat(handled).isEmpty();
+
+            blocked.countDown();
+            Assertions.assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+            Assertions.assertThat(handled).containsExactly("first", "second");
+        } finally {
+            twoWorkers.stopWorkers();
+        }
+    }
+
+    @Test
+    public void updatesOfChatKeepTheirOrderAcrossLanesTest() throws InterruptedException {
+        dispatcher.startWorkers();
+        CountDownLatch busy = new CountDownLatch(1);
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(4);
+        List<String> handled = new CopyOnWriteArrayList<>();
+
+        dispatcher.submit(message(1, "/start"), update -> {
+            busy.countDown();
+            awaitQuietly(blocked);
+            handled.add("/start");
+            done.countDown();
+        });
+        Assertions.assertThat(busy.await(5, TimeUnit.SECONDS)).isTrue();
+        dispatcher.submit(click(1, BUTTON_STAGE1_CALLBACK_TEXT), update -> {
+            handled.add("menu");
+            done.countDown();
+        });
+        dispatcher.submit(click(1, BUTTON_CALL_VOLUNTEER_CALLBACK_TEXT), update -> {
+            handled.add("volunteer");
+            done.countDown();
+        });
+        dispatcher.submit(click(2, BUTTON_CALL_VOLUNTEER_CALLBACK_TEXT), update -> {
+            handled.add("other volunteer");
+            done.countDown();
+        });
+
+        blocked.countDown();
+        Assertions.assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+
+        // The call for a volunteer of chat 1 waits for the menu click before it, the other chat's call doesn't
+        Assertions.assertThat(handled).containsExactlyInAnyOrder("/start", "menu", "volunteer", "other volunteer");
+        Assertions.assertThat(handled.stream().filter(name -> !name.equals("other volunteer")).toList())
+                .containsExactly("/start", "menu", "volunteer");
+        Assertions.assertThat(handled.indexOf("other volunteer")).isLessThan(handled.indexOf("volunteer"));
+    }
+
+    private static void record(Update update, List<Long> handled, CountDownLatch done) {
+        handled.add(UpdateQueue.chatIdOf(update));
+        done.countDown();
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Update message(long chatId, String text) {
+        return BotUtils.fromJson("{\"update_id\":1,\"message\":{\"message_id\":1,\"chat\":{\"id\":" + chatId + "},\"text\":\"" + text + "\"}}",
+                Update.class);
+    }
+
+    private static Update click(long chatId, String data) {
+        return BotUtils.fromJson("{\"update_id\":1,\"callback_query\":{\"id\":\"1\",\"from\":{\"id\":" + chatId + "},"
+                + "\"message\":{\"message_id\":1,\"chat\":{\"id\":" + chatId + "}},\"data\":\"" + data + "\"}}", Update.class);
+    }
+}
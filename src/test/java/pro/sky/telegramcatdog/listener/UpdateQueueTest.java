@@ -0,0 +1,72 @@
+package pro.sky.telegramcatdog.listener;
+
+import com.pengrad.telegrambot.BotUtils;
+import com.pengrad.telegrambot.model.Update;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import pro.sky.telegramcatdog.repository.QueuedUpdateRepository;
+
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static pro.sky.telegramcatdog.constants.Constants.BUTTON_CALL_VOLUNTEER_CALLBACK_TEXT;
+
+@ExtendWith(MockitoExtension.class)
+public class UpdateQueueTest {
+    private static final int PARTITIONS = 16;
+
+    @Mock
+    private QueuedUpdateRepository queuedUpdateRepository;
+
+    @Test
+    public void partitionIsInRangeAndStableTest() {
+        UpdateQueue updateQueue = new UpdateQueue(queuedUpdateRepository, true, PARTITIONS);
+        // Group chats have negative ids
+        for (long chatId : new long[]{0, 1, 15, 16, 123456789, -1, -1001234567890L, Long.MIN_VALUE, Long.MAX_VALUE}) {
+            int partition = updateQueue.partitionOf(chatId);
+            Assertions.assertThat(partition).isBetween(0, PARTITIONS - 1);
+            Assertions.assertThat(new UpdateQueue(queuedUpdateRepository, true, PARTITIONS).partitionOf(chatId))
+                    .isEqualTo(partition);
+        }
+    }
+
+    @Test
+    public void chatIdIsTakenFromTheMessageOrTheButtonTest() {
+        Assertions.assertThat(UpdateQueue.chatIdOf(update("\"message\":{\"message_id\":1,\"chat\":{\"id\":-42}}")))
+                .isEqualTo(-42);
+        Assertions.assertThat(UpdateQueue.chatIdOf(update("\"callback_query\":{\"id\":\"1\",\"from\":{\"id\":7},"
+                + "\"message\":{\"message_id\":1,\"chat\":{\"id\":8}}}"))).isEqualTo(8);
+        // An inline button has no message, the user is the chat
+        Assertions.assertThat(UpdateQueue.chatIdOf(update("\"callback_query\":{\"id\":\"1\",\"from\":{\"id\":7}}")))
+                .isEqualTo(7);
+        Assertions.assertThat(UpdateQueue.chatIdOf(update("\"poll\":{\"id\":\"1\"}"))).isZero();
+    }
+
+    @Test
+    public void updatesAreQueuedInTheirChatPartitionAndLaneTest() {
+        UpdateQueue updateQueue = new UpdateQueue(queuedUpdateRepository, true, PARTITIONS);
+
+        updateQueue.enqueue(List.of(update(10, "\"message\":{\"message_id\":1,\"chat\":{\"id\":-1001234567890}}"),
+                update(11, "\"callback_query\":{\"id\":\"1\",\"from\":{\"id\":7},\"data\":\""
+                        + BUTTON_CALL_VOLUNTEER_CALLBACK_TEXT + "\"}")));
+
+        Mockito.verify(queuedUpdateRepository).enqueue(eq(updateQueue.partitionOf(-1001234567890L)),
+                eq(UpdateLane.MESSAGES.ordinal()), eq(-1001234567890L), eq(10L), anyString());
+        // the lane is queued with the update, the worker serves the chat of a call for a volunteer first
+        Mockito.verify(queuedUpdateRepository).enqueue(eq(updateQueue.partitionOf(7)), eq(UpdateLane.URGENT.ordinal()),
+                eq(7L), eq(11L), anyString());
+    }
+
+    private static Update update(String body) {
+        return update(1, body);
+    }
+
+    private static Update update(long updateId, String body) {
+        return BotUtils.fromJson("{\"update_id\":" + updateId + "," + body + "}", Update.class);
+    }
+}
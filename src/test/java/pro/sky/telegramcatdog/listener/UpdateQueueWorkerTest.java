@@ -0,0 +1,168 @@
+package pro.sky.telegramcatdog.listener;
+
+import com.pengrad.telegrambot.model.Update;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.test.util.ReflectionTestUtils;
+import pro.sky.telegramcatdog.model.QueuedUpdate;
+import pro.sky.telegramcatdog.repository.QueuedUpdateRepository;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class UpdateQueueWorkerTest {
+    private static final int PARTITION = 3;
+    private static final int BATCH_SIZE = 2;
+    private static final int MAX_ATTEMPTS = 3;
+
+    @Mock
+    private QueuedUpdateRepository queuedUpdateRepository;
+
+    @Mock
+    private TelegramBotUpdatesListener listener;
+
+    private UpdateQueueWorker worker;
+
+    @BeforeEach
+    public void setUp() {
+        DataSourceProperties dataSourceProperties = new DataSourceProperties();
+        dataSourceProperties.setUrl("jdbc:h2:mem:update-queue-worker");
+        dataSourceProperties.setUsername("sa");
+        dataSourceProperties.setPassword("");
+        worker = new UpdateQueueWorker(dataSourceProperties, new UpdateQueue(queuedUpdateRepository, true, 16),
+                queuedUpdateRepository, listener, 1, BATCH_SIZE, MAX_ATTEMPTS,
+                Duration.ofMillis(100), Duration.ofSeconds(5), Duration.ofHours(24));
+        // As if the lock connection was opened by the rebalancer
+        ReflectionTestUtils.setField(worker, "lockPid", 42);
+    }
+
+    @Test
+    public void updatesAreProcessedInOrderBatchAfterBatchTest() {
+        when(queuedUpdateRepository.findPending(PARTITION, 0, BATCH_SIZE))
+                .thenReturn(List.of(queued(1, 101, 0), queued(2, 102, 0)));
+        // the next batch starts after the last update of the previous one
+        when(queuedUpdateRepository.findPending(PARTITION, 2, BATCH_SIZE)).thenReturn(List.of(queued(3, 103, 0)));
+        when(queuedUpdateRepository.holdsAdvisoryLock(anyInt(), eq(PARTITION), eq(42))).thenReturn(true);
+
+        worker.drainPartition(PARTITION, () -> false);
+
+        InOrder inOrder = Mockito.inOrder(listener, queuedUpdateRepository);
+        for (long id = 1; id <= 3; id++) {
+            long updateId = 100 + id;
+            inOrder.verify(listener).processUpdate(argThat(update -> update.updateId() == updateId));
+            inOrder.verify(queuedUpdateRepository).markProcessed(eq(id), any());
+        }
+        // the ownership is checked before each batch
+        Mockito.verify(queuedUpdateRepository, Mockito.times(2)).holdsAdvisoryLock(anyInt(), eq(PARTITION), eq(42));
+    }
+
+    @Test
+    public void failedUpdateHoldsUpOnlyItsChatTest() {
+        when(queuedUpdateRepository.findPending(PARTITION, 0, BATCH_SIZE))
+                .thenReturn(List.of(queued(1, 101, 7, UpdateLane.MESSAGES, 0), queued(2, 102, 8, UpdateLane.MESSAGES, 0)));
+        when(queuedUpdateRepository.findPending(PARTITION, 2, BATCH_SIZE))
+                .thenReturn(List.of(queued(3, 103, 7, UpdateLane.MESSAGES, 0), queued(4, 104, 8, UpdateLane.MESSAGES, 0)));
+        when(queuedUpdateRepository.findPending(PARTITION, 4, BATCH_SIZE)).thenReturn(List.of());
+        when(queuedUpdateRepository.holdsAdvisoryLock(anyInt(), eq(PARTITION), eq(42))).thenReturn(true);
+        doAnswer(invocation -> {
+            if (invocation.<Update>getArgument(0).updateId() == 101) {
+                throw new IllegalStateException("database is down");
+            }
+            return null;
+        }).when(listener).processUpdate(any(Update.class));
+
+        worker.drainPartition(PARTITION, () -> false);
+
+        // Not processed, the next update of the chat waits for it
+        Mockito.verify(queuedUpdateRepository).markFailed(eq(1L), eq(MAX_ATTEMPTS), any());
+        Mockito.verify(listener, Mockito.never()).processUpdate(argThat(update -> update.updateId() == 103));
+        Mockito.verify(queuedUpdateRepository, Mockito.never()).markProcessed(eq(1L), any());
+        Mockito.verify(queuedUpdateRepository, Mockito.never()).markProcessed(eq(3L), any());
+        // The other chat of the partition goes on
+        Mockito.verify(queuedUpdateRepository).markProcessed(eq(2L), any());
+        Mockito.verify(queuedUpdateRepository).markProcessed(eq(4L), any());
+    }
+
+    @Test
+    public void updateIsDeadLetteredAfterMaxAttemptsTest() {
+        when(queuedUpdateRepository.findPending(PARTITION, 0, BATCH_SIZE))
+                .thenReturn(List.of(queued(1, 101, MAX_ATTEMPTS - 1), queued(2, 102, 0)));
+        when(queuedUpdateRepository.findPending(PARTITION, 2, BATCH_SIZE)).thenReturn(List.of());
+        when(queuedUpdateRepository.holdsAdvisoryLock(anyInt(), eq(PARTITION), eq(42))).thenReturn(true);
+        doThrow(new IllegalStateException("bad update")).doNothing().when(listener).processUpdate(any(Update.class));
+
+        worker.drainPartition(PARTITION, () -> false);
+
+        // The dead-lettered update doesn't hold up the chat
+        Mockito.verify(queuedUpdateRepository).markFailed(eq(1L), eq(MAX_ATTEMPTS), any());
+        Mockito.verify(queuedUpdateRepository, Mockito.never()).markProcessed(eq(1L), any());
+        Mockito.verify(queuedUpdateRepository).markProcessed(eq(2L), any());
+    }
+
+    @Test
+    public void chatsGoByTheLaneOfTheirOldestUpdateTest() {
+        List<QueuedUpdate> batch = List.of(queued(1, 101, 7, UpdateLane.MESSAGES, 0),
+                queued(2, 102, 8, UpdateLane.MENU, 0),
+                queued(3, 103, 7, UpdateLane.URGENT, 0),
+                queued(4, 104, 9, UpdateLane.URGENT, 0));
+
+        // The call for a volunteer of chat 7 doesn't overtake the earlier message of the chat
+        Assertions.assertThat(UpdateQueueWorker.byChatPriority(batch).stream().map(QueuedUpdate::getId).toList())
+                .containsExactly(4L, 2L, 1L, 3L);
+    }
+
+    @Test
+    public void partitionNotOwnedIsNotDrainedTest() {
+        when(queuedUpdateRepository.findPending(PARTITION, 0, BATCH_SIZE)).thenReturn(List.of(queued(1, 101, 0)));
+        when(queuedUpdateRepository.holdsAdvisoryLock(anyInt(), eq(PARTITION), eq(42))).thenReturn(false);
+
+        worker.drainPartition(PARTITION, () -> false);
+
+        Mockito.verifyNoInteractions(listener);
+        Mockito.verify(queuedUpdateRepository, Mockito.never()).markProcessed(anyLong(), any());
+    }
+
+    @Test
+    public void partitionIsNotDrainedWithoutTheLockConnectionTest() {
+        ReflectionTestUtils.setField(worker, "lockPid", 0);
+        when(queuedUpdateRepository.findPending(PARTITION, 0, BATCH_SIZE)).thenReturn(List.of(queued(1, 101, 0)));
+
+        worker.drainPartition(PARTITION, () -> false);
+
+        Mockito.verifyNoInteractions(listener);
+        Mockito.verify(queuedUpdateRepository, Mockito.never()).holdsAdvisoryLock(anyInt(), anyInt(), anyInt());
+    }
+
+    private static QueuedUpdate queued(long id, long updateId, int attempts) {
+        return queued(id, updateId, 7, UpdateLane.MESSAGES, attempts);
+    }
+
+    private static QueuedUpdate queued(long id, long updateId, long chatId, UpdateLane lane, int attempts) {
+        QueuedUpdate queuedUpdate = new QueuedUpdate();
+        ReflectionTestUtils.setField(queuedUpdate, "id", id);
+        ReflectionTestUtils.setField(queuedUpdate, "updateId", updateId);
+        ReflectionTestUtils.setField(queuedUpdate, "chatId", chatId);
+        ReflectionTestUtils.setField(queuedUpdate, "lane", lane.ordinal());
+        ReflectionTestUtils.setField(queuedUpdate, "attempts", attempts);
+        ReflectionTestUtils.setField(queuedUpdate, "payload", "{\"update_id\":" + updateId
+                + ",\"message\":{\"message_id\":1,\"chat\":{\"id\":" + chatId + "},\"text\":\"hi\"}}");
+        return queuedUpdate;
+    }
+}
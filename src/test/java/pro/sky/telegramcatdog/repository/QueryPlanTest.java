@@ -0,0 +1,139 @@
+package pro.sky.telegramcatdog.repository;
+
+import com.pengrad.telegrambot.TelegramBot;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Checks that the hot lookups of the bot and the probation monitor are served by indexes.
+ * Runs on PostgreSQL (Testcontainers) with the schema built by Liquibase, the one of production:
+ * the partitioned adoption_reports and the partial indexes exist only there. Skipped when Docker is not available.
+ * <p>
+ * The tables are empty, so the planner would scan them whatever the indexes are; with {@code enable_seqscan} off
+ * it still chooses a Seq Scan only if no index can serve the query, and that fails the test.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+@SpringBootTest
+@ActiveProfiles("test")
+class QueryPlanTest {
+    private static final String PARTITIONED_TABLE = "adoption_reports";
+
+    @Container
+    private static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:15-alpine");
+
+    @DynamicPropertySource
+    static void postgres(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.driver-class-name", POSTGRES::getDriverClassName);
+        registry.add("spring.datasource.url", POSTGRES::getJdbcUrl);
+        registry.add("spring.datasource.username", POSTGRES::getUsername);
+        registry.add("spring.datasource.password", POSTGRES::getPassword);
+        registry.add("spring.liquibase.enabled", () -> "true");
+        registry.add("spring.jpa.hibernate.ddl-auto", () -> "validate");
+    }
+
+    @MockBean
+    private TelegramBot telegramBot;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void guestByChatIdUsesIndex() {
+        assertIndexUsed("SELECT * FROM guests WHERE chat_id = 1234567809", "guests_chat_id_uidx");
+    }
+
+    @Test
+    void latestReportOfAdopterUsesIndex() {
+        assertIndexUsed("SELECT * FROM adoption_reports WHERE adopter_id = 1 ORDER BY report_date DESC LIMIT 1",
+                "adoption_reports_adopter_id_report_date_idx");
+    }
+
+    @Test
+    void reportsOfPetUseIndex() {
+        assertIndexUsed("SELECT * FROM adoption_reports WHERE pet_id = 1 ORDER BY report_date DESC",
+                "adoption_reports_pet_id_report_date_idx");
+    }
+
+    @Test
+    void reportsOfPeriodUseIndex() {
+        assertIndexUsed("SELECT * FROM adoption_reports WHERE report_date >= TIMESTAMP '2023-01-01 00:00:00'",
+                "adoption_reports_report_date_idx");
+    }
+
+    @Test
+    void petsOfAdopterUseIndex() {
+        assertIndexUsed("SELECT * FROM pets WHERE adopter_id = 1", "pets_adopter_id_idx");
+    }
+
+    @Test
+    void petsOfBreedUseIndex() {
+        assertIndexUsed("SELECT * FROM pets WHERE breed_id = 1", "pets_breed_id_idx");
+    }
+
+    @Test
+    void adoptersOnProbationOfVolunteerUseIndex() {
+        assertIndexUsed("SELECT * FROM adopters WHERE volunteer_id = 1 AND status = 0",
+                "adopters_volunteer_id_status_idx");
+    }
+
+    @Test
+    void claimCandidatesOfVolunteerUseIndex() {
+        assertIndexUsed("SELECT id, report_date FROM adoption_reports WHERE volunteer_id = 1 AND reviewed_at IS NULL "
+                        + "AND (claimed_at IS NULL OR claimed_at < TIMESTAMP '2023-01-01 00:00:00') "
+                        + "AND (report_date > TIMESTAMP '1970-01-01 00:00:00' "
+                        + "OR (report_date = TIMESTAMP '1970-01-01 00:00:00' AND id > 0)) "
+                        + "ORDER BY report_date, id LIMIT 10",
+                "adoption_reports_review_queue_idx");
+    }
+
+    /**
+     * The indexes of adoption_reports are created on the partitioned table, the plan shows the ones of the partitions:
+     * adoption_reports_pet_id_report_date_idx is adoption_reports_2023_01_pet_id_report_date_idx there.
+     */
+    private void assertIndexUsed(String sql, String indexName) {
+        String pattern = Pattern.quote(indexName);
+        if (indexName.startsWith(PARTITIONED_TABLE + '_')) {
+            pattern = PARTITIONED_TABLE + "(_default|_\\d{4}_\\d{2})?"
+                    + Pattern.quote(indexName.substring(PARTITIONED_TABLE.length()));
+        }
+        String plan = String.join("\n", explain(sql));
+        Assertions.assertThat(plan)
+                .as("Query plan of: %s", sql)
+                .containsPattern(Pattern.compile(pattern, Pattern.CASE_INSENSITIVE))
+                .doesNotContainIgnoringCase("Seq Scan");
+    }
+
+    private List<String> explain(String sql) {
+        return jdbcTemplate.execute((ConnectionCallback<List<String>>) connection -> {
+            List<String> plan = new ArrayList<>();
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("SET enable_seqscan = off");
+                try (ResultSet rows = statement.executeQuery("EXPLAIN " + sql)) {
+                    while (rows.next()) {
+                        plan.add(rows.getString(1));
+                    }
+                } finally {
+                    statement.execute("RESET enable_seqscan");
+                }
+            }
+            return plan;
+        });
+    }
+}
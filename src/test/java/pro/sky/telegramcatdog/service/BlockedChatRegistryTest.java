@@ -0,0 +1,85 @@
+package pro.sky.telegramcatdog.service;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import pro.sky.telegramcatdog.model.BlockedChat;
+import pro.sky.telegramcatdog.repository.BlockedChatRepository;
+
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class BlockedChatRegistryTest {
+
+    @Mock
+    private BlockedChatRepository blockedChatRepository;
+
+    private BlockedChatRegistry registry;
+
+    @BeforeEach
+    public void setUp() {
+        when(blockedChatRepository.findAllChatIds()).thenReturn(List.of(30L, 10L, 20L));
+        registry = new BlockedChatRegistry(blockedChatRepository);
+        registry.load();
+    }
+
+    @Test
+    public void loadedChatsAreBlockedTest() {
+        Assertions.assertThat(registry.isBlocked(10)).isTrue();
+        Assertions.assertThat(registry.isBlocked(20)).isTrue();
+        Assertions.assertThat(registry.isBlocked(30)).isTrue();
+        Assertions.assertThat(registry.isBlocked(15)).isFalse();
+    }
+
+    @Test
+    public void onlyForbiddenChatIsBlockedTest() {
+        Assertions.assertThat(registry.blockIfForbidden(15, 429)).isFalse();
+        Assertions.assertThat(registry.blockIfForbidden(15, 403)).isTrue();
+        Assertions.assertThat(registry.blockIfForbidden(15, 403)).isFalse();
+
+        Assertions.assertThat(registry.isBlocked(15)).isTrue();
+        Assertions.assertThat(registry.size()).isEqualTo(4);
+        Mockito.verify(blockedChatRepository, Mockito.times(1)).save(any(BlockedChat.class));
+    }
+
+    @Test
+    public void unblockedChatIsRemovedTest() {
+        Assertions.assertThat(registry.unblock(20)).isTrue();
+        Assertions.assertThat(registry.unblock(20)).isFalse();
+        Assertions.assertThat(registry.unblock(25)).isFalse();
+
+        Assertions.assertThat(registry.isBlocked(20)).isFalse();
+        Assertions.assertThat(registry.isBlocked(10)).isTrue();
+        Assertions.assertThat(registry.isBlocked(30)).isTrue();
+        Mockito.verify(blockedChatRepository, Mockito.times(1)).unblock(20);
+    }
+
+    @Test
+    public void reloadKeepsTheChangesItsQueryMissedTest() {
+        // Blocked and unblocked while the query runs, the result doesn't have the changes
+        when(blockedChatRepository.findAllChatIds()).thenAnswer(invocation -> {
+            registry.block(15);
+            registry.unblock(20);
+            return List.of(30L, 10L, 20L);
+        });
+        registry.load();
+
+        Assertions.assertThat(registry.isBlocked(15)).isTrue();
+        Assertions.assertThat(registry.isBlocked(20)).isFalse();
+
+        // The next reload sees them, and the changes of the other instances win again
+        when(blockedChatRepository.findAllChatIds()).thenReturn(List.of(10L, 20L));
+        registry.load();
+
+        Assertions.assertThat(registry.isBlocked(15)).isFalse();
+        Assertions.assertThat(registry.isBlocked(20)).isTrue();
+        Assertions.assertThat(registry.isBlocked(30)).isFalse();
+    }
+}
@@ -0,0 +1,49 @@
+package pro.sky.telegramcatdog.service;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+public class ImageProcessingServiceTest {
+    private final ImageProcessingService imageProcessingService =
+            new ImageProcessingService(64, 16, 0.8f, 1_000_000, 1, 4);
+
+    @AfterEach
+    public void tearDown() {
+        imageProcessingService.shutdown();
+    }
+
+    @Test
+    public void pictureIsDownscaledAndGetsThumbnailTest() throws IOException {
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(200, 100, BufferedImage.TYPE_INT_RGB), "png", png);
+
+        ImageProcessingService.Renditions renditions = imageProcessingService.process(png.toByteArray());
+
+        BufferedImage picture = ImageIO.read(new ByteArrayInputStream(renditions.picture()));
+        Assertions.assertThat(picture.getWidth()).isEqualTo(64);
+        Assertions.assertThat(renditions.thumbnail()).isNotNull();
+    }
+
+    @Test
+    public void corruptPictureIsStoredAsIsTest() {
+        // JPEG header followed by garbage: the reader is found, decoding fails
+        byte[] corrupt = new byte[256];
+        Arrays.fill(corrupt, (byte) 0x5A);
+        corrupt[0] = (byte) 0xFF;
+        corrupt[1] = (byte) 0xD8;
+        corrupt[2] = (byte) 0xFF;
+
+        ImageProcessingService.Renditions renditions = imageProcessingService.process(corrupt);
+
+        Assertions.assertThat(renditions.picture()).isSameAs(corrupt);
+        Assertions.assertThat(renditions.thumbnail()).isNull();
+    }
+}
@@ -0,0 +1,138 @@
+package pro.sky.telegramcatdog.service;
+
+import com.pengrad.telegrambot.BotUtils;
+import com.pengrad.telegrambot.TelegramBot;
+import com.pengrad.telegrambot.request.SendMessage;
+import com.pengrad.telegrambot.response.SendResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+import pro.sky.telegramcatdog.model.OutboxMessage;
+import pro.sky.telegramcatdog.repository.OutboxMessageRepository;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class NotificationOutboxRelayTest {
+    private static final int MAX_ATTEMPTS = 3;
+    private static final SendResponse OK = response("{\"ok\":true}");
+    private static final SendResponse TOO_MANY_REQUESTS =
+            response("{\"ok\":false,\"error_code\":429,\"description\":\"Too Many Requests\"}");
+    private static final SendResponse BAD_REQUEST =
+            response("{\"ok\":false,\"error_code\":400,\"description\":\"Bad Request: chat not found\"}");
+
+    @Mock
+    private OutboxMessageRepository outboxMessageRepository;
+
+    @Mock
+    private TelegramBot telegramBot;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @Mock
+    private BlockedChatRegistry blockedChatRegistry;
+
+    @BeforeEach
+    public void setUp() {
+        when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+    }
+
+    @Test
+    public void deliveredAndRejectedMessagesAreDeletedTest() {
+        when(outboxMessageRepository.lockNextBatch(10, MAX_ATTEMPTS))
+                .thenReturn(List.of(message(1, 101, 0), message(2, 102, 0), message(3, 103, 0)));
+        Map<Object, SendResponse> responses = Map.of(101L, OK, 102L, TOO_MANY_REQUESTS, 103L, BAD_REQUEST);
+        when(telegramBot.execute(any(SendMessage.class))).thenAnswer(invocation ->
+                responses.get(invocation.<SendMessage>getArgument(0).getParameters().get("chat_id")));
+
+        relay(10, Duration.ofMinutes(1)).relay();
+
+        // 429 is retried, 400 won't go away
+        Mockito.verify(outboxMessageRepository).deleteAllByIdInBatch(List.of(1L, 3L));
+        Mockito.verify(blockedChatRegistry).blockIfForbidden(103L, 400);
+        Mockito.verify(outboxMessageRepository, Mockito.never()).release(any(), any());
+    }
+
+    @Test
+    public void messageIsDroppedAfterMaxAttemptsTest() {
+        when(outboxMessageRepository.deleteExhausted(eq(MAX_ATTEMPTS), any())).thenReturn(2);
+        // the claim makes it the last attempt
+        when(outboxMessageRepository.lockNextBatch(10, MAX_ATTEMPTS))
+                .thenReturn(List.of(message(1, 101, MAX_ATTEMPTS - 1), message(2, 102, 0)));
+        when(telegramBot.execute(any(SendMessage.class))).thenReturn(TOO_MANY_REQUESTS);
+
+        relay(10, Duration.ofMinutes(1)).relay();
+
+        Mockito.verify(outboxMessageRepository).deleteExhausted(eq(MAX_ATTEMPTS), any());
+        Mockito.verify(outboxMessageRepository).deleteAllByIdInBatch(List.of(1L));
+    }
+
+    @Test
+    public void batchIsCutBeforeItsClaimExpiresTest() {
+        when(outboxMessageRepository.lockNextBatch(3, MAX_ATTEMPTS))
+                .thenReturn(List.of(message(1, 101, 0), message(2, 102, 0), message(3, 103, 0)));
+        // The claim is 100 ms long, the first message takes longer than the half of it
+        when(telegramBot.execute(any(SendMessage.class))).thenAnswer(invocation -> {
+            Thread.sleep(60);
+            return OK;
+        });
+
+        relay(3, Duration.ofMillis(100)).relay();
+
+        Mockito.verify(telegramBot, Mockito.times(1)).execute(any(SendMessage.class));
+        Mockito.verify(outboxMessageRepository).deleteAllByIdInBatch(List.of(1L));
+        Mockito.verify(outboxMessageRepository).release(eq(List.of(2L, 3L)), any());
+        // a full batch that was cut is not followed by the next one
+        Mockito.verify(outboxMessageRepository, Mockito.times(1)).lockNextBatch(anyInt(), anyInt());
+    }
+
+    @Test
+    public void messageToBlockedChatIsPostponedTest() {
+        when(outboxMessageRepository.lockNextBatch(10, MAX_ATTEMPTS))
+                .thenReturn(List.of(message(1, 101, 0), message(2, 102, 0)));
+        when(blockedChatRegistry.isBlocked(anyLong())).thenAnswer(invocation -> invocation.<Long>getArgument(0) == 102L);
+        when(telegramBot.execute(any(SendMessage.class))).thenReturn(OK);
+        long before = System.currentTimeMillis();
+
+        relay(10, Duration.ofMinutes(1)).relay();
+
+        // Kept for the user's /start, not sent and not deleted
+        Mockito.verify(telegramBot, Mockito.times(1)).execute(any(SendMessage.class));
+        Mockito.verify(outboxMessageRepository).deleteAllByIdInBatch(List.of(1L));
+        Mockito.verify(outboxMessageRepository).release(eq(List.of(2L)),
+                argThat(nextAttemptAt -> nextAttemptAt.getTime() >= before + Duration.ofHours(1).toMillis()));
+    }
+
+    private NotificationOutboxRelay relay(int batchSize, Duration retryDelay) {
+        return new NotificationOutboxRelay(outboxMessageRepository, telegramBot, transactionTemplate, blockedChatRegistry,
+                true, batchSize, MAX_ATTEMPTS, retryDelay, Duration.ofHours(1));
+    }
+
+    private static OutboxMessage message(long id, long chatId, int attempts) {
+        OutboxMessage message = new OutboxMessage(chatId, "text " + id);
+        ReflectionTestUtils.setField(message, "id", id);
+        message.setAttempts(attempts);
+        return message;
+    }
+
+    private static SendResponse response(String json) {
+        return BotUtils.fromJson(json, SendResponse.class);
+    }
+}